@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.benchmarks;
+
+import java.util.Collection;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Runs the benchmarks and writes the results as JSON, so they can be compared between releases.
+ *
+ * The usual JMH command-line options can be given, for example <code>-p nbAthletes=500</code> to run a single size,
+ * or <code>-rff other.json</code> to change the output file (default <code>target/jmh-result.json</code>). Once done,
+ * the snapshot round trips are compared with their target.
+ */
+public class BenchmarkRunner {
+
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(BenchmarkRunner.class);
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		OptionsBuilder builder = new OptionsBuilder();
+		builder.parent(commandLine);
+		if (commandLine.getIncludes().isEmpty()) {
+			builder.include(BenchmarkRunner.class.getPackageName() + ".*");
+		}
+		if (!commandLine.getResult().hasValue()) {
+			builder.result("target/jmh-result.json");
+		}
+		builder.resultFormat(commandLine.getResultFormat().orElse(ResultFormatType.JSON));
+		Options options = builder.build();
+		Collection<RunResult> results = new Runner(options).run();
+		checkRoundTrips(results);
+	}
+
+	/**
+	 * Log, for each meet size, the snapshot round trip time against the target.
+	 */
+	private static void checkRoundTrips(Collection<RunResult> results) {
+		for (RunResult r : results) {
+			BenchmarkParams params = r.getParams();
+			if (!params.getBenchmark().endsWith(".snapshotRoundTrip")) {
+				continue;
+			}
+			Result<?> primary = r.getPrimaryResult();
+			double ms = primary.getScore();
+			if (!"ms/op".equals(primary.getScoreUnit())) {
+				logger./**/warn("snapshot round trip measured in {}, not compared with the target",
+				        primary.getScoreUnit());
+				continue;
+			}
+			String nbAthletes = params.getParam("nbAthletes");
+			if (ms <= SnapshotBenchmarks.ROUND_TRIP_TARGET_MS) {
+				logger.info("snapshot round trip for {} athletes: {} ms, within the {} ms target", nbAthletes,
+				        String.format("%.1f", ms), SnapshotBenchmarks.ROUND_TRIP_TARGET_MS);
+			} else {
+				logger./**/warn("snapshot round trip for {} athletes: {} ms, above the {} ms target", nbAthletes,
+				        String.format("%.1f", ms), SnapshotBenchmarks.ROUND_TRIP_TARGET_MS);
+			}
+		}
+	}
+
+}
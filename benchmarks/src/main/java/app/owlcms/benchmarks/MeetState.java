@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.benchmarks;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.Main;
+import app.owlcms.data.agegroup.ChampionshipType;
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athlete.AthleteRepository;
+import app.owlcms.data.athlete.Gender;
+import app.owlcms.data.athleteSort.CategoryRankingIndex;
+import app.owlcms.data.athleteSort.Ranking;
+import app.owlcms.data.config.Config;
+import app.owlcms.data.group.Group;
+import app.owlcms.data.group.GroupRepository;
+import app.owlcms.data.jpa.BenchmarkData;
+import app.owlcms.data.jpa.JPAService;
+import app.owlcms.data.records.RecordEvent;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * A synthetic meet created with {@link BenchmarkData} in an in-memory database, half-way through: every athlete has
+ * done a random number of attempts, so rankings, medals and lifting order all have work to do.
+ *
+ * JMH forks a JVM per parameter value, so each size gets its own database.
+ */
+@State(Scope.Benchmark)
+public class MeetState {
+
+	private static final String[] AGE_GROUPS = { "YTH", "JR", "SR" };
+	private static final int[][] AGE_RANGES = { { 13, 17 }, { 15, 20 }, { 15, 999 } };
+	private static final int[][] BW_CATS = {
+	        { 45, 49, 55, 59, 64, 71, 76, 81, 87, 999 },
+	        { 55, 61, 67, 73, 81, 89, 96, 102, 109, 999 } };
+
+	@Param({ "50", "500", "5000" })
+	public int nbAthletes;
+
+	/**
+	 * All the athletes, detached, with their participations.
+	 */
+	List<Athlete> athletes;
+
+	/**
+	 * The session with the most athletes, and the athletes used to compute its medals (the session, plus the athletes
+	 * of the same categories in other sessions).
+	 */
+	Group group;
+	List<Athlete> groupAthletes;
+	List<Athlete> medalAthletes;
+
+	/**
+	 * An athlete for whom records exist, and the incremental ranking kept by the field of play.
+	 */
+	Athlete recordAthlete;
+	CategoryRankingIndex categoryRankingIndex = new CategoryRankingIndex();
+
+	@Setup(Level.Trial)
+	public void setup() {
+		((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME))
+		        .setLevel(ch.qos.logback.classic.Level.WARN);
+		Main.injectSuppliers();
+		JPAService.init(true, true);
+		Config.initConfig();
+		BenchmarkData.insertInitialData(EnumSet.of(ChampionshipType.IWF, ChampionshipType.MASTERS), this.nbAthletes);
+		simulateLifts(new Random(0));
+		insertRecords();
+
+		this.athletes = AthleteRepository.findAthletesForGlobalRanking(null, true);
+		this.group = GroupRepository.findAll().stream()
+		        .max(Comparator.comparing((Group g) -> AthleteRepository.findAllByGroupAndWeighIn(g, true).size()))
+		        .orElseThrow();
+		this.groupAthletes = AthleteRepository.findAllByGroupAndWeighIn(this.group, true);
+		this.medalAthletes = AthleteRepository.findAthletesForGlobalRanking(this.group, true);
+		this.recordAthlete = this.groupAthletes.get(0);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		JPAService.close();
+	}
+
+	/**
+	 * Records for the IWF age groups and bodyweight categories, for each lift.
+	 */
+	private void insertRecords() {
+		JPAService.runInTransaction(em -> {
+			for (Gender gender : Gender.mfValues()) {
+				int[] cats = BW_CATS[gender == Gender.F ? 0 : 1];
+				for (int ag = 0; ag < AGE_GROUPS.length; ag++) {
+					int lower = 0;
+					for (int cat : cats) {
+						for (Ranking lift : new Ranking[] { Ranking.SNATCH, Ranking.CLEANJERK, Ranking.TOTAL }) {
+							RecordEvent rec = new RecordEvent();
+							rec.setRecordFederation("IWF");
+							rec.setRecordName("IWF");
+							rec.setGender(gender);
+							rec.setAgeGrp(AGE_GROUPS[ag]);
+							rec.setAgeGrpLower(AGE_RANGES[ag][0]);
+							rec.setAgeGrpUpper(AGE_RANGES[ag][1]);
+							rec.setBwCatLower(lower);
+							rec.setBwCatUpper(cat);
+							rec.setBwCatString(Integer.toString(cat));
+							rec.setRecordLift(lift);
+							double base = Math.min(cat, 120) * (lift == Ranking.SNATCH ? 1.5 : 1.9);
+							rec.setRecordValue(lift == Ranking.TOTAL ? base * 2.1 : base);
+							em.persist(rec);
+						}
+						lower = cat;
+					}
+				}
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Each athlete has done between 0 and 6 attempts, mostly good lifts.
+	 */
+	private void simulateLifts(Random r) {
+		JPAService.runInTransaction(em -> {
+			LocalDateTime liftTime = LocalDateTime.now().minusHours(1);
+			for (Athlete a : AthleteRepository.doFindAll(em)) {
+				a.setValidation(false);
+				int nbAttempts = r.nextInt(7);
+				int snatch = Integer.parseInt(a.getSnatch1Declaration());
+				int cj = Integer.parseInt(a.getCleanJerk1Declaration());
+				for (int i = 0; i < nbAttempts; i++) {
+					liftTime = liftTime.plusSeconds(30);
+					boolean good = r.nextInt(10) < 7;
+					int weight = (i < 3 ? snatch : cj) + 2 * (i % 3);
+					String lift = Integer.toString(good ? weight : -weight);
+					setAttempt(a, i, lift, liftTime);
+				}
+				a.setValidation(true);
+			}
+			return null;
+		});
+	}
+
+	private void setAttempt(Athlete a, int i, String lift, LocalDateTime liftTime) {
+		switch (i) {
+			case 0:
+				a.setSnatch1ActualLift(lift);
+				a.setSnatch1LiftTime(liftTime);
+				break;
+			case 1:
+				a.setSnatch2ActualLift(lift);
+				a.setSnatch2LiftTime(liftTime);
+				break;
+			case 2:
+				a.setSnatch3ActualLift(lift);
+				a.setSnatch3LiftTime(liftTime);
+				break;
+			case 3:
+				a.setCleanJerk1ActualLift(lift);
+				a.setCleanJerk1LiftTime(liftTime);
+				break;
+			case 4:
+				a.setCleanJerk2ActualLift(lift);
+				a.setCleanJerk2LiftTime(liftTime);
+				break;
+			default:
+				a.setCleanJerk3ActualLift(lift);
+				a.setCleanJerk3LiftTime(liftTime);
+				break;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.benchmarks;
+
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athleteSort.AthleteSorter;
+import app.owlcms.data.athleteSort.Ranking;
+import app.owlcms.data.competition.Competition;
+import app.owlcms.data.jpa.JPAService;
+import app.owlcms.data.records.RecordEvent;
+import app.owlcms.data.records.RecordFilter;
+
+/**
+ * The computations done by the field of play after each decision, over the whole meet.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RankingBenchmarks {
+
+	@Benchmark
+	public List<Athlete> liftingOrderCopy(MeetState s) {
+		return AthleteSorter.liftingOrderCopy(s.athletes);
+	}
+
+	@Benchmark
+	public List<Athlete> resultsOrderCopy(MeetState s) {
+		return AthleteSorter.resultsOrderCopy(s.athletes, Ranking.TOTAL);
+	}
+
+	/**
+	 * Full reload and sort of the categories of the session, as done before each session.
+	 */
+	@Benchmark
+	public List<Athlete> assignCategoryRanks(MeetState s) {
+		return JPAService.runInTransaction(em -> AthleteSorter.assignCategoryRanks(em, s.group));
+	}
+
+	/**
+	 * Same, with the incremental index kept by the field of play between decisions.
+	 */
+	@Benchmark
+	public List<Athlete> assignCategoryRanksIndexed(MeetState s) {
+		return JPAService.runInTransaction(
+		        em -> AthleteSorter.assignCategoryRanks(em, s.group, s.categoryRankingIndex));
+	}
+
+	@Benchmark
+	public Competition doGlobalRankings(MeetState s) {
+		Competition competition = Competition.getCurrent();
+		competition.doGlobalRankings(s.athletes, false);
+		return competition;
+	}
+
+	@Benchmark
+	public TreeMap<String, TreeSet<Athlete>> computeMedals(MeetState s) {
+		return Competition.getCurrent().computeMedals(s.group, s.medalAthletes);
+	}
+
+	@Benchmark
+	public List<RecordEvent> computeDisplayableRecordsForAthlete(MeetState s) {
+		return RecordFilter.computeDisplayableRecordsForAthlete(s.recordAthlete);
+	}
+
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import app.owlcms.data.export.CompetitionData;
+
+/**
+ * Backup and restore of the whole database, as JSON and as a binary snapshot. A round trip is an export followed by
+ * a restore of what was exported; {@link BenchmarkRunner} compares it with {@link #ROUND_TRIP_TARGET_MS}.
+ *
+ * The size of each export is reported as the secondary result <code>bytes</code> of the export benchmarks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnapshotBenchmarks {
+
+	/**
+	 * The exports of the meet, to be restored.
+	 */
+	@State(Scope.Benchmark)
+	public static class Exports {
+		byte[] json;
+		byte[] snapshot;
+
+		@Setup(Level.Trial)
+		public void setup(MeetState meet) {
+			this.json = exportJson().toByteArray();
+			this.snapshot = exportSnapshot().toByteArray();
+		}
+	}
+
+	/**
+	 * Size of the export, reported with the time.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Size {
+		public long bytes;
+	}
+
+	/**
+	 * Fail-over to a spare laptop during a national championship should take less than this.
+	 */
+	static final double ROUND_TRIP_TARGET_MS = 1000.0D;
+
+	private static ByteArrayOutputStream exportJson() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new CompetitionData().exportData(out);
+		return out;
+	}
+
+	private static ByteArrayOutputStream exportSnapshot() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new CompetitionData().exportSnapshot(out);
+		return out;
+	}
+
+	@Benchmark
+	public ByteArrayOutputStream exportJson(MeetState s, Size size) {
+		ByteArrayOutputStream out = exportJson();
+		size.bytes = out.size();
+		return out;
+	}
+
+	@Benchmark
+	public ByteArrayOutputStream exportSnapshot(MeetState s, Size size) {
+		ByteArrayOutputStream out = exportSnapshot();
+		size.bytes = out.size();
+		return out;
+	}
+
+	@Benchmark
+	public void restoreJson(Exports e) {
+		new CompetitionData().restore(new ByteArrayInputStream(e.json));
+	}
+
+	@Benchmark
+	public void restoreSnapshot(Exports e) {
+		new CompetitionData().restore(new ByteArrayInputStream(e.snapshot));
+	}
+
+	@Benchmark
+	public void snapshotRoundTrip(MeetState s) {
+		new CompetitionData().restore(new ByteArrayInputStream(exportSnapshot().toByteArray()));
+	}
+
+}
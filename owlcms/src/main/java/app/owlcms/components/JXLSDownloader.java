@@ -12,6 +12,8 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -21,6 +23,7 @@ import org.apache.maven.shared.utils.io.FileUtils;
 import org.slf4j.LoggerFactory;
 
 //import com.vaadin.componentfactory.EnhancedDialog;
+import com.vaadin.flow.component.UI;
 import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.combobox.ComboBox;
 import com.vaadin.flow.component.dialog.Dialog;
@@ -29,6 +32,7 @@ import com.vaadin.flow.component.html.Paragraph;
 import com.vaadin.flow.component.icon.Icon;
 import com.vaadin.flow.component.icon.VaadinIcon;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
+import com.vaadin.flow.component.progressbar.ProgressBar;
 import com.vaadin.flow.server.StreamResource;
 import com.vaadin.flow.server.StreamResourceWriter;
 
@@ -38,6 +42,8 @@ import app.owlcms.data.config.Config;
 import app.owlcms.i18n.Translator;
 import app.owlcms.init.OwlcmsSession;
 import app.owlcms.spreadsheet.JXLSWorkbookStreamSource;
+import app.owlcms.spreadsheet.ReportService;
+import app.owlcms.spreadsheet.TemplateRegistry;
 import app.owlcms.utils.LoggerUtils;
 import app.owlcms.utils.Resource;
 import app.owlcms.utils.ResourceWalker;
@@ -60,6 +66,7 @@ public class JXLSDownloader {
 	private String processingMessage;
 	private Predicate<String> nameFilter;
 	private StreamResource resource;
+	private ProgressBar progressBar;
 
 	/**
 	 * @param streamSourceSupplier lambda that creates a JXLSWorkbookStreamSource and sets its filters
@@ -231,7 +238,7 @@ public class JXLSDownloader {
 					current = Competition.getCurrent();
 					this.logger.debug("(2) template as stored {}", this.templateNameGetter.apply(current));
 
-					InputStream is = res.getStream();
+					InputStream is = TemplateRegistry.get(res.getFilePath()).openStream();
 					this.xlsWriter.setInputStream(is);
 					this.logger.debug("(2) filter present = {} {} {}", this.xlsWriter.getGroup(),
 					        this.xlsWriter.getCategory(),
@@ -242,14 +249,26 @@ public class JXLSDownloader {
 
 					Supplier<String> supplier = () -> getTargetFileName();
 
-					Anchor nDownloadAnchor = doCreateActualDownloadButton(this.resource, this.xlsWriter,
+					// start generating now, the user has not clicked yet. The session is not locked while
+					// generating or downloading.
+					UI ui = UI.getCurrent();
+					Locale locale = OwlcmsSession.getLocale();
+					JXLSWorkbookStreamSource source = this.xlsWriter;
+					CompletableFuture<byte[]> document = ReportService.submit(source, locale);
+					showProgress(ui, document);
+					Dialog curDialog = this.dialog;
+					StreamResourceWriter writer = (out, session) -> {
+						// results may have changed since the template was picked; same document if they have not.
+						ReportService.write(out, ReportService.submit(source, locale), source, locale);
+						ui.access(() -> curDialog.close());
+					};
+
+					Anchor nDownloadAnchor = doCreateActualDownloadButton(this.resource, writer,
 					        supplier.get());
 					// if downloadAnchor is null, same as add nDownloadAnchor
 					templateSelection.replace(this.downloadAnchor, nDownloadAnchor);
 					this.downloadAnchor = nDownloadAnchor;
 
-					this.xlsWriter.setDoneCallback((message) -> this.dialog.close());
-
 					// downloadButton.setFileNameCallback(supplier);
 					// downloadButton.setInputStreamCallback(() -> xlsWriter.createInputStream());
 					// downloadButton.addDownloadStartsListener(ds -> dialog.close());
@@ -281,6 +300,26 @@ public class JXLSDownloader {
 		return link;
 	}
 
+	/**
+	 * Show that the document is being generated, until it is ready.
+	 */
+	private void showProgress(UI ui, CompletableFuture<byte[]> document) {
+		if (this.progressBar != null) {
+			this.dialog.remove(this.progressBar);
+			this.progressBar = null;
+		}
+		if (document.isDone()) {
+			return;
+		}
+		ProgressBar progress = new ProgressBar();
+		progress.setIndeterminate(true);
+		this.progressBar = progress;
+		this.dialog.add(progress);
+		document.whenComplete((r, t) -> ui.access(() -> {
+			progress.setVisible(false);
+		}));
+	}
+
 	private String getProcessingMessage() {
 		return this.processingMessage == null ? Translator.translate("Processing") : this.processingMessage;
 	}
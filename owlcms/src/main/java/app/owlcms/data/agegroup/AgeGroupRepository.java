@@ -32,6 +32,7 @@ import app.owlcms.data.category.Category;
 import app.owlcms.data.category.Participation;
 import app.owlcms.data.competition.Competition;
 import app.owlcms.data.group.Group;
+import app.owlcms.data.jpa.DataVersion;
 import app.owlcms.data.jpa.JPAService;
 import app.owlcms.spreadsheet.PAthlete;
 import app.owlcms.utils.LoggerUtils;
@@ -596,6 +597,8 @@ public class AgeGroupRepository {
 				upd.executeUpdate();
 				upd = em.createQuery("delete from AgeGroup");
 				upd.executeUpdate();
+				// bulk deletes are not seen by the commit listeners.
+				DataVersion.bumpAfterCommit(em);
 			} catch (Exception e) {
 				LoggerUtils.logError(logger, e);
 			}
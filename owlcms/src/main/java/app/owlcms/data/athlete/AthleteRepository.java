@@ -13,16 +13,21 @@ import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import javax.persistence.EntityGraph;
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
+import javax.persistence.Subgraph;
 import javax.persistence.TypedQuery;
 
+import org.hibernate.annotations.QueryHints;
 import org.slf4j.LoggerFactory;
 
 import app.owlcms.data.agegroup.AgeGroup;
 import app.owlcms.data.agegroup.Championship;
 import app.owlcms.data.athleteSort.AthleteSorter;
+import app.owlcms.data.athleteSort.ScoreRankingIndex;
 import app.owlcms.data.category.Category;
+import app.owlcms.data.category.Participation;
 import app.owlcms.data.competition.Competition;
 import app.owlcms.data.group.Group;
 import app.owlcms.data.jpa.JPAService;
@@ -96,6 +101,7 @@ public class AthleteRepository {
 		JPAService.runInTransaction(em -> {
 			em.remove(getById(Athlete.getId(), em));
 			Competition.getCurrent().setRankingsInvalid(true);
+			ScoreRankingIndex.invalidate();
 			return null;
 		});
 	}
@@ -147,8 +153,10 @@ public class AthleteRepository {
 		if (group != null && group.getName() == "*") {
 			group = null;
 		}
+		// pages of the registration grid do not need the participations, and cannot be paged with a collection fetch.
+		boolean paged = offset >= 0 || limit > 0;
 		// FIXME this does not appear to work with ageDivision/Championship
-		String qlString = "select a from Athlete a"
+		String qlString = (paged ? "select a from Athlete a" : "select distinct a from Athlete a")
 		        + filteringSelection(lastName, group, category, ageGroup, ageDivision, gender, weighedIn, team)
 		        + " order by a.category";
 		// logger.trace("find query = {}", qlString);
@@ -160,6 +168,11 @@ public class AthleteRepository {
 		if (limit > 0) {
 			query.setMaxResults(limit);
 		}
+		if (!paged) {
+			fetchForDisplay(em, query);
+			// the joined rows are already distinct, only the duplicated athletes need removing.
+			query.setHint(QueryHints.PASS_DISTINCT_THROUGH, false);
+		}
 		@SuppressWarnings("unchecked")
 		List<Athlete> resultList = query.getResultList();
 		return resultList;
@@ -217,6 +230,8 @@ public class AthleteRepository {
 			        "select distinct a from Athlete a join a.participations p join p.category c where c.id = :catId",
 			        Athlete.class);
 			q.setParameter("catId", c.getId());
+			fetchForDisplay(em, q);
+			q.setHint(QueryHints.PASS_DISTINCT_THROUGH, false);
 			return q.getResultList();
 		});
 	}
@@ -334,6 +349,7 @@ public class AthleteRepository {
 		return JPAService.runInTransaction((em) -> {
 			Competition.getCurrent().setRankingsInvalid(true);
 			Athlete merged = em.merge(athlete);
+			ScoreRankingIndex.athleteSaved(em, merged);
 			return merged;
 		});
 	}
@@ -355,6 +371,7 @@ public class AthleteRepository {
 		if (g != null) {
 			q.setParameter("groupId", g.getId());
 		}
+		fetchForDisplay(em, q);
 
 		List<Athlete> resultList;
 		if (onlyWeighedIn) {
@@ -373,6 +390,23 @@ public class AthleteRepository {
 		return resultList;
 	}
 
+	/**
+	 * Fetch, in the same query, what the displays, rankings and medals use once the transaction is over: the category
+	 * of the athlete, and the participations with their categories. Otherwise each athlete causes separate loads, each
+	 * with its own connection (see {@link app.owlcms.data.jpa.LazyLoadMonitor}). The query must select distinct
+	 * athletes.
+	 *
+	 * @param em
+	 * @param query
+	 */
+	private static void fetchForDisplay(EntityManager em, Query query) {
+		EntityGraph<Athlete> graph = em.createEntityGraph(Athlete.class);
+		graph.addAttributeNodes("category");
+		Subgraph<Participation> participations = graph.addSubgraph("participations");
+		participations.addAttributeNodes("category");
+		query.setHint("javax.persistence.loadgraph", graph);
+	}
+
 	private static String filteringJoins(Group group, Category category, AgeGroup ageGroup, Championship ageDivision) {
 		List<String> fromList = new LinkedList<>();
 		if (group != null) {
@@ -12,6 +12,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Random;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import javax.persistence.Entity;
@@ -61,7 +62,47 @@ public class AthleteSorter implements Serializable {
 			impactedAthletes = AthleteRepository.doFindAllByGroupAndWeighIn(em, null, true, null);
 			// logger.debug("all athletes in all groups {}", impactedAthletes);
 		}
+		rankCategories(impactedAthletes, null);
 
+		// for (Athlete a : impactedAthletes) {
+		// Participation p = a.getMainRankings();
+		// if (p != null) logger.debug("** {} {}", a, p.long_dump());
+		// }
+		return impactedAthletes;
+	}
+
+	/**
+	 * Assign ranks within each category, for all athletes in categories present in group, using an index that only
+	 * repositions the athletes written since the previous call.
+	 *
+	 * @param em
+	 * @param g     the current group
+	 * @param index the index kept by the field of play
+	 * @return all the athletes in the group's categories (i.e. not only these in group g)
+	 */
+	public static List<Athlete> assignCategoryRanks(EntityManager em, Group g, CategoryRankingIndex index) {
+		if (g == null || index == null) {
+			return assignCategoryRanks(em, g);
+		}
+		index.beforeLoad();
+		List<Athlete> impactedAthletes = AthleteRepository.findAthletesForGlobalRanking(em, g);
+		rankCategories(impactedAthletes, index);
+		return impactedAthletes;
+	}
+
+	/**
+	 * Assign ranks within each category to athletes already loaded.
+	 *
+	 * @param impactedAthletes all the athletes in the categories concerned
+	 * @param index            the index kept by the field of play, null to sort all the athletes
+	 */
+	public static void rankCategories(List<Athlete> impactedAthletes, CategoryRankingIndex index) {
+		if (index != null) {
+			Set<Athlete> modified = index.assignCategoryRanks(impactedAthletes);
+			logger.debug("category ranks changed for {} athletes out of {}", modified.size(),
+			        impactedAthletes.size());
+			return;
+		}
 		List<Athlete> sortedAthletes;
 		sortedAthletes = AthleteSorter.resultsOrderCopy(impactedAthletes, Ranking.SNATCH, true);
 		AthleteSorter.assignEligibleCategoryRanks(sortedAthletes, Ranking.SNATCH);
@@ -71,12 +112,6 @@ public class AthleteSorter implements Serializable {
 		AthleteSorter.assignEligibleCategoryRanks(sortedAthletes, Ranking.TOTAL);
 		sortedAthletes = AthleteSorter.resultsOrderCopy(impactedAthletes, Ranking.CUSTOM, true);
 		AthleteSorter.assignEligibleCategoryRanks(sortedAthletes, Ranking.CUSTOM);
-
-		// for (Athlete a : impactedAthletes) {
-		// Participation p = a.getMainRankings();
-		// if (p != null) logger.debug("** {} {}", a, p.long_dump());
-		// }
-		return impactedAthletes;
 	}
 
 	/**
@@ -0,0 +1,380 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.athleteSort;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.category.Participation;
+import app.owlcms.data.competition.Competition;
+import app.owlcms.data.group.Group;
+import app.owlcms.data.jpa.CommittedChanges;
+import app.owlcms.data.jpa.CommittedChanges.Change;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Category ranks (snatch, clean&amp;jerk, total, custom) kept up to date incrementally.
+ *
+ * For each ranking and each category, the ranked athletes are kept in an {@link OrderStatisticTree} ordered by the
+ * {@link WinningOrderComparator}, so the rank of an athlete is its position in the tree. Each time ranks are assigned,
+ * the athletes written since the previous call (typically the one who just lifted) are moved in the trees, instead of
+ * sorting all the athletes again. Only the participations whose ranks actually moved are updated, so only these rows
+ * are written back.
+ *
+ * The athletes written are known from {@link CommittedChanges}, once their transaction has committed. A change
+ * committed after the athletes were loaded is kept for the next call, so {@link #beforeLoad()} must be called before
+ * the athletes are read. The index rebuilds itself when a session is changed, when the number of athletes is not the
+ * one it knows, or when the tie-break rule changes.
+ *
+ * The ranks are the same as {@link AthleteSorter#assignCategoryRanks(javax.persistence.EntityManager, Group)}: only
+ * eligible athletes are ranked, and athletes with a zero result get rank 0.
+ *
+ * One index is kept per field of play; it is only used from the field of play's thread, the changes are recorded from
+ * the threads that commit them.
+ */
+public class CategoryRankingIndex {
+
+	private static class CategoryTree {
+		OrderStatisticTree<Athlete> tree;
+		Map<Long, Integer> positions = new HashMap<>();
+
+		CategoryTree(Comparator<Athlete> comparator) {
+			this.tree = new OrderStatisticTree<>(comparator);
+		}
+	}
+
+	private static final Ranking[] RANKINGS = { Ranking.SNATCH, Ranking.CLEANJERK, Ranking.TOTAL, Ranking.CUSTOM };
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(CategoryRankingIndex.class);
+	private static AtomicLong changeCount = new AtomicLong();
+	private static Set<CategoryRankingIndex> indexes = Collections.newSetFromMap(new WeakHashMap<>());
+
+	static {
+		CommittedChanges.register(Athlete.class, (a, change) -> changed(a.getId()));
+		// a participation is added or removed when the category of an athlete changes
+		CommittedChanges.register(Participation.class, (p, change) -> {
+			if (change != Change.UPDATE && p.getAthlete() != null) {
+				changed(p.getAthlete().getId());
+			}
+		});
+		CommittedChanges.register(Group.class, (g, change) -> allChanged());
+	}
+
+	private static Comparator<Athlete> comparator(Ranking r) {
+		// the id makes the order total, the comparators can return 0 for athletes from different sessions
+		return new WinningOrderComparator(r, true).thenComparing(Athlete::getId);
+	}
+
+	/**
+	 * Any change to a session can change the order of its athletes (competition time).
+	 */
+	private static void allChanged() {
+		long stamp = changeCount.incrementAndGet();
+		forEachIndex((index) -> index.rebuildRequestedAt = stamp);
+	}
+
+	private static void changed(Long athleteId) {
+		if (athleteId == null) {
+			return;
+		}
+		long stamp = changeCount.incrementAndGet();
+		forEachIndex((index) -> index.dirty.put(athleteId, stamp));
+	}
+
+	private static void forEachIndex(Consumer<CategoryRankingIndex> action) {
+		synchronized (indexes) {
+			indexes.forEach(action);
+		}
+	}
+
+	private static int getRank(Participation p, Ranking r) {
+		switch (r) {
+			case SNATCH:
+				return p.getSnatchRank();
+			case CLEANJERK:
+				return p.getCleanJerkRank();
+			case TOTAL:
+				return p.getTotalRank();
+			case CUSTOM:
+				return p.getCustomRank();
+			default:
+				throw new UnsupportedOperationException("not a category ranking " + r);
+		}
+	}
+
+	/**
+	 * @return the categories in which the athlete is ranked, empty if not ranked (not eligible or zero result).
+	 */
+	private static List<String> rankedCategories(Athlete a, Ranking r) {
+		List<String> codes = new ArrayList<>();
+		if (a.isEligibleForIndividualRanking() && Ranking.getRankingValue(a, r) > 0) {
+			for (Participation p : a.getParticipations()) {
+				codes.add(p.getCategory().getComputedCode());
+			}
+		}
+		return codes;
+	}
+
+	private static void setRank(Participation p, Ranking r, int rank) {
+		switch (r) {
+			case SNATCH:
+				p.setSnatchRank(rank);
+				break;
+			case CLEANJERK:
+				p.setCleanJerkRank(rank);
+				break;
+			case TOTAL:
+				p.setTotalRank(rank);
+				break;
+			case CUSTOM:
+				p.setCustomRank(rank);
+				break;
+			default:
+				throw new UnsupportedOperationException("not a category ranking " + r);
+		}
+	}
+
+	private long builtAt = -1;
+	private Map<Long, Long> dirty = new ConcurrentHashMap<>();
+	private Set<Long> ids;
+	private long loadedAt;
+	private Boolean oldBodyWeightTieBreak;
+	private volatile long rebuildRequestedAt;
+	private Map<Ranking, Map<String, CategoryTree>> trees = new HashMap<>();
+
+	public CategoryRankingIndex() {
+		synchronized (indexes) {
+			indexes.add(this);
+		}
+	}
+
+	/**
+	 * Assign the category ranks for the athletes.
+	 *
+	 * @param athletes all the athletes in the categories concerned, freshly loaded after {@link #beforeLoad()}
+	 * @return the athletes for which at least one rank was changed
+	 */
+	public Set<Athlete> assignCategoryRanks(List<Athlete> athletes) {
+		long stamp = this.loadedAt;
+		boolean tieBreak = Competition.getCurrent().isUseOldBodyWeightTieBreak();
+		if (this.ids == null || this.rebuildRequestedAt > this.builtAt
+		        || !Objects.equals(this.oldBodyWeightTieBreak, tieBreak) || this.ids.size() != athletes.size()) {
+			Set<Long> newIds = new HashSet<>();
+			for (Athlete a : athletes) {
+				if (a.getId() == null) {
+					// not persisted, cannot be tracked.
+					reset();
+					return assignAll(athletes);
+				}
+				newIds.add(a.getId());
+			}
+			rebuild(athletes);
+			this.ids = newIds;
+			this.builtAt = stamp;
+			this.oldBodyWeightTieBreak = tieBreak;
+			this.dirty.entrySet().removeIf((e) -> e.getValue() <= stamp);
+			return assignRanks(athletes, fresh(athletes, null));
+		}
+
+		Set<Long> changed = new HashSet<>();
+		for (Map.Entry<Long, Long> e : this.dirty.entrySet()) {
+			changed.add(e.getKey());
+			if (e.getValue() <= stamp) {
+				// committed before the athletes were read, so they have the change.
+				this.dirty.remove(e.getKey(), e.getValue());
+			}
+		}
+		Map<Long, Athlete> byId = fresh(athletes, changed);
+		if (!changed.isEmpty()) {
+			update(changed, byId);
+		}
+		logger.debug("{} athletes repositioned out of {}", changed.size(), athletes.size());
+		return assignRanks(athletes, byId);
+	}
+
+	/**
+	 * Record the changes committed so far; called before the athletes are read from the database.
+	 */
+	public void beforeLoad() {
+		this.loadedAt = changeCount.get();
+	}
+
+	/**
+	 * Forget everything, the next call will rebuild.
+	 */
+	public void reset() {
+		this.ids = null;
+		this.trees = new HashMap<>();
+	}
+
+	/**
+	 * Used when the athletes cannot be tracked: sort them all.
+	 */
+	private Set<Athlete> assignAll(List<Athlete> athletes) {
+		Set<Athlete> modified = new LinkedHashSet<>();
+		for (Ranking r : RANKINGS) {
+			Map<String, List<Athlete>> byCategory = new HashMap<>();
+			for (Athlete a : athletes) {
+				for (String code : rankedCategories(a, r)) {
+					byCategory.computeIfAbsent(code, (k) -> new ArrayList<>()).add(a);
+				}
+			}
+			for (Map.Entry<String, List<Athlete>> e : byCategory.entrySet()) {
+				List<Athlete> sorted = e.getValue();
+				sorted.sort(new WinningOrderComparator(r, true));
+				int rank = 0;
+				for (Athlete a : sorted) {
+					rank++;
+					updateRank(a, e.getKey(), r, rank, modified);
+				}
+			}
+			assignZeroRanks(athletes, r, modified);
+		}
+		return modified;
+	}
+
+	/**
+	 * Read the ranks from the trees and update the participations of the freshly loaded athletes whose rank differs.
+	 * The trees keep the instances from the call where the athlete last changed, which have the same results.
+	 */
+	private Set<Athlete> assignRanks(List<Athlete> athletes, Map<Long, Athlete> byId) {
+		Set<Athlete> modified = new LinkedHashSet<>();
+		for (Ranking r : RANKINGS) {
+			Map<String, CategoryTree> rankingTrees = this.trees.get(r);
+			for (Map.Entry<String, CategoryTree> e : rankingTrees.entrySet()) {
+				String code = e.getKey();
+				CategoryTree ct = e.getValue();
+				ct.positions.clear();
+				int[] rank = { 0 };
+				ct.tree.forEach((a) -> {
+					ct.positions.put(a.getId(), rank[0]);
+					rank[0]++;
+					updateRank(byId.get(a.getId()), code, r, rank[0], modified);
+				});
+			}
+			assignZeroRanks(athletes, r, modified);
+		}
+		return modified;
+	}
+
+	/**
+	 * Eligible athletes without a result get rank 0 in all their categories.
+	 */
+	private void assignZeroRanks(List<Athlete> athletes, Ranking r, Set<Athlete> modified) {
+		for (Athlete a : athletes) {
+			if (a.isEligibleForIndividualRanking() && Ranking.getRankingValue(a, r) <= 0) {
+				for (Participation p : a.getParticipations()) {
+					if (getRank(p, r) != 0) {
+						setRank(p, r, 0);
+						modified.add(a);
+					}
+				}
+			}
+		}
+	}
+
+	private void rebuild(List<Athlete> athletes) {
+		this.trees = new HashMap<>();
+		for (Ranking r : RANKINGS) {
+			Map<String, List<Athlete>> byCategory = new HashMap<>();
+			for (Athlete a : athletes) {
+				for (String code : rankedCategories(a, r)) {
+					byCategory.computeIfAbsent(code, (k) -> new ArrayList<>()).add(a);
+				}
+			}
+			Map<String, CategoryTree> rankingTrees = new HashMap<>();
+			Comparator<Athlete> comparator = comparator(r);
+			for (Map.Entry<String, List<Athlete>> e : byCategory.entrySet()) {
+				CategoryTree ct = new CategoryTree(comparator);
+				ct.tree.build(e.getValue());
+				rankingTrees.put(e.getKey(), ct);
+			}
+			this.trees.put(r, rankingTrees);
+		}
+		logger.debug("rebuilt category rankings for {} athletes", athletes.size());
+	}
+
+	/**
+	 * @param athletes the freshly loaded athletes
+	 * @param changed  the ids of the athletes to add to the index, null for all
+	 * @return the freshly loaded athletes, by id
+	 */
+	private Map<Long, Athlete> fresh(List<Athlete> athletes, Set<Long> changed) {
+		Map<Long, Athlete> byId = new HashMap<>(athletes.size() * 2);
+		for (Athlete a : athletes) {
+			byId.put(a.getId(), a);
+			if (changed != null && this.ids.add(a.getId())) {
+				// new in these categories
+				changed.add(a.getId());
+			}
+		}
+		return byId;
+	}
+
+	/**
+	 * Remove the changed athletes from the trees (by position, since their sort values have changed), and insert the
+	 * freshly loaded instances at their new position. An athlete that is no longer loaded has left the categories.
+	 */
+	private void update(Set<Long> changed, Map<Long, Athlete> byId) {
+		for (Ranking r : RANKINGS) {
+			Map<String, CategoryTree> rankingTrees = this.trees.get(r);
+			for (CategoryTree ct : rankingTrees.values()) {
+				List<Integer> toRemove = new ArrayList<>();
+				for (Long id : changed) {
+					Integer position = ct.positions.get(id);
+					if (position != null) {
+						toRemove.add(position);
+					}
+				}
+				// from the end, so the other positions stay valid
+				toRemove.sort(Comparator.reverseOrder());
+				for (int position : toRemove) {
+					ct.tree.removeAt(position);
+				}
+			}
+			Comparator<Athlete> comparator = comparator(r);
+			for (Long id : changed) {
+				Athlete a = byId.get(id);
+				if (a == null) {
+					this.ids.remove(id);
+					continue;
+				}
+				for (String code : rankedCategories(a, r)) {
+					rankingTrees.computeIfAbsent(code, (k) -> new CategoryTree(comparator)).tree.insert(a);
+				}
+			}
+			rankingTrees.values().removeIf((ct) -> ct.tree.size() == 0);
+		}
+	}
+
+	private void updateRank(Athlete a, String code, Ranking r, int rank, Set<Athlete> modified) {
+		if (a == null) {
+			return;
+		}
+		for (Participation p : a.getParticipations()) {
+			if (code.equals(p.getCategory().getComputedCode()) && getRank(p, r) != rank) {
+				setRank(p, r, rank);
+				modified.add(a);
+			}
+		}
+	}
+
+}
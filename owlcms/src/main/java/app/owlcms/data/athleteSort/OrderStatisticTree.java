@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.athleteSort;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Sorted sequence with O(log n) insertion, removal by position, and access by position.
+ *
+ * This is a treap where each node knows the size of its subtree, so the position of an element is its rank. Removal is
+ * by position, so an element whose sort values have changed since it was inserted can still be removed; immutable
+ * elements can also be located with {@link #indexOf(Object)}.
+ *
+ * @param <E> the element type
+ */
+public class OrderStatisticTree<E> {
+
+	private static class Node<E> {
+		E element;
+		int priority;
+		int size = 1;
+		Node<E> left;
+		Node<E> right;
+
+		Node(E element, int priority) {
+			this.element = element;
+			this.priority = priority;
+		}
+	}
+
+	private final Comparator<? super E> comparator;
+	private final Random random = new Random(0);
+	private Node<E> root;
+
+	public OrderStatisticTree(Comparator<? super E> comparator) {
+		this.comparator = comparator;
+	}
+
+	/**
+	 * Replace the content with the elements, sorting them first.
+	 *
+	 * @param elements
+	 */
+	public void build(List<E> elements) {
+		elements.sort(this.comparator);
+		this.root = null;
+		for (E e : elements) {
+			this.root = merge(this.root, new Node<>(e, this.random.nextInt()));
+		}
+	}
+
+	/**
+	 * @param index 0-based position
+	 * @return the element at that position
+	 */
+	public E get(int index) {
+		checkIndex(index);
+		Node<E> n = this.root;
+		while (true) {
+			int leftSize = size(n.left);
+			if (index < leftSize) {
+				n = n.left;
+			} else if (index == leftSize) {
+				return n.element;
+			} else {
+				index = index - leftSize - 1;
+				n = n.right;
+			}
+		}
+	}
+
+	/**
+	 * Visit the elements in order.
+	 *
+	 * @param action
+	 */
+	public void forEach(Consumer<? super E> action) {
+		Deque<Node<E>> stack = new ArrayDeque<>();
+		Node<E> n = this.root;
+		while (n != null || !stack.isEmpty()) {
+			while (n != null) {
+				stack.push(n);
+				n = n.left;
+			}
+			n = stack.pop();
+			action.accept(n.element);
+			n = n.right;
+		}
+	}
+
+	/**
+	 * Find an element by comparison. Only meaningful if the comparator is a total order and the element's sort values
+	 * are the ones it had when inserted.
+	 *
+	 * @param element
+	 * @return the 0-based position of an element that compares equal, -1 if none.
+	 */
+	public int indexOf(E element) {
+		int index = 0;
+		Node<E> n = this.root;
+		while (n != null) {
+			int compare = this.comparator.compare(element, n.element);
+			if (compare < 0) {
+				n = n.left;
+			} else if (compare > 0) {
+				index += size(n.left) + 1;
+				n = n.right;
+			} else {
+				return index + size(n.left);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Insert an element after the elements that compare equal to it.
+	 *
+	 * @param element
+	 * @return the 0-based position of the element
+	 */
+	public int insert(E element) {
+		int index = 0;
+		Node<E> n = this.root;
+		while (n != null) {
+			if (this.comparator.compare(element, n.element) < 0) {
+				n = n.left;
+			} else {
+				index += size(n.left) + 1;
+				n = n.right;
+			}
+		}
+		Node<E> newNode = new Node<>(element, this.random.nextInt());
+		Node<E>[] parts = split(this.root, index);
+		this.root = merge(merge(parts[0], newNode), parts[1]);
+		return index;
+	}
+
+	/**
+	 * @param index 0-based position
+	 * @return the element removed
+	 */
+	public E removeAt(int index) {
+		checkIndex(index);
+		Node<E>[] parts = split(this.root, index);
+		Node<E>[] rest = split(parts[1], 1);
+		this.root = merge(parts[0], rest[1]);
+		return rest[0].element;
+	}
+
+	/**
+	 * Replace each element, in order, without changing the order. The replacement must compare the same as the
+	 * element it replaces.
+	 *
+	 * @param operator
+	 */
+	public void replaceAll(UnaryOperator<E> operator) {
+		Deque<Node<E>> stack = new ArrayDeque<>();
+		Node<E> n = this.root;
+		while (n != null || !stack.isEmpty()) {
+			while (n != null) {
+				stack.push(n);
+				n = n.left;
+			}
+			n = stack.pop();
+			n.element = operator.apply(n.element);
+			n = n.right;
+		}
+	}
+
+	public int size() {
+		return size(this.root);
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("index " + index + " size " + size());
+		}
+	}
+
+	private Node<E> merge(Node<E> a, Node<E> b) {
+		if (a == null) {
+			return b;
+		}
+		if (b == null) {
+			return a;
+		}
+		if (a.priority > b.priority) {
+			a.right = merge(a.right, b);
+			update(a);
+			return a;
+		} else {
+			b.left = merge(a, b.left);
+			update(b);
+			return b;
+		}
+	}
+
+	private int size(Node<E> n) {
+		return n == null ? 0 : n.size;
+	}
+
+	/**
+	 * @return the first <code>count</code> elements and the rest.
+	 */
+	@SuppressWarnings("unchecked")
+	private Node<E>[] split(Node<E> n, int count) {
+		if (n == null) {
+			return new Node[] { null, null };
+		}
+		int leftSize = size(n.left);
+		if (count <= leftSize) {
+			Node<E>[] parts = split(n.left, count);
+			n.left = parts[1];
+			update(n);
+			return new Node[] { parts[0], n };
+		} else {
+			Node<E>[] parts = split(n.right, count - leftSize - 1);
+			n.right = parts[0];
+			update(n);
+			return new Node[] { n, parts[1] };
+		}
+	}
+
+	private void update(Node<E> n) {
+		n.size = 1 + size(n.left) + size(n.right);
+	}
+
+}
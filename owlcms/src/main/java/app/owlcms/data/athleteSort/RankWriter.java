@@ -0,0 +1,347 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.athleteSort;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import javax.persistence.Cache;
+
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.category.Participation;
+import app.owlcms.data.category.ParticipationId;
+import app.owlcms.data.jpa.DataVersion;
+import app.owlcms.data.jpa.JPAService;
+import app.owlcms.utils.LoggerUtils;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Write-behind buffer for the ranks of athletes and participations.
+ *
+ * Ranking a session changes a few rank columns on many rows. Instead of having every ranked entity dirty-checked and
+ * written at the end of the transaction, the rank values are noted before ranking ({@link #snapshot(Collection)}) and
+ * compared after ({@link #write(Snapshot, Collection)}); only the columns that changed are queued, and written by a
+ * background thread as JDBC batches, one statement per set of columns. Only the rows written are evicted from the
+ * second-level cache. A batch that fails is queued again and retried. Anything that reads ranks from the database,
+ * such as documents and exports, calls {@link #flush()} first.
+ *
+ * The athletes given to a snapshot may have been read before the queued ranks were written. The ranks still queued, and
+ * those of the last batch written, are taken as the values before ranking; otherwise a rank changed back to its value
+ * in the database would not be queued, and the older rank still queued would be written instead.
+ */
+public class RankWriter {
+
+	/**
+	 * Rank values before ranking.
+	 */
+	public static class Snapshot {
+		private final Map<Long, Integer[]> athletes = new HashMap<>();
+		private final Map<ParticipationId, Integer[]> participations = new HashMap<>();
+		private final boolean withParticipations;
+
+		Snapshot(boolean withParticipations) {
+			this.withParticipations = withParticipations;
+		}
+	}
+
+	private static final String[] ATHLETE_FIELDS = { "sinclairRank", "catSinclairRank", "combinedRank", "robiRank",
+	        "smmRank", "qPointsRank", "gmaxRank" };
+	private static final List<Function<Athlete, Integer>> ATHLETE_GETTERS = List.of(
+	        Athlete::getSinclairRank, Athlete::getCatSinclairRank, Athlete::getCombinedRank, Athlete::getRobiRank,
+	        Athlete::getSmmRank, Athlete::getqPointsRank, Athlete::getGmaxRank);
+	private static final String[] PARTICIPATION_FIELDS = { "snatchRank", "cleanJerkRank", "totalRank", "customRank",
+	        "combinedRank" };
+	private static final List<Function<Participation, Integer>> PARTICIPATION_GETTERS = List.of(
+	        Participation::getSnatchRank, Participation::getCleanJerkRank, Participation::getTotalRank,
+	        Participation::getCustomRank, Participation::getCombinedRank);
+
+	private static final long RETRY_SECONDS = 5;
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(RankWriter.class);
+	private static Map<Long, Map<String, Integer>> pendingAthletes = new LinkedHashMap<>();
+	private static Map<ParticipationId, Map<String, Integer>> pendingParticipations = new LinkedHashMap<>();
+	/**
+	 * the batch being written, or the last one written
+	 */
+	private static Map<Long, Map<String, Integer>> writtenAthletes = new LinkedHashMap<>();
+	private static Map<ParticipationId, Map<String, Integer>> writtenParticipations = new LinkedHashMap<>();
+	private static AtomicBoolean scheduled = new AtomicBoolean();
+	private static ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor((r) -> {
+		Thread t = new Thread(r, "rank-writer");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * Write the queued ranks now, and wait until they are in the database.
+	 */
+	public static void flush() {
+		try {
+			writer.submit(RankWriter::writePending).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			LoggerUtils.logError(logger, e.getCause());
+		}
+	}
+
+	/**
+	 * Queue one athlete rank.
+	 *
+	 * @param athleteId
+	 * @param field     the name of the Athlete attribute
+	 * @param rank
+	 */
+	public static void queue(Long athleteId, String field, Integer rank) {
+		synchronized (RankWriter.class) {
+			pendingAthletes.computeIfAbsent(athleteId, (id) -> new LinkedHashMap<>()).put(field, rank);
+		}
+		schedule();
+	}
+
+	/**
+	 * @param athletes athletes about to be ranked
+	 * @return their current ranks, including their category ranks
+	 */
+	public static Snapshot snapshot(Collection<Athlete> athletes) {
+		return snapshot(athletes, true);
+	}
+
+	/**
+	 * @param athletes           athletes about to be ranked
+	 * @param withParticipations false if only the overall ranks will change, so the participations need not be read
+	 * @return their current ranks
+	 */
+	public static Snapshot snapshot(Collection<Athlete> athletes, boolean withParticipations) {
+		Snapshot s = new Snapshot(withParticipations);
+		for (Athlete a : athletes) {
+			if (a.getId() == null) {
+				continue;
+			}
+			s.athletes.put(a.getId(), values(a, ATHLETE_GETTERS));
+			if (!withParticipations) {
+				continue;
+			}
+			for (Participation p : a.getParticipations()) {
+				s.participations.put(p.getId(), values(p, PARTICIPATION_GETTERS));
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Queue the ranks that changed since the snapshot.
+	 *
+	 * @param before   taken before ranking
+	 * @param athletes the same athletes, ranked
+	 * @return the number of rows queued
+	 */
+	public static int write(Snapshot before, Collection<Athlete> athletes) {
+		int rows = 0;
+		synchronized (RankWriter.class) {
+			for (Athlete a : athletes) {
+				Integer[] old = before.athletes.get(a.getId());
+				if (old != null && queueChanges(pendingAthletes, writtenAthletes, a.getId(), old,
+				        values(a, ATHLETE_GETTERS), ATHLETE_FIELDS)) {
+					rows++;
+				}
+				if (!before.withParticipations) {
+					continue;
+				}
+				for (Participation p : a.getParticipations()) {
+					Integer[] oldP = before.participations.get(p.getId());
+					if (oldP != null && queueChanges(pendingParticipations, writtenParticipations, p.getId(), oldP,
+					        values(p, PARTICIPATION_GETTERS), PARTICIPATION_FIELDS)) {
+						rows++;
+					}
+				}
+			}
+		}
+		if (rows > 0) {
+			schedule();
+		}
+		return rows;
+	}
+
+	/**
+	 * @param pending the ranks not written yet
+	 * @param written the ranks of the last batch
+	 * @param old     the ranks in the snapshot
+	 * @return true if a rank was queued
+	 */
+	private static <K> boolean queueChanges(Map<K, Map<String, Integer>> pending,
+	        Map<K, Map<String, Integer>> written, K key, Integer[] old, Integer[] current, String[] fields) {
+		boolean changed = false;
+		Map<String, Integer> writtenValues = written.get(key);
+		Map<String, Integer> pendingValues = pending.get(key);
+		for (int i = 0; i < fields.length; i++) {
+			Integer expected = old[i];
+			if (writtenValues != null && writtenValues.containsKey(fields[i])) {
+				expected = writtenValues.get(fields[i]);
+			}
+			if (pendingValues != null && pendingValues.containsKey(fields[i])) {
+				expected = pendingValues.get(fields[i]);
+			}
+			if (!Objects.equals(expected, current[i])) {
+				pending.computeIfAbsent(key, (k) -> new LinkedHashMap<>()).put(fields[i], current[i]);
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Put back the ranks of a batch that could not be written, unless newer ones have been queued since.
+	 */
+	private static <K> void requeue(Map<K, Map<String, Integer>> pending, Map<K, Map<String, Integer>> failed) {
+		for (Map.Entry<K, Map<String, Integer>> row : failed.entrySet()) {
+			Map<String, Integer> values = pending.computeIfAbsent(row.getKey(), (k) -> new LinkedHashMap<>());
+			row.getValue().forEach(values::putIfAbsent);
+		}
+	}
+
+	private static void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			writer.execute(RankWriter::writePending);
+		}
+	}
+
+	/**
+	 * @return the update statement, the same for all the rows that change the same columns
+	 */
+	private static String updateStatement(AbstractEntityPersister persister, List<String> fields) {
+		StringBuilder sb = new StringBuilder("update ").append(persister.getTableName()).append(" set ");
+		for (int i = 0; i < fields.size(); i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(persister.getPropertyColumnNames(fields.get(i))[0]).append(" = ?");
+		}
+		sb.append(" where ");
+		String[] keyColumns = persister.getKeyColumnNames();
+		for (int i = 0; i < keyColumns.length; i++) {
+			if (i > 0) {
+				sb.append(" and ");
+			}
+			sb.append(keyColumns[i]).append(" = ?");
+		}
+		return sb.toString();
+	}
+
+	private static <T> Integer[] values(T entity, List<Function<T, Integer>> getters) {
+		Integer[] values = new Integer[getters.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = getters.get(i).apply(entity);
+		}
+		return values;
+	}
+
+	private static void writePending() {
+		scheduled.set(false);
+		Map<Long, Map<String, Integer>> athletes;
+		Map<ParticipationId, Map<String, Integer>> participations;
+		synchronized (RankWriter.class) {
+			if (pendingAthletes.isEmpty() && pendingParticipations.isEmpty()) {
+				return;
+			}
+			athletes = pendingAthletes;
+			participations = pendingParticipations;
+			writtenAthletes = athletes;
+			writtenParticipations = participations;
+			pendingAthletes = new LinkedHashMap<>();
+			pendingParticipations = new LinkedHashMap<>();
+		}
+		long start = System.currentTimeMillis();
+		try {
+			Cache cache = JPAService.runInTransaction(em -> {
+				SessionImplementor session = em.unwrap(SessionImplementor.class);
+				session.doWork((connection) -> {
+					writeRows(session, connection, Athlete.class, athletes);
+					writeRows(session, connection, Participation.class, participations);
+				});
+				return em.getEntityManagerFactory().getCache();
+			});
+			// the cached copies of the other rows are still current.
+			for (Long id : athletes.keySet()) {
+				cache.evict(Athlete.class, id);
+			}
+			for (ParticipationId id : participations.keySet()) {
+				cache.evict(Participation.class, id);
+			}
+			// the updates are not seen by the commit listeners.
+			DataVersion.bump();
+			logger.debug("wrote ranks for {} athletes and {} participations in {}ms", athletes.size(),
+			        participations.size(), System.currentTimeMillis() - start);
+		} catch (Exception e) {
+			synchronized (RankWriter.class) {
+				// the database still has the ranks of the snapshots
+				writtenAthletes = new LinkedHashMap<>();
+				writtenParticipations = new LinkedHashMap<>();
+				requeue(pendingAthletes, athletes);
+				requeue(pendingParticipations, participations);
+			}
+			logger.error("could not write ranks, retrying in {}s {}", RETRY_SECONDS, LoggerUtils.exceptionMessage(e));
+			if (scheduled.compareAndSet(false, true)) {
+				writer.schedule(RankWriter::writePending, RETRY_SECONDS, TimeUnit.SECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Update the rows, one batch per set of columns changed.
+	 */
+	private static <K> void writeRows(SessionImplementor session, Connection connection, Class<?> entityClass,
+	        Map<K, Map<String, Integer>> rows) throws SQLException {
+		AbstractEntityPersister persister = (AbstractEntityPersister) session.getFactory().getMetamodel()
+		        .entityPersister(entityClass);
+		Map<Set<String>, List<Map.Entry<K, Map<String, Integer>>>> rowsByFields = new LinkedHashMap<>();
+		for (Map.Entry<K, Map<String, Integer>> row : rows.entrySet()) {
+			rowsByFields.computeIfAbsent(new TreeSet<>(row.getValue().keySet()), (k) -> new ArrayList<>()).add(row);
+		}
+		for (Map.Entry<Set<String>, List<Map.Entry<K, Map<String, Integer>>>> batch : rowsByFields.entrySet()) {
+			List<String> fields = new ArrayList<>(batch.getKey());
+			try (PreparedStatement ps = connection.prepareStatement(updateStatement(persister, fields))) {
+				for (Map.Entry<K, Map<String, Integer>> row : batch.getValue()) {
+					int i = 1;
+					for (String f : fields) {
+						Integer v = row.getValue().get(f);
+						if (v == null) {
+							ps.setNull(i++, Types.INTEGER);
+						} else {
+							ps.setInt(i++, v);
+						}
+					}
+					// binds all the id columns, for the composite id of participations as well
+					persister.getIdentifierType().nullSafeSet(ps, row.getKey(), i, session);
+					ps.addBatch();
+				}
+				ps.executeBatch();
+			}
+		}
+	}
+
+}
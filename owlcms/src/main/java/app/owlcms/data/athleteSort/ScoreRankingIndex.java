@@ -0,0 +1,392 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.athleteSort;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athlete.AthleteRepository;
+import app.owlcms.data.athlete.Gender;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Competition-wide ranking for the current scoring system (Sinclair, Q-points, GAMX, etc.), kept in memory and updated
+ * incrementally.
+ *
+ * All the weighed-in athletes are loaded once. After that, each update only repositions the athletes given, which are
+ * the ones just loaded by the field of play; the athletes whose rank shifted as a consequence are written back in the
+ * background, so a decision does not reload and rewrite the whole competition. Per gender, all the athletes are kept in
+ * an {@link OrderStatisticTree} in the same order as the {@link WinningOrderComparator} (used for the reporting lists),
+ * and the eligible athletes with a score in a second one, whose positions are the ranks.
+ *
+ * Only the ids and the values used for sorting are kept, never the Athlete instances: the ranks are set on the
+ * athletes given by the caller, and the other ranks only reach the database through the {@link RankWriter}.
+ *
+ * The index is dropped when athletes are deleted or imported, and rebuilt on the next update.
+ */
+public class ScoreRankingIndex {
+
+	/**
+	 * Immutable snapshot of the values used for sorting, so entries can be located with the values they were inserted
+	 * with.
+	 */
+	private static class ScoreEntry {
+		final Long id;
+		final Gender gender;
+		final double score;
+		final double bodyWeight;
+		final boolean eligible;
+		/**
+		 * the rank in the database, or queued for writing
+		 */
+		Integer rank;
+
+		ScoreEntry(Athlete a, Ranking ranking) {
+			this.id = a.getId();
+			this.gender = a.getGender();
+			this.score = Ranking.getRankingValue(a, ranking);
+			this.bodyWeight = a.getBodyWeight() != null ? a.getBodyWeight() : 0.0D;
+			this.eligible = a.isEligibleForIndividualRanking();
+			this.rank = getRank(a, ranking);
+		}
+
+		boolean isRanked() {
+			return this.eligible && this.score > 0;
+		}
+
+		boolean sameAs(ScoreEntry other) {
+			return this.gender == other.gender && Double.compare(this.score, other.score) == 0
+			        && Double.compare(this.bodyWeight, other.bodyWeight) == 0 && this.eligible == other.eligible;
+		}
+	}
+
+	private static final Comparator<ScoreEntry> ENTRY_ORDER = Comparator
+	        .comparingDouble((ScoreEntry e) -> -e.score)
+	        .thenComparingDouble((e) -> e.bodyWeight)
+	        .thenComparing((e) -> e.id);
+	private static ScoreRankingIndex current;
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(ScoreRankingIndex.class);
+
+	/**
+	 * @param ranking the current scoring system
+	 * @return the index for that scoring system, null if it is not an overall ranking ordered by score then body weight.
+	 */
+	public static synchronized ScoreRankingIndex get(Ranking ranking) {
+		// category Sinclair breaks ties with the lift order, it is left to the full sort.
+		if (rankField(ranking) == null || ranking == Ranking.CAT_SINCLAIR) {
+			return null;
+		}
+		if (current == null || current.ranking != ranking) {
+			current = new ScoreRankingIndex(ranking);
+		}
+		return current;
+	}
+
+	/**
+	 * Keep a loaded index in sync with an athlete edited outside the field of play (weigh-in, corrections).
+	 *
+	 * @param em      the transaction saving the athlete
+	 * @param athlete the managed athlete
+	 */
+	public static void athleteSaved(EntityManager em, Athlete athlete) {
+		ScoreRankingIndex index;
+		synchronized (ScoreRankingIndex.class) {
+			index = current;
+		}
+		if (athlete.getId() == null) {
+			// new athlete, not identifiable yet
+			invalidate();
+		} else if (index != null && index.isLoaded()) {
+			index.update(em, List.of(athlete));
+		}
+	}
+
+	/**
+	 * Athletes were deleted or imported; the next update reloads everything.
+	 */
+	public static synchronized void invalidate() {
+		current = null;
+	}
+
+	static Integer getRank(Athlete a, Ranking r) {
+		switch (r) {
+			case BW_SINCLAIR:
+				return a.getSinclairRank();
+			case CAT_SINCLAIR:
+				return a.getCatSinclairRank();
+			case ROBI:
+				return a.getRobiRank();
+			case SMM:
+				return a.getSmmRank();
+			case QPOINTS:
+				return a.getqPointsRank();
+			case GAMX:
+				return a.getGmaxRank();
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * @return the name of the Athlete attribute holding the rank, null if not an overall ranking
+	 */
+	static String rankField(Ranking r) {
+		switch (r) {
+			case BW_SINCLAIR:
+				return "sinclairRank";
+			case CAT_SINCLAIR:
+				return "catSinclairRank";
+			case ROBI:
+				return "robiRank";
+			case SMM:
+				return "smmRank";
+			case QPOINTS:
+				return "qPointsRank";
+			case GAMX:
+				return "gmaxRank";
+			default:
+				return null;
+		}
+	}
+
+	static void setRank(Athlete a, Ranking r, int rank) {
+		switch (r) {
+			case BW_SINCLAIR:
+				a.setSinclairRank(rank);
+				break;
+			case CAT_SINCLAIR:
+				a.setCatSinclairRank(rank);
+				break;
+			case ROBI:
+				a.setRobiRank(rank);
+				break;
+			case SMM:
+				a.setSmmRank(rank);
+				break;
+			case QPOINTS:
+				a.setqPointsRank(rank);
+				break;
+			case GAMX:
+				a.setGmaxRank(rank);
+				break;
+			default:
+				break;
+		}
+	}
+
+	private static boolean isWeighedIn(Athlete a) {
+		return a.getBodyWeight() != null && a.getBodyWeight() > 0.1;
+	}
+
+	private Map<Long, ScoreEntry> entries;
+	private Map<Gender, OrderStatisticTree<ScoreEntry>> allByGender = new HashMap<>();
+	private Map<Gender, OrderStatisticTree<ScoreEntry>> rankedByGender = new HashMap<>();
+	private final Ranking ranking;
+
+	private ScoreRankingIndex(Ranking ranking) {
+		this.ranking = ranking;
+	}
+
+	public Ranking getRanking() {
+		return this.ranking;
+	}
+
+	public synchronized boolean isLoaded() {
+		return this.entries != null;
+	}
+
+	/**
+	 * Put athletes in ranking order, and set their current rank: instances kept from a previous list have the rank
+	 * they had when it was built.
+	 *
+	 * @param gender
+	 * @param athletesById instances to use for the weighed-in athletes of that gender
+	 * @return the weighed-in athletes of that gender, best score first; null if one of them is not in athletesById
+	 */
+	public synchronized List<Athlete> sortAndRank(Gender gender, Map<Long, Athlete> athletesById) {
+		List<Athlete> sorted = new ArrayList<>();
+		OrderStatisticTree<ScoreEntry> all = this.allByGender.get(gender);
+		if (all == null) {
+			return sorted;
+		}
+		List<ScoreEntry> ordered = new ArrayList<>(all.size());
+		all.forEach(ordered::add);
+		for (ScoreEntry e : ordered) {
+			Athlete a = athletesById.get(e.id);
+			if (a == null) {
+				return null;
+			}
+			setRank(a, this.ranking, rankOf(e));
+			sorted.add(a);
+		}
+		return sorted;
+	}
+
+	/**
+	 * Reposition the athletes given and assign their ranks. On the first call, all the weighed-in athletes are loaded
+	 * and ranked.
+	 *
+	 * @param em       used for the initial load; the athletes given are expected to be managed by it.
+	 * @param athletes athletes that may have changed, freshly loaded; their ranks are set.
+	 */
+	public synchronized void update(EntityManager em, Collection<Athlete> athletes) {
+		if (this.entries == null) {
+			rebuild(em);
+			return;
+		}
+		Map<Long, Integer> shifted = new HashMap<>();
+		Map<Long, Athlete> given = new HashMap<>();
+		for (Athlete a : athletes) {
+			if (a.getId() != null) {
+				given.put(a.getId(), a);
+				reposition(a, shifted);
+			}
+		}
+		for (Athlete a : given.values()) {
+			ScoreEntry e = this.entries.get(a.getId());
+			if (e != null) {
+				assignRank(a, e);
+			}
+			shifted.remove(a.getId());
+		}
+
+		// the other athletes whose rank moved are not loaded, their rank is written in the background.
+		for (Map.Entry<Long, Integer> s : shifted.entrySet()) {
+			ScoreEntry e = this.entries.get(s.getKey());
+			if (e != null && (e.rank == null || e.rank.intValue() != s.getValue().intValue())) {
+				e.rank = s.getValue();
+				RankWriter.queue(s.getKey(), rankField(this.ranking), s.getValue());
+			}
+		}
+		logger.debug("{} repositioned {}, shifted {}", this.ranking, given.size(), shifted.size());
+	}
+
+	private void assignRank(Athlete a, ScoreEntry e) {
+		int rank = rankOf(e);
+		e.rank = rank;
+		Integer prev = getRank(a, this.ranking);
+		if (prev == null || prev != rank) {
+			setRank(a, this.ranking, rank);
+			RankWriter.queue(a.getId(), rankField(this.ranking), rank);
+		}
+	}
+
+	private void insert(ScoreEntry e) {
+		this.entries.put(e.id, e);
+		this.allByGender.computeIfAbsent(e.gender, (g) -> new OrderStatisticTree<>(ENTRY_ORDER)).insert(e);
+		if (e.isRanked()) {
+			this.rankedByGender.computeIfAbsent(e.gender, (g) -> new OrderStatisticTree<>(ENTRY_ORDER)).insert(e);
+		}
+	}
+
+	/**
+	 * Same values as {@link OverallRankSetter}: -1 if not eligible, 0 if no score.
+	 */
+	private int rankOf(ScoreEntry e) {
+		if (!e.eligible) {
+			return -1;
+		}
+		if (!e.isRanked()) {
+			return 0;
+		}
+		return this.rankedByGender.get(e.gender).indexOf(e) + 1;
+	}
+
+	private void rebuild(EntityManager em) {
+		long start = System.currentTimeMillis();
+		List<Athlete> all = AthleteRepository.doFindAllByGroupAndWeighIn(em, null, true, null);
+		this.entries = new HashMap<>();
+		this.allByGender = new HashMap<>();
+		this.rankedByGender = new HashMap<>();
+		Map<Gender, List<ScoreEntry>> allLists = new HashMap<>();
+		Map<Gender, List<ScoreEntry>> rankedLists = new HashMap<>();
+		Map<Long, Athlete> loaded = new HashMap<>();
+		for (Athlete a : all) {
+			loaded.put(a.getId(), a);
+			ScoreEntry e = new ScoreEntry(a, this.ranking);
+			this.entries.put(e.id, e);
+			allLists.computeIfAbsent(e.gender, (g) -> new ArrayList<>()).add(e);
+			if (e.isRanked()) {
+				rankedLists.computeIfAbsent(e.gender, (g) -> new ArrayList<>()).add(e);
+			}
+		}
+		allLists.forEach((g, l) -> {
+			OrderStatisticTree<ScoreEntry> t = new OrderStatisticTree<>(ENTRY_ORDER);
+			t.build(l);
+			this.allByGender.put(g, t);
+		});
+		rankedLists.forEach((g, l) -> {
+			OrderStatisticTree<ScoreEntry> t = new OrderStatisticTree<>(ENTRY_ORDER);
+			t.build(l);
+			this.rankedByGender.put(g, t);
+		});
+		for (ScoreEntry e : this.entries.values()) {
+			assignRank(loaded.get(e.id), e);
+		}
+		logger.info("{} ranking loaded for {} athletes in {}ms", this.ranking, all.size(),
+		        System.currentTimeMillis() - start);
+	}
+
+	private void remove(ScoreEntry e) {
+		this.entries.remove(e.id);
+		this.allByGender.get(e.gender).removeAt(this.allByGender.get(e.gender).indexOf(e));
+		if (e.isRanked()) {
+			OrderStatisticTree<ScoreEntry> ranked = this.rankedByGender.get(e.gender);
+			ranked.removeAt(ranked.indexOf(e));
+		}
+	}
+
+	/**
+	 * Move the athlete to its new position, and note the new rank of the athletes whose position changed as a result.
+	 */
+	private void reposition(Athlete a, Map<Long, Integer> shifted) {
+		ScoreEntry old = this.entries.get(a.getId());
+		ScoreEntry e = isWeighedIn(a) ? new ScoreEntry(a, this.ranking) : null;
+		if (old != null && e != null && old.sameAs(e)) {
+			return;
+		}
+
+		int oldPos = -1;
+		if (old != null) {
+			oldPos = old.isRanked() ? this.rankedByGender.get(old.gender).indexOf(old) : -1;
+			remove(old);
+			if (oldPos >= 0) {
+				noteShifted(old.gender, oldPos, shifted);
+			}
+		}
+		if (e != null) {
+			insert(e);
+			if (e.isRanked()) {
+				int newPos = this.rankedByGender.get(e.gender).indexOf(e);
+				noteShifted(e.gender, newPos, shifted);
+			}
+		}
+	}
+
+	/**
+	 * Everyone from the position to the end of the ranking may have moved by one.
+	 */
+	private void noteShifted(Gender gender, int from, Map<Long, Integer> shifted) {
+		OrderStatisticTree<ScoreEntry> ranked = this.rankedByGender.get(gender);
+		if (ranked == null) {
+			return;
+		}
+		for (int i = from; i < ranked.size(); i++) {
+			shifted.put(ranked.get(i).id, i + 1);
+		}
+	}
+
+}
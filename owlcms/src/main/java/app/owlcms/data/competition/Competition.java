@@ -11,14 +11,15 @@ import java.text.MessageFormat;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
@@ -47,7 +48,9 @@ import app.owlcms.data.athlete.Athlete;
 import app.owlcms.data.athlete.AthleteRepository;
 import app.owlcms.data.athlete.Gender;
 import app.owlcms.data.athleteSort.AthleteSorter;
+import app.owlcms.data.athleteSort.RankWriter;
 import app.owlcms.data.athleteSort.Ranking;
+import app.owlcms.data.athleteSort.ScoreRankingIndex;
 import app.owlcms.data.athleteSort.WinningOrderComparator;
 import app.owlcms.data.category.Category;
 import app.owlcms.data.category.Participation;
@@ -322,67 +325,56 @@ public class Competition {
 		return medals;
 	}
 
+	/**
+	 * Medal contenders for each category, in a single pass over the participations.
+	 *
+	 * A contender is eligible for individual ranking and has a result in snatch, clean &amp; jerk or total, or has not
+	 * finished. Each participation is wrapped in a PAthlete, so the rankings are those of the category.
+	 *
+	 * @param rankedAthletes
+	 * @return for each category code, the contenders in total ranking order.
+	 */
 	public TreeMap<String, TreeSet<Athlete>> computeMedalsByCategory(List<Athlete> rankedAthletes
 	// , boolean onlyFinished
 	) {
 		logger.debug("computeMedalsByCategory {}", rankedAthletes);
-		// extract all categories
-		Set<Category> medalCategories = rankedAthletes.stream()
-		        .map(a -> a.getEligibleCategories())
-		        .flatMap(Collection::stream)
-		        .collect(Collectors.toSet());
+		// codes of all the categories
+		Set<String> medalCategories = new HashSet<>();
+		for (Athlete a : rankedAthletes) {
+			for (Category c : a.getEligibleCategories()) {
+				medalCategories.add(c.getCode());
+			}
+		}
 
 		// onlyFinishedCategories(rankedAthletes, onlyFinished, medalCategories);
 
 		TreeMap<String, TreeSet<Athlete>> medals = new TreeMap<>();
+		WinningOrderComparator totalOrder = new WinningOrderComparator(Ranking.TOTAL, false);
+		for (String code : medalCategories) {
+			medals.put(code, new TreeSet<>(totalOrder));
+		}
 
-		// iterate over the remaining categories
-		for (Category category : medalCategories) {
-
-			List<Athlete> currentCategoryAthletes = new ArrayList<>();
-			for (Athlete a : rankedAthletes) {
-				// fetch the participation that matches the current athlete registration
-				// category
-				Optional<Participation> matchingParticipation = a.getParticipations().stream()
-				        .filter(p -> p.getCategory().sameAs(category)).findFirst();
-				// get a PAthlete proxy wrapper that has the rankings for that participation
-				if (matchingParticipation.isPresent()) {
-					currentCategoryAthletes.add(new PAthlete(matchingParticipation.get()));
+		Set<String> athleteCategories = new HashSet<>();
+		for (Athlete a : rankedAthletes) {
+			athleteCategories.clear();
+			for (Participation p : a.getParticipations()) {
+				String code = p.getCategory().getCode();
+				// first participation for each category
+				if (!medalCategories.contains(code) || !athleteCategories.add(code)) {
+					continue;
+				}
+				// all rankings are from a PAthlete, i.e., for the current medal category
+				PAthlete pa = new PAthlete(p);
+				if (isMedalContender(pa)) {
+					medals.get(code).add(pa);
 				}
 			}
+		}
 
-			// all rankings are from a PAthlete, i.e., for the current medal category
-			List<Athlete> snatchLeaders = null;
-			List<Athlete> cjLeaders = null;
-			// if (isSnatchCJTotalMedals()) {
-			snatchLeaders = AthleteSorter.resultsOrderCopy(currentCategoryAthletes, Ranking.SNATCH)
-			        .stream().filter(a -> a.getBestSnatch() > 0 && a.isEligibleForIndividualRanking())
-			        .collect(Collectors.toList());
-			cjLeaders = AthleteSorter.resultsOrderCopy(currentCategoryAthletes, Ranking.CLEANJERK)
-			        .stream().filter(a -> a.getBestCleanJerk() > 0 && a.isEligibleForIndividualRanking())
-			        .collect(Collectors.toList());
-			// }
-			List<Athlete> totalLeaders = AthleteSorter.resultsOrderCopy(currentCategoryAthletes, Ranking.TOTAL)
-			        .stream().filter(a -> a.getTotal() > 0 && a.isEligibleForIndividualRanking())
-			        .collect(Collectors.toList());
-			List<Athlete> notFinished = AthleteSorter.resultsOrderCopy(currentCategoryAthletes, Ranking.TOTAL)
-			        .stream().filter(a -> a.isEligibleForIndividualRanking() && a.getActuallyAttemptedLifts() < 6)
-			        .collect(Collectors.toList());
-
-			// Athletes excluded from Total due to bombing out can still win medals, so we
-			// add them
-			TreeSet<Athlete> medalists = new TreeSet<>(new WinningOrderComparator(Ranking.TOTAL, false));
-			medalists.addAll(totalLeaders);
-			// if (isSnatchCJTotalMedals()) {
-			medalists.addAll(cjLeaders);
-			medalists.addAll(snatchLeaders);
-			medalists.addAll(notFinished);
-			// }
-			medals.put(category.getCode(), medalists);
-
-			if (StartupUtils.isTraceSetting()) {
-				logger./**/warn("medalists for {}", category);
-				for (Athlete medalist : medalists) {
+		if (StartupUtils.isTraceSetting()) {
+			for (Entry<String, TreeSet<Athlete>> e : medals.entrySet()) {
+				logger./**/warn("medalists for {}", e.getKey());
+				for (Athlete medalist : e.getValue()) {
 					logger./**/warn("{}\tS{} C{} T{} Sinc {}", medalist.getShortName(), medalist.getSnatchRank(),
 					        medalist.getCleanJerkRank(), medalist.getTotalRank(), medalist.getSinclairRank());
 				}
@@ -939,7 +931,35 @@ public class Competition {
 		List<Athlete> athletes = AthleteRepository.doFindAllByGroupAndWeighIn(em, null, true, null);
 		long afterFindAll = System.currentTimeMillis();
 		logger.warn("------------------------- scoringSystemRankings doFindAllByGroupAndWeighIn {}ms", afterFindAll - beforeFindAll);
+		RankWriter.Snapshot before = RankWriter.snapshot(athletes, false);
 		doGlobalRankings(athletes, SCORING_SYSTEM_ONLY);
+		RankWriter.write(before, athletes);
+	}
+
+	/**
+	 * Update the scoring system ranking after the athletes given have changed, without reloading the competition when
+	 * the scoring system is kept in a {@link ScoreRankingIndex}.
+	 *
+	 * @param em       the current transaction
+	 * @param athletes the athletes that may have changed, managed by em
+	 */
+	public void scoringSystemRankings(EntityManager em, List<Athlete> athletes) {
+		Ranking scoringSystem = getScoringSystem();
+		ScoreRankingIndex index = ScoreRankingIndex.get(scoringSystem);
+		if (index == null) {
+			scoringSystemRankings(em);
+			return;
+		}
+		index.update(em, athletes);
+		List<Athlete> sortedMen = sortedFromIndex(index, Gender.M, athletes, scoringSystem.getMReportingName());
+		List<Athlete> sortedWomen = sortedFromIndex(index, Gender.F, athletes, scoringSystem.getWReportingName());
+		if (sortedMen == null || sortedWomen == null) {
+			// no complete list to reuse yet
+			scoringSystemRankings(em);
+			return;
+		}
+		this.reportingBeans.put(scoringSystem.getMReportingName(), sortedMen);
+		this.reportingBeans.put(scoringSystem.getWReportingName(), sortedWomen);
 	}
 
 	@Override
@@ -1603,6 +1623,18 @@ public class Competition {
 		return list;
 	}
 
+	/**
+	 * Athletes excluded from the total due to bombing out can still win medals in snatch or clean &amp; jerk, and those
+	 * who have not finished can still win any medal.
+	 */
+	private static boolean isMedalContender(Athlete a) {
+		if (!a.isEligibleForIndividualRanking()) {
+			return false;
+		}
+		return a.getBestSnatch() > 0 || a.getBestCleanJerk() > 0 || a.getTotal() > 0
+		        || a.getActuallyAttemptedLifts() < 6;
+	}
+
 	private void reportCombined(List<Athlete> sortedAthletes, List<Athlete> sortedMen, List<Athlete> sortedWomen) {
 		getOrCreateBean("mCombined");
 		this.reportingBeans.put("mCombined", sortedMen);
@@ -1692,6 +1724,32 @@ public class Competition {
 		}
 	}
 
+	/**
+	 * Reorder a reporting list without reloading the athletes that did not change. The ranks of the athletes kept from
+	 * the list are updated, since a lift can move them down.
+	 *
+	 * @param index    the ranking
+	 * @param gender   the gender of the list
+	 * @param athletes the athletes just loaded, used instead of the ones in the list
+	 * @param listName the reporting list
+	 * @return the athletes in the new order, null if the list does not have all of them
+	 */
+	@SuppressWarnings("unchecked")
+	private List<Athlete> sortedFromIndex(ScoreRankingIndex index, Gender gender, List<Athlete> athletes,
+	        String listName) {
+		Map<Long, Athlete> byId = new HashMap<>();
+		List<Athlete> previous = (List<Athlete>) this.reportingBeans.get(listName);
+		if (previous != null) {
+			for (Athlete a : previous) {
+				byId.put(a.getId(), a);
+			}
+		}
+		for (Athlete a : athletes) {
+			byId.put(a.getId(), a);
+		}
+		return index.sortAndRank(gender, byId);
+	}
+
 	@SuppressWarnings({ "unchecked", "unused" })
 	private void splitResultsByGroups(List<PAthlete> athletes) {
 		// create one list per competition group
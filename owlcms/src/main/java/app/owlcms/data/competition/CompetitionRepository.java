@@ -13,7 +13,9 @@ import javax.persistence.Query;
 
 import org.slf4j.LoggerFactory;
 
+import app.owlcms.data.jpa.DataVersion;
 import app.owlcms.data.jpa.JPAService;
+import app.owlcms.data.records.RecordIndex;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 
@@ -53,6 +55,7 @@ public class CompetitionRepository {
 		logger.info("deleted {} age groups", deletedCount);
 		deletedCount = em.createQuery("DELETE FROM RecordEvent").executeUpdate();
 		logger.info("deleted {} records", deletedCount);
+		RecordIndex.invalidate();
 		deletedCount = em.createQuery("DELETE FROM Platform").executeUpdate();
 		logger.info("deleted {} platforms", deletedCount);
 		deletedCount = em.createQuery("DELETE FROM Config").executeUpdate();
@@ -62,6 +65,8 @@ public class CompetitionRepository {
 
 		em.flush();
 		em.clear();
+		// bulk deletes are not seen by the commit listeners.
+		DataVersion.bumpAfterCommit(em);
 	}
 
 	/**
@@ -6,11 +6,13 @@
  *******************************************************************************/
 package app.owlcms.data.export;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.util.List;
-import java.util.Locale;
 import java.util.stream.Collectors;
 
 import org.slf4j.LoggerFactory;
@@ -28,6 +30,7 @@ import app.owlcms.data.agegroup.AgeGroupRepository;
 import app.owlcms.data.agegroup.Championship;
 import app.owlcms.data.athlete.Athlete;
 import app.owlcms.data.athlete.AthleteRepository;
+import app.owlcms.data.athleteSort.ScoreRankingIndex;
 import app.owlcms.data.category.CategoryRepository;
 import app.owlcms.data.competition.Competition;
 import app.owlcms.data.competition.CompetitionRepository;
@@ -40,9 +43,8 @@ import app.owlcms.data.platform.PlatformRepository;
 import app.owlcms.data.records.RecordConfig;
 import app.owlcms.data.records.RecordEvent;
 import app.owlcms.data.records.RecordRepository;
-import app.owlcms.i18n.Translator;
 import app.owlcms.init.OwlcmsFactory;
-import app.owlcms.utils.ResourceWalker;
+import app.owlcms.utils.LoggerUtils;
 import ch.qos.logback.classic.Logger;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -61,29 +63,37 @@ public class CompetitionData {
 	public CompetitionData() {
 	}
 
+	/**
+	 * @return the database as a JSON document, written by a separate thread as it is read
+	 */
 	public InputStream exportData() {
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.registerModule(new JavaTimeModule());
 		try {
-			ObjectWriter writerWithDefaultPrettyPrinter = mapper.writerWithDefaultPrettyPrinter();
-
 			PipedOutputStream out = new PipedOutputStream();
 			PipedInputStream in = new PipedInputStream(out);
-			new Thread(() -> {
-				try {
-					writerWithDefaultPrettyPrinter.writeValue(out, this.fromDatabase());
-					out.flush();
-					out.close();
+			Thread writer = new Thread(() -> {
+				try (out) {
+					this.exportData(out);
 				} catch (Throwable e) {
-					e.printStackTrace();
+					LoggerUtils.logError(logger, e);
 				}
-			}).start();
+			}, "competition-export");
+			writer.setDaemon(true);
+			writer.start();
 			return in;
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	/**
+	 * Write the database as a JSON document, without first reading it into memory.
+	 *
+	 * @param out left open
+	 */
+	public void exportData(OutputStream out) {
+		new CompetitionDataWriter().write(out);
+	}
+
 	/**
 	 * For debugging
 	 *
@@ -185,63 +195,36 @@ public class CompetitionData {
 		return newData;
 	}
 
-	public void restore(InputStream inputStream) {
-		this.removeAll();
-		JPAService.runInTransaction(em -> {
-			try {
-				Athlete.setSkipValidationsDuringImport(true);
-				OwlcmsFactory.resetFOPByName();
-
-				CompetitionData updated = this.importData(inputStream);
-				Config config = updated.getConfig();
-				ResourceWalker.initLocalDir();
-
-				Locale defaultLocale = config.getDefaultLocale();
-				Translator.reset();
-				Translator.setForcedLocale(defaultLocale);
-
-				Competition competition = updated.getCompetition();
-
-				for (AgeGroup ag : updated.getAgeGroups()) {
-					em.persist(ag);
-				}
-
-				for (Athlete a : updated.getAthletes()) {
-					em.persist(a);
-				}
-
-				for (Group g : updated.getGroups()) {
-					em.merge(g);
-				}
-
-				if (updated.getRecords() != null) {
-					for (RecordEvent r : updated.getRecords()) {
-						em.merge(r);
-					}
-				}
-
-				if (updated.getPlatforms() != null) {
-					for (Platform p : updated.getPlatforms()) {
-						em.merge(p);
-					}
-				}
-
-				if (updated.getRecordConfig() != null) {
-					{
-						em.merge(updated.getRecordConfig());
-					}
-				}
-
-				em.merge(competition);
-				em.flush();
-			} catch (Exception e) {
-				e.printStackTrace();
-			} finally {
-				Athlete.setSkipValidationsDuringImport(false);
+	/**
+	 * Write a compressed binary snapshot of the database, see {@link CompetitionSnapshot}.
+	 *
+	 * @param out left open
+	 */
+	public void exportSnapshot(OutputStream out) {
+		new CompetitionSnapshot().write(out);
+	}
 
+	/**
+	 * Replace the database with a JSON export or a snapshot.
+	 *
+	 * @param inputStream
+	 * @throws RuntimeException if the content cannot be read or saved; nothing of it is kept in the database.
+	 */
+	public void restore(InputStream inputStream) {
+		try {
+			BufferedInputStream in = new BufferedInputStream(inputStream);
+			in.mark(16);
+			boolean snapshot = CompetitionSnapshot.isSnapshot(in);
+			in.reset();
+			if (snapshot) {
+				new CompetitionSnapshot().read(in, this, this::removeAll);
+			} else {
+				this.removeAll();
+				new CompetitionDataReader().read(in, this);
 			}
-			return null;
-		});
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
 		Championship.reset();
 		CategoryRepository.resetCodeMap();
 		// register the new FOPs for events and MQTT
@@ -304,37 +287,9 @@ public class CompetitionData {
 	private void removeAll() {
 		JPAService.runInTransaction(em -> {
 			CompetitionRepository.doRemoveAll(em);
-			try {
-				this.fromDatabase();
-				for (Athlete a : this.getAthletes()) {
-					Athlete aX = em.find(Athlete.class, a.getId());
-					if (aX != null) {
-						em.remove(aX);
-					}
-				}
-				for (Group g : this.getGroups()) {
-					Group gX = em.find(Group.class, g.getId());
-					if (gX != null) {
-						em.remove(gX);
-					}
-				}
-				for (AgeGroup ag : this.getAgeGroups()) {
-					AgeGroup agX = em.find(AgeGroup.class, ag.getId());
-					if (agX != null) {
-						em.remove(agX);
-					}
-				}
-				for (Platform p : this.getPlatforms()) {
-					Platform pX = em.find(Platform.class, p.getId());
-					if (pX != null) {
-						em.remove(pX);
-					}
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
 			return null;
 		});
+		ScoreRankingIndex.invalidate();
 	}
 
 	/**
@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.export;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManager;
+
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.annotation.ObjectIdGenerator.IdKey;
+import com.fasterxml.jackson.annotation.ObjectIdResolver;
+import com.fasterxml.jackson.annotation.SimpleObjectIdResolver;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.KeyDeserializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.cfg.HandlerInstantiator;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.jsontype.TypeIdResolver;
+import com.fasterxml.jackson.databind.jsontype.TypeResolverBuilder;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import app.owlcms.data.agegroup.AgeGroup;
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.category.Category;
+import app.owlcms.data.competition.Competition;
+import app.owlcms.data.config.Config;
+import app.owlcms.data.group.Group;
+import app.owlcms.data.jpa.JPAService;
+import app.owlcms.data.platform.Platform;
+import app.owlcms.data.records.RecordConfig;
+import app.owlcms.data.records.RecordEvent;
+import app.owlcms.i18n.Translator;
+import app.owlcms.init.OwlcmsFactory;
+import app.owlcms.utils.ResourceWalker;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Read a document written by {@link CompetitionData} or {@link CompetitionDataWriter} one entity at a time, and persist
+ * the entities as they are read.
+ *
+ * Each entity is read on its own, so Jackson does not keep the whole document to resolve references. The references
+ * to platforms, groups and categories, which are written as ids, are instead looked up in the database: the sections
+ * come in the order of the export, so these have already been persisted. The persistence context is flushed and
+ * cleared every {@link CompetitionDataWriter#CHUNK_SIZE} entities; everything is still done in one transaction, so a
+ * document that cannot be read leaves nothing behind.
+ */
+public class CompetitionDataReader {
+
+	/**
+	 * Resolves the ids of an entity type to the persisted entity when the entity is not in the current element.
+	 */
+	private class EntityResolver extends SimpleObjectIdResolver {
+		private final Class<?> entityClass;
+
+		EntityResolver(Class<?> entityClass) {
+			this.entityClass = entityClass;
+		}
+
+		@Override
+		public boolean canUseFor(ObjectIdResolver resolverType) {
+			return resolverType instanceof EntityResolver
+			        && ((EntityResolver) resolverType).entityClass == this.entityClass;
+		}
+
+		@Override
+		public ObjectIdResolver newForDeserialization(Object context) {
+			return new EntityResolver(this.entityClass);
+		}
+
+		@Override
+		public Object resolveId(IdKey id) {
+			Object resolved = super.resolveId(id);
+			EntityManager em = CompetitionDataReader.this.em;
+			if (resolved == null && em != null && id.key instanceof Number) {
+				resolved = em.find(this.entityClass, ((Number) id.key).longValue());
+			}
+			return resolved;
+		}
+	}
+
+	private static final Set<Class<?>> REFERENCED = Set.of(Platform.class, Group.class, Category.class);
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(CompetitionDataReader.class);
+
+	private int count;
+	private EntityManager em;
+	private final ObjectMapper mapper;
+
+	public CompetitionDataReader() {
+		this(new JsonFactory());
+	}
+
+	/**
+	 * @param factory the format to read, JSON or a binary variant such as Smile
+	 */
+	public CompetitionDataReader(JsonFactory factory) {
+		this.mapper = new ObjectMapper(factory);
+		this.mapper.registerModule(new JavaTimeModule());
+		this.mapper.setHandlerInstantiator(new HandlerInstantiator() {
+			@Override
+			public JsonDeserializer<?> deserializerInstance(DeserializationConfig config, Annotated annotated,
+			        Class<?> deserClass) {
+				return null;
+			}
+
+			@Override
+			public KeyDeserializer keyDeserializerInstance(DeserializationConfig config, Annotated annotated,
+			        Class<?> keyDeserClass) {
+				return null;
+			}
+
+			@Override
+			public ObjectIdResolver resolverIdGeneratorInstance(MapperConfig<?> config, Annotated annotated,
+			        Class<?> implClass) {
+				if (implClass == SimpleObjectIdResolver.class && REFERENCED.contains(annotated.getRawType())) {
+					return new EntityResolver(annotated.getRawType());
+				}
+				return null;
+			}
+
+			@Override
+			public JsonSerializer<?> serializerInstance(SerializationConfig config, Annotated annotated,
+			        Class<?> serClass) {
+				return null;
+			}
+
+			@Override
+			public TypeIdResolver typeIdResolverInstance(MapperConfig<?> config, Annotated annotated,
+			        Class<?> resolverClass) {
+				return null;
+			}
+
+			@Override
+			public TypeResolverBuilder<?> typeResolverBuilderInstance(MapperConfig<?> config, Annotated annotated,
+			        Class<?> builderClass) {
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Read the document and persist its content. The database is expected to be empty.
+	 *
+	 * @param in
+	 * @param target receives the config and competition, which become the current ones
+	 * @throws IOException if the document cannot be read; the transaction is rolled back.
+	 */
+	public void read(InputStream in, CompetitionData target) throws IOException {
+		long start = System.currentTimeMillis();
+		try {
+			JPAService.runInTransaction(em -> {
+				readInTransaction(em, in, target);
+				return null;
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		logger.info("imported {} entities in {}ms", this.count, System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * @return the mapper, to relax the deserialization of documents written by another version
+	 */
+	ObjectMapper getMapper() {
+		return this.mapper;
+	}
+
+	private void persisted() {
+		if (++this.count % CompetitionDataWriter.CHUNK_SIZE == 0) {
+			this.em.flush();
+			this.em.clear();
+		}
+	}
+
+	private <T> void readArray(JsonParser p, Class<T> type, Consumer<T> action) throws IOException {
+		if (p.currentToken() != JsonToken.START_ARRAY) {
+			p.skipChildren();
+			return;
+		}
+		while (p.nextToken() == JsonToken.START_OBJECT) {
+			action.accept(this.mapper.readValue(p, type));
+			persisted();
+		}
+	}
+
+	/**
+	 * Any exception goes through runInTransaction, which then does not commit.
+	 */
+	private void readInTransaction(EntityManager em, InputStream in, CompetitionData target) {
+		this.em = em;
+		this.count = 0;
+		try (JsonParser p = this.mapper.getFactory().createParser(in)) {
+			Athlete.setSkipValidationsDuringImport(true);
+			OwlcmsFactory.resetFOPByName();
+			if (p.nextToken() != JsonToken.START_OBJECT) {
+				throw new IOException("not a competition export");
+			}
+			while (p.nextToken() == JsonToken.FIELD_NAME) {
+				String name = p.getCurrentName();
+				p.nextToken();
+				readSection(p, name, target);
+			}
+			em.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			Athlete.setSkipValidationsDuringImport(false);
+			this.em = null;
+		}
+	}
+
+	private void readSection(JsonParser p, String name, CompetitionData target) throws IOException {
+		EntityManager em = this.em;
+		switch (name) {
+			case "config":
+				Config config = this.mapper.readValue(p, Config.class);
+				target.setConfig(config);
+				ResourceWalker.initLocalDir();
+				Locale defaultLocale = config.getDefaultLocale();
+				Translator.reset();
+				Translator.setForcedLocale(defaultLocale);
+				break;
+			case "competition":
+				// the current competition affects how athletes are read (e.g., birth dates).
+				Competition competition = this.mapper.readValue(p, Competition.class);
+				target.setCompetition(competition);
+				em.merge(competition);
+				break;
+			case "platforms":
+				readArray(p, Platform.class, (pl) -> em.merge(pl));
+				break;
+			case "groups":
+				readArray(p, Group.class, (g) -> em.merge(g));
+				break;
+			case "ageGroups":
+				readArray(p, AgeGroup.class, (ag) -> em.persist(ag));
+				break;
+			case "athletes":
+				readArray(p, Athlete.class, (a) -> em.persist(a));
+				break;
+			case "records":
+				readArray(p, RecordEvent.class, (r) -> em.merge(r));
+				break;
+			case "recordConfig":
+				RecordConfig recordConfig = this.mapper.readValue(p, RecordConfig.class);
+				if (recordConfig != null) {
+					em.merge(recordConfig);
+				}
+				break;
+			default:
+				p.skipChildren();
+		}
+	}
+
+}
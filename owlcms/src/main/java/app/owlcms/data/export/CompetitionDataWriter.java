@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.query.Query;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import app.owlcms.data.athleteSort.RankWriter;
+import app.owlcms.data.competition.Competition;
+import app.owlcms.data.config.Config;
+import app.owlcms.data.jpa.JPAService;
+import app.owlcms.data.records.RecordConfig;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Write the same document as {@link CompetitionData}, one entity at a time.
+ *
+ * The athletes and records are read with a forward-only cursor and written as they are read; the persistence context
+ * is cleared every {@link #CHUNK_SIZE} entities, so the memory used does not depend on the size of the database. The
+ * smaller sections (platforms, groups, age groups) are read as lists, as before.
+ */
+public class CompetitionDataWriter {
+
+	static final int CHUNK_SIZE = 200;
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(CompetitionDataWriter.class);
+
+	private final ObjectMapper mapper;
+
+	public CompetitionDataWriter() {
+		this(new JsonFactory());
+	}
+
+	/**
+	 * @param factory the format to write, JSON or a binary variant such as Smile
+	 */
+	public CompetitionDataWriter(JsonFactory factory) {
+		this.mapper = new ObjectMapper(factory);
+		this.mapper.registerModule(new JavaTimeModule());
+		// the generator is flushed by its buffer, not after each entity.
+		this.mapper.disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+	}
+
+	/**
+	 * Write the database to the stream. The stream is left open.
+	 *
+	 * @param out
+	 */
+	public void write(OutputStream out) {
+		RankWriter.flush();
+		long start = System.currentTimeMillis();
+		try (JsonGenerator gen = this.mapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+			gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			if (!this.mapper.getFactory().canHandleBinaryNatively()) {
+				gen.useDefaultPrettyPrinter();
+			}
+			gen.writeStartObject();
+			gen.writeFieldName("config");
+			this.mapper.writeValue(gen, Config.getCurrent());
+			gen.writeFieldName("competition");
+			this.mapper.writeValue(gen, Competition.getCurrent());
+			int[] counts = JPAService.runInTransaction(em -> {
+				try {
+					writeList(gen, "platforms",
+					        em.createQuery("select c from Platform c order by c.id").getResultList());
+					writeList(gen, "groups",
+					        em.createQuery("select c from CompetitionGroup c order by c.name").getResultList());
+					writeList(gen, "ageGroups",
+					        em.createQuery("select c from AgeGroup c order by c.ageDivision,c.minAge,c.maxAge")
+					                .getResultList());
+					// ordering by id lets the cursor assemble the participations of each athlete.
+					int nbAthletes = writeScrolled(gen, em, "athletes",
+					        "select a from Athlete a left join fetch a.participations order by a.id");
+					int nbRecords = writeScrolled(gen, em, "records",
+					        "select rec from RecordEvent rec"
+					                + " order by rec.recordFederation,rec.gender,rec.ageGrpLower,rec.ageGrpUpper,rec.bwCatUpper");
+					return new int[] { nbAthletes, nbRecords };
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			});
+			gen.writeFieldName("recordConfig");
+			this.mapper.writeValue(gen, RecordConfig.getCurrent());
+			gen.writeEndObject();
+			gen.flush();
+			logger.info("exported {} athletes and {} records in {}ms", counts[0], counts[1],
+			        System.currentTimeMillis() - start);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void writeList(JsonGenerator gen, String name, List<?> values) throws IOException {
+		gen.writeArrayFieldStart(name);
+		for (Object v : values) {
+			this.mapper.writeValue(gen, v);
+		}
+		gen.writeEndArray();
+	}
+
+	private int writeScrolled(JsonGenerator gen, EntityManager em, String name, String qlString)
+	        throws IOException {
+		Query<?> query = em.createQuery(qlString).unwrap(Query.class);
+		query.setFetchSize(CHUNK_SIZE);
+		query.setReadOnly(true);
+		int count = 0;
+		gen.writeArrayFieldStart(name);
+		try (ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY)) {
+			while (results.next()) {
+				Object entity = results.get(0);
+				this.mapper.writeValue(gen, entity);
+				if (++count % CHUNK_SIZE == 0) {
+					em.clear();
+				}
+			}
+		}
+		gen.writeEndArray();
+		return count;
+	}
+
+}
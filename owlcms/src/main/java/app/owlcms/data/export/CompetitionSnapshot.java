@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.export;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+import app.owlcms.data.agegroup.AgeGroup;
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.category.Category;
+import app.owlcms.data.category.Participation;
+import app.owlcms.data.competition.Competition;
+import app.owlcms.data.config.Config;
+import app.owlcms.data.group.Group;
+import app.owlcms.data.platform.Platform;
+import app.owlcms.data.records.RecordConfig;
+import app.owlcms.data.records.RecordEvent;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * A compact binary copy of the database, for backing up during a competition and restoring on a spare computer.
+ *
+ * The content is the same as the JSON export, written with the same entity mappings in the Smile binary encoding
+ * (property names and repeated strings are written once) and compressed. A header gives the format version and a
+ * fingerprint of the properties of the entities. A snapshot from a program whose entities have different properties
+ * is still read, ignoring the properties that no longer exist.
+ */
+public class CompetitionSnapshot {
+
+	/**
+	 * Incremented when the layout of the snapshot changes, not when entity properties change.
+	 */
+	static final int FORMAT_VERSION = 1;
+	private static final List<Class<?>> ENTITIES = List.of(Config.class, Competition.class, Platform.class,
+	        Group.class, AgeGroup.class, Category.class, Athlete.class, Participation.class, RecordEvent.class,
+	        RecordConfig.class);
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(CompetitionSnapshot.class);
+	private static final byte[] MAGIC = "OWLS".getBytes(StandardCharsets.US_ASCII);
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static Long fingerprint;
+
+	/**
+	 * @param in the beginning of a file
+	 * @return true if the stream starts like a snapshot; the stream is read, and must be reset by the caller
+	 * @throws IOException
+	 */
+	public static boolean isSnapshot(InputStream in) throws IOException {
+		return Arrays.equals(MAGIC, in.readNBytes(MAGIC.length));
+	}
+
+	/**
+	 * @return a checksum of the property names of the saved entities, which changes when properties are added, removed
+	 *         or renamed
+	 */
+	static synchronized long schemaFingerprint() {
+		if (fingerprint == null) {
+			ObjectMapper mapper = new ObjectMapper();
+			CRC32 crc = new CRC32();
+			for (Class<?> c : ENTITIES) {
+				BeanDescription desc = mapper.getSerializationConfig().introspect(mapper.constructType(c));
+				StringBuilder sb = new StringBuilder(c.getSimpleName()).append(':');
+				desc.findProperties().stream()
+				        .map(BeanPropertyDefinition::getName)
+				        .sorted()
+				        .forEach(n -> sb.append(n).append(','));
+				crc.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+			}
+			fingerprint = crc.getValue();
+		}
+		return fingerprint;
+	}
+
+	private static SmileFactory smileFactory() {
+		SmileFactory factory = new SmileFactory();
+		// names of federations, age groups, teams...
+		factory.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+		return factory;
+	}
+
+	/**
+	 * Replace the database with the content of a snapshot.
+	 *
+	 * @param in        a snapshot, closed when done
+	 * @param target    receives the config and competition, which become the current ones
+	 * @param removeAll empties the database, once the header has been checked
+	 * @throws IOException if the stream is not a snapshot, or comes from a later version of the format
+	 */
+	void read(InputStream in, CompetitionData target, Runnable removeAll) throws IOException {
+		DataInputStream header = new DataInputStream(in);
+		byte[] magic = new byte[MAGIC.length];
+		header.readFully(magic);
+		if (!Arrays.equals(MAGIC, magic)) {
+			throw new IOException("not a competition snapshot");
+		}
+		int version = header.readInt();
+		if (version > FORMAT_VERSION) {
+			throw new IOException("snapshot format " + version + " is more recent than this program (format "
+			        + FORMAT_VERSION + ")");
+		}
+		long schema = header.readLong();
+
+		CompetitionDataReader reader = new CompetitionDataReader(smileFactory());
+		if (schema != schemaFingerprint()) {
+			logger./**/warn("snapshot written by a program with different entities, unknown properties are ignored");
+			reader.getMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+		}
+		removeAll.run();
+		reader.read(new GZIPInputStream(in, BUFFER_SIZE), target);
+	}
+
+	/**
+	 * Write a snapshot of the database.
+	 *
+	 * @param out left open
+	 */
+	void write(OutputStream out) {
+		try {
+			DataOutputStream header = new DataOutputStream(out);
+			header.write(MAGIC);
+			header.writeInt(FORMAT_VERSION);
+			header.writeLong(schemaFingerprint());
+			header.flush();
+
+			// speed matters more than size, the Smile encoding is already compact.
+			GZIPOutputStream zip = new GZIPOutputStream(out, BUFFER_SIZE) {
+				{
+					this.def.setLevel(Deflater.BEST_SPEED);
+				}
+			};
+			new CompetitionDataWriter(smileFactory()).write(zip);
+			zip.finish();
+			zip.flush();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -36,6 +36,10 @@ import ch.qos.logback.classic.Logger;
  */
 public class BenchmarkData {
 
+	/**
+	 * 4 groups A-D of 10 bodyweight categories for each gender, 14 age groups.
+	 */
+	public static final int DEFAULT_NB_ATHLETES = 4 * 10 * 2 * 14;
 	private static final double LENGTH_OF_WEIGHIN = 2.0;
 	private static final long LENGTH_OF_SESSION = 2;
 	private static Logger logger = (Logger) LoggerFactory.getLogger(BenchmarkData.class);
@@ -75,6 +79,16 @@ public class BenchmarkData {
 	 * @param championshipTypes
 	 */
 	public static void insertInitialData(EnumSet<ChampionshipType> championshipTypes) {
+		insertInitialData(championshipTypes, DEFAULT_NB_ATHLETES);
+	}
+
+	/**
+	 * Insert a competition of the requested size. Used by the benchmarks to get meets of various sizes.
+	 *
+	 * @param championshipTypes
+	 * @param nbAthletes        number of athletes to create
+	 */
+	public static void insertInitialData(EnumSet<ChampionshipType> championshipTypes, int nbAthletes) {
 		JPAService.runInTransaction(em -> {
 			Competition competition = createDefaultCompetition(championshipTypes);
 			CompetitionRepository.save(competition);
@@ -83,7 +97,7 @@ public class BenchmarkData {
 		});
 
 		JPAService.runInTransaction(em -> {
-			setupBenchmarkData(em, 4, 5);
+			setupBenchmarkData(em, 4, 5, nbAthletes);
 			return null;
 		});
 
@@ -227,16 +241,20 @@ public class BenchmarkData {
 	/**
 	 * Setup benchmark data.
 	 *
-	 * 4 groups A-D, 14 athletes per session, all IWF and IMWA age groups. 81 sessions required to produce 1134 athletes
-	 * (target size of benchmark).
+	 * 14 athletes per session, all IWF and IMWA age groups. With the default size, 4 groups A-D and 80 sessions produce
+	 * 1120 athletes (target size of benchmark). Larger sizes add groups E, F, etc.; the last session is truncated to
+	 * produce the exact number requested.
 	 *
 	 * @param sessionsPerDay
+	 * @param nbAthletes
 	 *
 	 */
-	private static void setupBenchmarkData(EntityManager em, int nbPlatforms, int sessionsPerDay) {
-		char lastGroup = 'D';
+	private static void setupBenchmarkData(EntityManager em, int nbPlatforms, int sessionsPerDay, int nbAthletes) {
+		int athletesPerGroupLetter = ageGroups[0].length * bwcats[0].length * 2;
+		char lastGroup = (char) ('A' + (nbAthletes + athletesPerGroupLetter - 1) / athletesPerGroupLetter - 1);
 		LocalDateTime c = LocalDateTime.now();
-		nbAthletesPerGender = (lastGroup - 'A' + 1) * ageGroups[0].length * bwcats[0].length;
+		nbAthletesPerGender = Math.max(nbAthletes / 2, 10);
+		int nbCreated = 0;
 
 		LocalDateTime startOfCompetition = LocalDateTime.of(c.getYear(), c.getMonth(), c.getDayOfMonth(), 9, 00, 0);
 		c = startOfCompetition;
@@ -249,9 +267,12 @@ public class BenchmarkData {
 		int sessionCount = 0;
 		Random r = new Random(0);
 
-		for (char groupName = lastGroup; groupName >= 'A'; groupName--) {
+		sessions: for (char groupName = lastGroup; groupName >= 'A'; groupName--) {
 			for (int bwCatIndex = 0; bwCatIndex < 10; bwCatIndex++) {
 				for (int genderIndex = 0; genderIndex < 2; genderIndex++) {
+					if (nbCreated >= nbAthletes) {
+						break sessions;
+					}
 					Gender g = Gender.values()[genderIndex];
 
 					int platformIndex = sessionCount % nbPlatforms;
@@ -278,18 +299,19 @@ public class BenchmarkData {
 					// group B is 50% JR and 50% SR
 					// group A is 75% SR and 25% JR
 					logger.info(sessionName);
-					for (int ageGroupIndex = 0; ageGroupIndex < ageGroups[genderIndex].length; ageGroupIndex++) {
+					for (int ageGroupIndex = 0; ageGroupIndex < ageGroups[genderIndex].length
+					        && nbCreated < nbAthletes; ageGroupIndex++) {
 						// add an athlete to the session
 						createAthlete(em, session, r, g, genderIndex, ageGroups[genderIndex][ageGroupIndex],
 						        bwcats[genderIndex][bwCatIndex]);
 						em.flush();
+						nbCreated++;
 					}
 
 				}
 			}
 		}
-		int nbSess = sessionCount + 1;
-		logger.info("sessions: " + nbSess + " athletes: " + nbSess * ageGroups[0].length);
+		logger.info("sessions: " + sessionCount + " athletes: " + nbCreated);
 
 		for (Platform p : platforms) {
 			em.persist(p);
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.jpa;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.utils.LoggerUtils;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Tells the in-memory indexes about the entities written by transactions that have committed.
+ *
+ * The JPA entity listeners are called when the changes are flushed, before the commit: an index updated from them can
+ * keep changes that are then rolled back, and another thread can read the database before the changes are visible. The listeners registered here are called by Hibernate once the transaction has committed,
+ * and are not called if it is rolled back.
+ */
+public class CommittedChanges {
+
+	public enum Change {
+		INSERT, UPDATE, DELETE
+	}
+
+	/**
+	 * Called after the commit of a transaction that wrote an entity.
+	 *
+	 * @param <T> the entity class
+	 */
+	@FunctionalInterface
+	public interface ChangeListener<T> {
+		void committed(T entity, Change change);
+	}
+
+	/**
+	 * Adds the post-commit listeners to the session factory.
+	 */
+	public static class ChangesIntegrator implements Integrator {
+		@Override
+		public void disintegrate(SessionFactoryImplementor sessionFactory,
+		        SessionFactoryServiceRegistry serviceRegistry) {
+		}
+
+		@Override
+		public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory,
+		        SessionFactoryServiceRegistry serviceRegistry) {
+			EventListenerRegistry registry = serviceRegistry.getService(EventListenerRegistry.class);
+			registry.appendListeners(EventType.POST_COMMIT_INSERT, new InsertListener());
+			registry.appendListeners(EventType.POST_COMMIT_UPDATE, new UpdateListener());
+			registry.appendListeners(EventType.POST_COMMIT_DELETE, new DeleteListener());
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static class DeleteListener implements PostCommitDeleteEventListener {
+		@Override
+		public void onPostDelete(PostDeleteEvent event) {
+			notify(event.getEntity(), Change.DELETE);
+		}
+
+		@Override
+		public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+		}
+
+		@Override
+		public boolean requiresPostCommitHanding(EntityPersister persister) {
+			return isListened(persister);
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static class InsertListener implements PostCommitInsertEventListener {
+		@Override
+		public void onPostInsert(PostInsertEvent event) {
+			notify(event.getEntity(), Change.INSERT);
+		}
+
+		@Override
+		public void onPostInsertCommitFailed(PostInsertEvent event) {
+		}
+
+		@Override
+		public boolean requiresPostCommitHanding(EntityPersister persister) {
+			return isListened(persister);
+		}
+	}
+
+	private static class Registration {
+		private final Class<?> entityClass;
+		private final ChangeListener<Object> listener;
+
+		@SuppressWarnings("unchecked")
+		Registration(Class<?> entityClass, ChangeListener<?> listener) {
+			this.entityClass = entityClass;
+			this.listener = (ChangeListener<Object>) listener;
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static class UpdateListener implements PostCommitUpdateEventListener {
+		@Override
+		public void onPostUpdate(PostUpdateEvent event) {
+			notify(event.getEntity(), Change.UPDATE);
+		}
+
+		@Override
+		public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+		}
+
+		@Override
+		public boolean requiresPostCommitHanding(EntityPersister persister) {
+			return isListened(persister);
+		}
+	}
+
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(CommittedChanges.class);
+	private static List<Registration> registrations = new CopyOnWriteArrayList<>();
+
+	/**
+	 * @param <T>         the entity class
+	 * @param entityClass
+	 * @param listener    called after the commit of each transaction that inserted, updated or deleted an entity of
+	 *                    the class
+	 */
+	public static <T> void register(Class<T> entityClass, ChangeListener<T> listener) {
+		registrations.add(new Registration(entityClass, listener));
+	}
+
+	private static boolean isListened(EntityPersister persister) {
+		Class<?> mapped = persister.getMappedClass();
+		for (Registration r : registrations) {
+			if (r.entityClass.isAssignableFrom(mapped)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void notify(Object entity, Change change) {
+		for (Registration r : registrations) {
+			if (r.entityClass.isInstance(entity)) {
+				try {
+					r.listener.committed(entity, change);
+				} catch (RuntimeException e) {
+					// the transaction has committed, nothing to undo.
+					LoggerUtils.logError(logger, e);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.jpa;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.engine.spi.SessionImplementor;
+
+import app.owlcms.data.agegroup.AgeGroup;
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.category.Category;
+import app.owlcms.data.category.Participation;
+import app.owlcms.data.competition.Competition;
+import app.owlcms.data.group.Group;
+import app.owlcms.data.platform.Platform;
+import app.owlcms.data.records.RecordEvent;
+
+/**
+ * Version number of the competition data, incremented whenever an entity that appears in reports is written.
+ *
+ * The version is incremented once the transaction has committed (see {@link CommittedChanges}), so that something
+ * computed from the database while the changes were being flushed is not kept under the new version. Anything computed
+ * from the database (for example a generated report) can be kept as long as the version has not changed. Nothing
+ * holds a version before this class is loaded, so the listeners are registered then.
+ */
+public class DataVersion {
+
+	private static final List<Class<?>> REPORTED = List.of(Athlete.class, Participation.class, Category.class,
+	        Group.class, Platform.class, Competition.class, AgeGroup.class, RecordEvent.class);
+	private static AtomicLong version = new AtomicLong();
+
+	static {
+		for (Class<?> c : REPORTED) {
+			bumpOnCommit(c);
+		}
+	}
+
+	public static long bump() {
+		return version.incrementAndGet();
+	}
+
+	/**
+	 * For bulk deletes and updates, which the commit listeners do not see.
+	 *
+	 * @param em the transaction that wrote the changes; the version is incremented if it commits.
+	 */
+	public static void bumpAfterCommit(EntityManager em) {
+		em.unwrap(SessionImplementor.class).getActionQueue().registerProcess((success, session) -> {
+			if (success) {
+				bump();
+			}
+		});
+	}
+
+	public static long get() {
+		return version.get();
+	}
+
+	private static <T> void bumpOnCommit(Class<T> entityClass) {
+		CommittedChanges.register(entityClass, (entity, change) -> bump());
+	}
+
+}
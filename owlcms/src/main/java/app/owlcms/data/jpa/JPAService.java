@@ -41,6 +41,7 @@ import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
 import org.hibernate.hikaricp.internal.HikariCPConnectionProvider;
 import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
 import org.hibernate.jpa.boot.internal.PersistenceUnitInfoDescriptor;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableList;
@@ -200,12 +201,11 @@ public class JPAService {
 		if (logger.isTraceEnabled()) {
 			int active = JPAService.getPoolStatistics();
 			if (active > 0) {
-				logger.trace("active > 0 {}", whereFrom.values());
+				logger.trace("active > 0 {}", TransactionTracer.getOpen());
 			}
 		}
 	}
 
-	static Map<EntityManager,String> whereFrom = new HashMap<>();
 	/**
 	 * Run in transaction.
 	 *
@@ -215,24 +215,25 @@ public class JPAService {
 	 */
 	public static <T> T runInTransaction(Function<EntityManager, T> function) {
 		EntityManager entityManager = null;
-		String whereFromString = LoggerUtils.whereFrom();
+		TransactionTracer.Trace trace = null;
 		try {
 			if (getFactory() == null) {
 				logger.debug("JPAService {}", LoggerUtils./**/stackTrace());
 			}
 			entityManager = getFactory().createEntityManager();
-			whereFrom.put(entityManager, whereFromString);
+			trace = TransactionTracer.start(entityManager, logger.isTraceEnabled());
 			entityManager.getTransaction().begin();
 			T result = function.apply(entityManager);
 			entityManager.getTransaction().commit();
+			TransactionTracer.end(trace, entityManager, true);
 			entityManager.close();
-			whereFrom.remove(entityManager);
 			entityManager = null;
 			return result;
 		} finally {
 			if (entityManager != null) {
+				TransactionTracer.end(trace, entityManager, false);
+				rollback(entityManager);
 				entityManager.close();
-				whereFrom.remove(entityManager);
 			}
 			traceLeak();
 
@@ -248,31 +249,45 @@ public class JPAService {
 	 */
 	public static List<Object[]> runInTransactionMultipleResults(Function<EntityManager, List<Object[]>> function) {
 		EntityManager entityManager = null;
-		String whereFromString = LoggerUtils.whereFrom();
+		TransactionTracer.Trace trace = null;
 		try {
 			if (getFactory() == null) {
 				logger.debug("JPAService {}", LoggerUtils./**/stackTrace());
 			}
 			entityManager = getFactory().createEntityManager();
-			whereFrom.put(entityManager, whereFromString);
+			trace = TransactionTracer.start(entityManager, logger.isTraceEnabled());
 			entityManager.getTransaction().begin();
 
 			List<Object[]> result = function.apply(entityManager);
 			entityManager.getTransaction().commit();
+			TransactionTracer.end(trace, entityManager, true);
 			entityManager.close();
-			whereFrom.remove(entityManager);
 			entityManager = null;
 			return result;
 
 		} finally {
 			if (entityManager != null) {
+				TransactionTracer.end(trace, entityManager, false);
+				rollback(entityManager);
 				entityManager.close();
-				whereFrom.remove(entityManager);
 			}
 			traceLeak();
 		}
 	}
 
+	/**
+	 * Undo what a failed function did, before its exception is propagated.
+	 */
+	private static void rollback(EntityManager entityManager) {
+		try {
+			if (entityManager.getTransaction().isActive()) {
+				entityManager.getTransaction().rollback();
+			}
+		} catch (RuntimeException e) {
+			logger.error("rollback failed {}", LoggerUtils.exceptionMessage(e));
+		}
+	}
+
 	public static void setLocalDb(boolean localDb) {
 		logger.debug("setting localDb {} {}", localDb, LoggerUtils.whereFrom());
 		JPAService.localDb = localDb;
@@ -345,6 +360,9 @@ public class JPAService {
 		PersistenceUnitInfo persistenceUnitInfo = new PersistenceUnitInfoImpl(JPAService.class.getSimpleName(),
 		        entityClassNames(), properties);
 		Map<String, Object> configuration = new HashMap<>();
+		configuration.put(EntityManagerFactoryBuilderImpl.INTEGRATOR_PROVIDER,
+		        (IntegratorProvider) () -> List.of(new LazyLoadMonitor.MonitorIntegrator(),
+		                new CommittedChanges.ChangesIntegrator()));
 
 		factory = new EntityManagerFactoryBuilderImpl(new PersistenceUnitInfoDescriptor(persistenceUnitInfo),
 		        configuration).build();
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.jpa;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.hibernate.FlushMode;
+import org.hibernate.HibernateException;
+import org.hibernate.LazyInitializationException;
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.InitializeCollectionEvent;
+import org.hibernate.event.spi.InitializeCollectionEventListener;
+import org.hibernate.event.spi.LoadEvent;
+import org.hibernate.event.spi.LoadEventListener;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.utils.StartupUtils;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Count the lazy loads that happen outside of a transaction.
+ *
+ * Because hibernate.enable_lazy_load_no_trans is set, touching a proxy or a collection that was not fetched opens a
+ * temporary session and a connection, once per entity. This works, but a display going through a list of athletes
+ * can cause hundreds of such loads. Each one is counted by entity or collection role, and the first one of each kind
+ * is logged; the counts are available from /metrics/transactions. The repositories should fetch what the displays
+ * use so that these counts stay at zero.
+ *
+ * Such a load is recognized by its session, not by the thread it runs on: Hibernate makes its temporary session
+ * read-only with manual flushing, which the sessions of the application never are. A load through an entity from a
+ * closed session is therefore counted even when the thread is in another transaction, and a load in any open session
+ * is not, however that session was opened.
+ *
+ * With OWLCMS_STRICTLAZYLOADING=true (or -DstrictLazyLoading=true), or {@link #setStrict(boolean)} in tests, such a
+ * load throws a LazyInitializationException instead, so that the missing fetch is found during development.
+ */
+public class LazyLoadMonitor {
+
+	/**
+	 * Adds the listeners to the session factory.
+	 */
+	public static class MonitorIntegrator implements Integrator {
+		@Override
+		public void disintegrate(SessionFactoryImplementor sessionFactory,
+		        SessionFactoryServiceRegistry serviceRegistry) {
+		}
+
+		@Override
+		public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory,
+		        SessionFactoryServiceRegistry serviceRegistry) {
+			EventListenerRegistry registry = serviceRegistry.getService(EventListenerRegistry.class);
+			registry.appendListeners(EventType.LOAD, (LoadEventListener) LazyLoadMonitor::onLoad);
+			registry.appendListeners(EventType.INIT_COLLECTION,
+			        (InitializeCollectionEventListener) LazyLoadMonitor::onInitializeCollection);
+		}
+	}
+
+	private static Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(LazyLoadMonitor.class);
+	private static volatile boolean strict = StartupUtils.getBooleanParam("strictLazyLoading");
+
+	/**
+	 * @return the number of loads outside a transaction, by entity name or collection role
+	 */
+	public static Map<String, Long> getCounts() {
+		Map<String, Long> result = new TreeMap<>();
+		counts.forEach((k, v) -> result.put(k, v.sum()));
+		return result;
+	}
+
+	public static boolean isStrict() {
+		return strict;
+	}
+
+	public static void reset() {
+		counts.clear();
+	}
+
+	public static void setStrict(boolean strict) {
+		LazyLoadMonitor.strict = strict;
+	}
+
+	private static void check(EventSource session, String what) {
+		if (!isTemporarySession(session)) {
+			return;
+		}
+		if (strict) {
+			throw new LazyInitializationException("lazy load of " + what + " outside of a transaction");
+		}
+		LongAdder count = counts.computeIfAbsent(what, (k) -> {
+			logger./**/warn("lazy load of {} outside of a transaction, should be fetched by the query", k);
+			return new LongAdder();
+		});
+		count.increment();
+	}
+
+	/**
+	 * @return true for the session opened by Hibernate to load outside of a session
+	 */
+	private static boolean isTemporarySession(EventSource session) {
+		return session.getHibernateFlushMode() == FlushMode.MANUAL
+		        && session.getPersistenceContext().isDefaultReadOnly();
+	}
+
+	private static void onInitializeCollection(InitializeCollectionEvent event) throws HibernateException {
+		check(event.getSession(), event.getCollection().getRole());
+	}
+
+	private static void onLoad(LoadEvent event, LoadEventListener.LoadType loadType) throws HibernateException {
+		// proxies are initialized with an immediate load; queries and finds use other load types.
+		if (loadType == LoadEventListener.IMMEDIATE_LOAD) {
+			check(event.getSession(), event.getEntityClassName());
+		}
+	}
+
+}
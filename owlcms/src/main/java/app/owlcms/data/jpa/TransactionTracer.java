@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.jpa;
+
+import java.lang.StackWalker.StackFrame;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.Session;
+
+import app.owlcms.utils.StartupUtils;
+
+/**
+ * Count the transactions run by each part of the program.
+ *
+ * Off by default; enabled with OWLCMS_TRANSACTIONTRACING=true (or -DtransactionTracing=true). For each call site, the
+ * number of transactions, failures, time spent and number of entities read or written is accumulated, and can be
+ * obtained from /metrics/transactions. The call site is found by walking only the few stack frames needed, and is
+ * shown as the code that called the repository, followed by the repository method.
+ */
+public class TransactionTracer {
+
+	/**
+	 * Totals for one call site.
+	 */
+	public static class CallSiteStats {
+		private final String callSite;
+		private final LongAdder count = new LongAdder();
+		private final LongAdder entities = new LongAdder();
+		private final LongAdder failures = new LongAdder();
+		private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+		private final LongAdder totalNanos = new LongAdder();
+
+		CallSiteStats(String callSite) {
+			this.callSite = callSite;
+		}
+
+		public String getCallSite() {
+			return this.callSite;
+		}
+
+		public long getCount() {
+			return this.count.sum();
+		}
+
+		/**
+		 * @return entities in the persistence contexts when the transactions ended, an approximation of the rows
+		 *         touched
+		 */
+		public long getEntities() {
+			return this.entities.sum();
+		}
+
+		public long getFailures() {
+			return this.failures.sum();
+		}
+
+		public double getMaxMillis() {
+			return this.maxNanos.get() / 1_000_000.0D;
+		}
+
+		public double getTotalMillis() {
+			return this.totalNanos.sum() / 1_000_000.0D;
+		}
+	}
+
+	/**
+	 * A transaction in progress.
+	 */
+	public static class Trace {
+		private final String callSite;
+		private final long start = System.nanoTime();
+
+		Trace(String callSite) {
+			this.callSite = callSite;
+		}
+	}
+
+	private static final int MAX_DEPTH = 32;
+	private static volatile boolean enabled = StartupUtils.getBooleanParam("transactionTracing");
+	private static Map<EntityManager, String> open = new ConcurrentHashMap<>();
+	private static Map<String, CallSiteStats> stats = new ConcurrentHashMap<>();
+	private static final StackWalker walker = StackWalker.getInstance();
+
+	/**
+	 * Record the end of a transaction.
+	 *
+	 * @param trace     obtained from {@link #start(EntityManager, boolean)}, can be null
+	 * @param em        the entity manager of the transaction, still open
+	 * @param committed false if the transaction failed
+	 */
+	public static void end(Trace trace, EntityManager em, boolean committed) {
+		if (trace == null) {
+			return;
+		}
+		open.remove(em);
+		if (!enabled) {
+			return;
+		}
+		long elapsed = System.nanoTime() - trace.start;
+		CallSiteStats s = stats.computeIfAbsent(trace.callSite, CallSiteStats::new);
+		s.count.increment();
+		s.totalNanos.add(elapsed);
+		s.maxNanos.accumulate(elapsed);
+		if (!committed) {
+			s.failures.increment();
+		}
+		try {
+			s.entities.add(em.unwrap(Session.class).getStatistics().getEntityCount());
+		} catch (RuntimeException e) {
+			// entity manager not usable after a failure.
+		}
+	}
+
+	/**
+	 * @return the call sites of the transactions in progress, when tracked
+	 */
+	public static Collection<String> getOpen() {
+		return open.values();
+	}
+
+	/**
+	 * @return the totals, most time spent first
+	 */
+	public static List<CallSiteStats> getStats() {
+		List<CallSiteStats> l = new ArrayList<>(stats.values());
+		l.sort(Comparator.comparingLong((CallSiteStats s) -> s.totalNanos.sum()).reversed());
+		return l;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void reset() {
+		stats.clear();
+	}
+
+	public static void setEnabled(boolean enabled) {
+		TransactionTracer.enabled = enabled;
+	}
+
+	/**
+	 * Record the start of a transaction.
+	 *
+	 * @param em        the entity manager of the transaction
+	 * @param trackOpen true to keep the call site of the open transaction, to find leaks
+	 * @return the trace to give to {@link #end(Trace, EntityManager, boolean)}, null if not tracing
+	 */
+	public static Trace start(EntityManager em, boolean trackOpen) {
+		if (!enabled && !trackOpen) {
+			return null;
+		}
+		Trace trace = new Trace(callSite());
+		if (trackOpen) {
+			open.put(em, trace.callSite);
+		}
+		return trace;
+	}
+
+	private static String callSite() {
+		return walker.walk(frames -> {
+			StackFrame repository = null;
+			StackFrame caller = null;
+			for (StackFrame f : (Iterable<StackFrame>) frames.limit(MAX_DEPTH)::iterator) {
+				String className = f.getClassName();
+				if (className.startsWith("app.owlcms.data.jpa.")) {
+					continue;
+				}
+				if (repository == null) {
+					repository = f;
+				}
+				if (!className.startsWith("app.owlcms.data.") && !className.startsWith("java.")) {
+					caller = f;
+					break;
+				}
+			}
+			String repositoryName = Optional.ofNullable(repository).map(TransactionTracer::frameName).orElse("?");
+			return caller == null || caller == repository ? repositoryName
+			        : frameName(caller) + " > " + repositoryName;
+		});
+	}
+
+	private static String frameName(StackFrame f) {
+		String className = f.getClassName();
+		return className.substring(className.lastIndexOf('.') + 1) + "." + f.getMethodName() + ":"
+		        + f.getLineNumber();
+	}
+
+}
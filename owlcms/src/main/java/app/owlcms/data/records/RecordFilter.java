@@ -229,8 +229,8 @@ public class RecordFilter {
 	}
 
 	public static List<RecordEvent> computeDisplayableRecordsForAthlete(Athlete curAthlete) {
-		List<RecordEvent> records = RecordRepository.findFiltered(curAthlete.getGender(), curAthlete.getAge(),
-		        curAthlete.getBodyWeight(), null, null);
+		List<RecordEvent> records = RecordIndex.find(curAthlete.getGender(), curAthlete.getAge(),
+		        curAthlete.getBodyWeight());
 		logger.debug("initial records fetched {} {} {} {}", curAthlete.getGender(), curAthlete.getAge(),
 		        curAthlete.getBodyWeight(), records);
 
@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.records;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.data.athlete.Gender;
+import app.owlcms.data.jpa.CommittedChanges;
+import app.owlcms.data.jpa.CommittedChanges.Change;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * All the records, in memory, indexed for the lookups done for every athlete of a session.
+ *
+ * For each gender, the body weight boundaries of all the record categories split the body weights into intervals; each
+ * interval lists the records whose category contains it, so finding the records for an athlete is a binary search
+ * followed by an age check on a handful of records. The lists are in the same order as
+ * {@link RecordRepository#findFiltered(Gender, Integer, Double, String, Boolean)}.
+ *
+ * The index is read from the database on first use, and again after record files are loaded or records deleted. New
+ * records (set during the competition) are added without reading the database again, once the transaction that
+ * created them has committed: a record whose transaction is rolled back never appears.
+ */
+public class RecordIndex {
+
+	/**
+	 * Records of one gender.
+	 */
+	private static class GenderRecords {
+		private final double[] bounds;
+		private final List<RecordEvent>[] intervals;
+
+		@SuppressWarnings("unchecked")
+		GenderRecords(List<RecordEvent> sorted) {
+			TreeSet<Double> boundSet = new TreeSet<>();
+			for (RecordEvent r : sorted) {
+				if (r.getBwCatUpper() != null) {
+					boundSet.add((double) r.getBwCatLower());
+					boundSet.add((double) r.getBwCatUpper());
+				}
+			}
+			this.bounds = boundSet.stream().mapToDouble(Double::doubleValue).toArray();
+			this.intervals = new List[this.bounds.length];
+			for (int i = 0; i < this.bounds.length; i++) {
+				this.intervals[i] = new ArrayList<>();
+			}
+			for (RecordEvent r : sorted) {
+				if (r.getBwCatUpper() == null) {
+					continue;
+				}
+				// interval i is (bounds[i-1], bounds[i]]
+				int first = Arrays.binarySearch(this.bounds, r.getBwCatLower()) + 1;
+				int last = Arrays.binarySearch(this.bounds, r.getBwCatUpper());
+				for (int i = first; i <= last; i++) {
+					this.intervals[i].add(r);
+				}
+			}
+		}
+
+		/**
+		 * @return the records such that bwCatLower < bw <= bwCatUpper
+		 */
+		List<RecordEvent> containing(double bw) {
+			int i = Arrays.binarySearch(this.bounds, bw);
+			if (i < 0) {
+				i = -i - 1;
+			}
+			if (i == 0 || i >= this.bounds.length) {
+				return List.of();
+			}
+			return this.intervals[i];
+		}
+	}
+
+	private static final Comparator<RecordEvent> QUERY_ORDER = Comparator
+	        .comparing(RecordEvent::getGender, Comparator.nullsLast(Comparator.naturalOrder()))
+	        .thenComparingInt(RecordEvent::getAgeGrpLower)
+	        .thenComparingInt(RecordEvent::getAgeGrpUpper)
+	        .thenComparing(RecordEvent::getBwCatUpper, Comparator.nullsLast(Comparator.naturalOrder()))
+	        .thenComparing(RecordEvent::getRecordValue, Comparator.nullsLast(Comparator.reverseOrder()));
+
+	private static ConcurrentLinkedQueue<RecordEvent> added = new ConcurrentLinkedQueue<>();
+	private static volatile RecordIndex current;
+	private static AtomicLong generation = new AtomicLong();
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(RecordIndex.class);
+
+	static {
+		CommittedChanges.register(RecordEvent.class, (rec, change) -> {
+			if (change != Change.INSERT) {
+				invalidate();
+			} else if (current != null) {
+				added.add(rec);
+			}
+		});
+	}
+
+	/**
+	 * Records matching the criteria, null criteria are ignored.
+	 *
+	 * @param gender
+	 * @param age
+	 * @param bw
+	 * @return the records, in the same order as the database query
+	 */
+	public static List<RecordEvent> find(Gender gender, Integer age, Double bw) {
+		RecordIndex index = getCurrent();
+		List<RecordEvent> candidates;
+		if (gender == null || bw == null) {
+			candidates = index.all;
+		} else {
+			GenderRecords gr = index.byGender.get(gender);
+			candidates = gr != null ? gr.containing(bw) : List.of();
+		}
+		List<RecordEvent> result = new ArrayList<>();
+		for (RecordEvent r : candidates) {
+			if (gender != null && r.getGender() != gender) {
+				continue;
+			}
+			if (age != null && (r.getAgeGrpLower() > age || r.getAgeGrpUpper() < age)) {
+				continue;
+			}
+			if (bw != null && (r.getBwCatUpper() == null || r.getBwCatLower() >= bw || r.getBwCatUpper() < bw)) {
+				continue;
+			}
+			result.add(r);
+		}
+		return result;
+	}
+
+	/**
+	 * Read the records again on next use.
+	 */
+	public static void invalidate() {
+		generation.incrementAndGet();
+		current = null;
+		added.clear();
+	}
+
+	private static RecordIndex getCurrent() {
+		RecordIndex index = current;
+		if (index != null && added.isEmpty()) {
+			return index;
+		}
+		synchronized (RecordIndex.class) {
+			index = current;
+			if (index == null) {
+				long gen = generation.get();
+				added.clear();
+				index = new RecordIndex(RecordRepository.findAll());
+				if (gen == generation.get()) {
+					current = index;
+				}
+				logger.debug("indexed {} records", index.all.size());
+			}
+			if (!added.isEmpty()) {
+				List<RecordEvent> records = new ArrayList<>(index.all);
+				Set<Long> ids = new HashSet<>();
+				for (RecordEvent r : records) {
+					ids.add(r.getId());
+				}
+				RecordEvent r;
+				while ((r = added.poll()) != null) {
+					// committed while the index was read from the database
+					if (ids.add(r.getId())) {
+						records.add(r);
+					}
+				}
+				index = new RecordIndex(records);
+				if (current != null) {
+					current = index;
+				}
+			}
+			return index;
+		}
+	}
+
+	private final List<RecordEvent> all;
+	private final Map<Gender, GenderRecords> byGender = new EnumMap<>(Gender.class);
+
+	private RecordIndex(List<RecordEvent> records) {
+		List<RecordEvent> sorted = new ArrayList<>(records);
+		sorted.sort(QUERY_ORDER);
+		this.all = sorted;
+		for (Gender g : Gender.values()) {
+			List<RecordEvent> genderRecords = new ArrayList<>();
+			for (RecordEvent r : sorted) {
+				if (r.getGender() == g) {
+					genderRecords.add(r);
+				}
+			}
+			if (!genderRecords.isEmpty()) {
+				this.byGender.put(g, new GenderRecords(genderRecords));
+			}
+		}
+	}
+
+}
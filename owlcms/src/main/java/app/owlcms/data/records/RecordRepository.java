@@ -18,6 +18,7 @@ import javax.persistence.Query;
 import org.slf4j.LoggerFactory;
 
 import app.owlcms.data.athlete.Gender;
+import app.owlcms.data.jpa.DataVersion;
 import app.owlcms.data.jpa.JPAService;
 import app.owlcms.utils.LoggerUtils;
 import app.owlcms.utils.ResourceWalker;
@@ -45,6 +46,9 @@ public class RecordRepository {
 			q.executeUpdate();
 			return null;
 		});
+		RecordIndex.invalidate();
+		// bulk deletes are not seen by the commit listeners.
+		DataVersion.bump();
 	}
 
 	/**
@@ -64,6 +68,8 @@ public class RecordRepository {
 			}
 			return null;
 		});
+		RecordIndex.invalidate();
+		DataVersion.bump();
 	}
 
 	/**
@@ -83,6 +89,8 @@ public class RecordRepository {
 			}
 			return null;
 		});
+		RecordIndex.invalidate();
+		DataVersion.bump();
 	}
 
 	// public static JsonValue computeRecords(Gender gender, Integer age, Double bw, Integer snatchRequest,
@@ -108,6 +116,8 @@ public class RecordRepository {
 			}
 			return null;
 		});
+		RecordIndex.invalidate();
+		DataVersion.bump();
 	}
 
 	public static void clearRecordsOriginallyFromFile(String fileName) {
@@ -119,6 +129,8 @@ public class RecordRepository {
 			q.executeUpdate();
 			return null;
 		});
+		RecordIndex.invalidate();
+		DataVersion.bump();
 	}
 
 	/**
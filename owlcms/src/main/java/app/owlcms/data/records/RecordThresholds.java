@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.records;
+
+import java.util.List;
+
+import app.owlcms.data.athlete.Ranking;
+
+/**
+ * The record values an athlete would break, by lift, for the records the athlete is eligible for.
+ *
+ * A requested weight challenges the records whose value is below it, so what matters is how many of the sorted values
+ * the request exceeds. A weight change that stays between the same two values does not change the challenged records,
+ * and is detected with two comparisons.
+ */
+public class RecordThresholds {
+
+	private static final Ranking[] LIFTS = { Ranking.SNATCH, Ranking.CLEANJERK, Ranking.TOTAL };
+
+	/**
+	 * @param values  sorted record values
+	 * @param request requested weight, null if none
+	 * @param before  result for the previous request, -1 if not known
+	 * @return the number of values below the request, -1 if there is no request
+	 */
+	private static int crossed(double[] values, Integer request, int before) {
+		if (request == null) {
+			return -1;
+		}
+		if (before >= 0
+		        && (before == 0 || values[before - 1] < request)
+		        && (before == values.length || request <= values[before])) {
+			return before;
+		}
+		int low = 0;
+		int high = values.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (values[mid] < request) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private final double[][] values = new double[LIFTS.length][];
+
+	public RecordThresholds(List<RecordEvent> eligibleRecords) {
+		for (int i = 0; i < LIFTS.length; i++) {
+			Ranking lift = LIFTS[i];
+			this.values[i] = eligibleRecords.stream()
+			        .filter(r -> r.getRecordLift() == lift && r.getRecordValue() != null)
+			        .mapToDouble(RecordEvent::getRecordValue)
+			        .distinct()
+			        .sorted()
+			        .toArray();
+		}
+	}
+
+	/**
+	 * Which records are challenged, as a count of values exceeded for each lift.
+	 *
+	 * @param snatchRequest
+	 * @param cjRequest
+	 * @param totalRequest
+	 * @param previous      the result for the previous requests of the same athlete, null if none
+	 * @return previous itself if the same records are challenged, a new array otherwise
+	 */
+	public int[] crossings(Integer snatchRequest, Integer cjRequest, Integer totalRequest, int[] previous) {
+		Integer[] requests = { snatchRequest, cjRequest, totalRequest };
+		int[] current = new int[LIFTS.length];
+		boolean same = previous != null;
+		for (int i = 0; i < LIFTS.length; i++) {
+			current[i] = crossed(this.values[i], requests[i], previous != null ? previous[i] : -1);
+			same = same && current[i] == previous[i];
+		}
+		return same ? previous : current;
+	}
+
+}
@@ -53,9 +53,9 @@ import app.owlcms.uievents.BreakDisplay;
 import app.owlcms.uievents.BreakType;
 import app.owlcms.uievents.UIEvent;
 import app.owlcms.utils.CSSUtils;
+import app.owlcms.utils.ImageTags;
 import app.owlcms.utils.LoggerUtils;
 import app.owlcms.utils.StartupUtils;
-import app.owlcms.utils.URLUtils;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 import elemental.json.Json;
@@ -557,8 +557,8 @@ public abstract class AbstractAttemptBoard extends LitTemplate implements
 	}
 
 	protected void checkImages() {
-		this.teamFlags = URLUtils.checkFlags();
-		setAthletePictures(URLUtils.checkPictures());
+		this.teamFlags = ImageTags.hasFlags();
+		setAthletePictures(ImageTags.hasPictures());
 	}
 
 	protected void doAthleteUpdate(Athlete a) {
@@ -598,28 +598,12 @@ public abstract class AbstractAttemptBoard extends LitTemplate implements
 			team = "";
 		}
 		this.getElement().setProperty("teamName", team);
-		this.getElement().setProperty("teamFlagImg", "");
-		String teamFileName = URLUtils.sanitizeFilename(team);
-		if (this.teamFlags && !team.isBlank()) {
-			boolean done;
-			done = URLUtils.setImgProp("teamFlagImg", "flags/", teamFileName, ".svg", this);
-			if (!done) {
-				done = URLUtils.setImgProp("teamFlagImg", "flags/", teamFileName, ".png", this);
-				if (!done) {
-					done = URLUtils.setImgProp("teamFlagImg", "flags/", teamFileName, ".jpg", this);
-				}
-			}
-		}
+		String flagURL = this.teamFlags ? ImageTags.getFlagURL(team) : null;
+		this.getElement().setProperty("teamFlagImg", flagURL != null ? "<img src='local/" + flagURL + "'></img>" : "");
 
-		String membership = a.getMembership();
-		this.getElement().setProperty("athleteImg", "");
-		if (isAthletePictures() && membership != null) {
-			boolean done;
-			done = URLUtils.setImgProp("athleteImg", "pictures/", membership, ".jpg", this);
-			if (!done) {
-				done = URLUtils.setImgProp("athleteImg", "pictures/", membership, ".jpeg", this);
-			}
-		}
+		String pictureURL = isAthletePictures() ? ImageTags.getPictureURL(a.getMembership()) : null;
+		this.getElement().setProperty("athleteImg",
+		        pictureURL != null ? "<img src='local/" + pictureURL + "'></img>" : "");
 
 		spotlightRecords(fop, a);
 
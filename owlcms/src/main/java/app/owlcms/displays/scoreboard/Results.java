@@ -60,9 +60,9 @@ import app.owlcms.uievents.BreakType;
 import app.owlcms.uievents.UIEvent;
 import app.owlcms.uievents.UIEvent.LiftingOrderUpdated;
 import app.owlcms.utils.CSSUtils;
+import app.owlcms.utils.ImageTags;
 import app.owlcms.utils.LoggerUtils;
 import app.owlcms.utils.StartupUtils;
-import app.owlcms.utils.URLUtils;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 import elemental.json.Json;
@@ -114,7 +114,6 @@ public class Results extends LitTemplate
 	private Double teamWidth;
 	private boolean leadersDisplay;
 	private boolean recordsDisplay;
-	private HashMap<Athlete, String> athleteToFlag = new HashMap<>();
 	private boolean video;
 	private boolean downSilenced;
 
@@ -400,26 +399,7 @@ public class Results extends LitTemplate
 	 * @param ja
 	 */
 	public void setTeamFlag(Athlete a, JsonObject ja) {
-		String prop = null;
-		if (this.athleteToFlag.containsKey(a)) {
-			prop = this.athleteToFlag.get(a);
-		} else {
-			String team = a.getTeam();
-			String teamFileName = URLUtils.sanitizeFilename(team);
-
-			if (this.teamFlags && !team.isBlank()) {
-				prop = URLUtils.getImgTag("flags/", teamFileName, ".svg", "");
-				if (prop == null) {
-					prop = URLUtils.getImgTag("flags/", teamFileName, ".png", "");
-					if (prop == null) {
-						prop = URLUtils.getImgTag("flags/", teamFileName, ".jpg", "");
-					}
-				}
-			}
-			// prop can be null, will be tested with ContainsKey
-			this.athleteToFlag.put(a, prop);
-			// ja.put("teamLength", team.isBlank() ? "" : (team.length()*1.2) + "ch");
-		}
+		String prop = this.teamFlags ? ImageTags.getFlagTag(a.getTeam(), "") : null;
 		ja.put("flagURL", prop != null ? prop : "");
 		ja.put("flagClass", "flags");
 	}
@@ -971,7 +951,7 @@ public class Results extends LitTemplate
 			// });
 			resultsInit();
 			checkVideo(this);
-			this.teamFlags = URLUtils.checkFlags();
+			this.teamFlags = ImageTags.hasFlags();
 
 			// get the global category rankings (attached to each athlete)
 			this.displayOrder = getOrder(fop);
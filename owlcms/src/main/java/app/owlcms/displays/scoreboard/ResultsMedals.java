@@ -44,7 +44,7 @@ import app.owlcms.nui.lifting.UIEventProcessor;
 import app.owlcms.uievents.CeremonyType;
 import app.owlcms.uievents.UIEvent;
 import app.owlcms.utils.CSSUtils;
-import app.owlcms.utils.URLUtils;
+import app.owlcms.utils.ImageTags;
 import ch.qos.logback.classic.Logger;
 import elemental.json.Json;
 import elemental.json.JsonArray;
@@ -345,17 +345,8 @@ public class ResultsMedals extends Results implements ResultsParameters, Display
 		// only show flags when medals are for a single category
 		String prop = null;
 		if (getCategory() != null) {
-			String team = a.getTeam();
-			String teamFileName = URLUtils.sanitizeFilename(team);
-
-			if (this.teamFlags && !team.isBlank()) {
-				prop = URLUtils.getImgTag("flags/", teamFileName, ".svg", "");
-				if (prop == null) {
-					prop = URLUtils.getImgTag("flags/", teamFileName, ".png", "");
-					if (prop == null) {
-						prop = URLUtils.getImgTag("flags/", teamFileName, ".jpg", "");
-					}
-				}
+			if (this.teamFlags) {
+				prop = ImageTags.getFlagTag(a.getTeam(), "");
 			}
 			ja.put("flagURL", prop != null ? prop : "");
 			ja.put("flagClass", "flags");
@@ -521,7 +512,7 @@ public class ResultsMedals extends Results implements ResultsParameters, Display
 		OwlcmsSession.withFop(fop -> {
 			medalsInit();
 			checkVideo(this);
-			this.teamFlags = URLUtils.checkFlags();
+			this.teamFlags = ImageTags.hasFlags();
 			if (this.getCategory() == null) {
 				if (this.getGroup() != null) {
 					this.medals = Competition.getCurrent().getMedals(this.getGroup(), true);
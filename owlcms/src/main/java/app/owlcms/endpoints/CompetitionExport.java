@@ -21,7 +21,6 @@
 package app.owlcms.endpoints;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
@@ -121,7 +120,6 @@ public class CompetitionExport extends HttpServlet {
 		response.reset();
 
 		// Prepare streams.
-		InputStream inputStream = null;
 		OutputStream output = null;
 		PrintWriter printWriter = null;
 
@@ -129,11 +127,16 @@ public class CompetitionExport extends HttpServlet {
 			// Open streams.
 			output = response.getOutputStream();
 			printWriter = new PrintWriter(output, true, StandardCharsets.UTF_8);
-			response.setContentType("application/json");
-			response.setCharacterEncoding("UTF-8");
-
-			inputStream = new CompetitionData().exportData();
-			inputStream.transferTo(output);
+			if ("snapshot".equals(request.getParameter("format"))) {
+				// compact binary copy, restored by the same upload as the JSON export
+				response.setContentType("application/octet-stream");
+				response.setHeader("Content-Disposition", "attachment; filename=\"competition.owls\"");
+				new CompetitionData().exportSnapshot(output);
+			} else {
+				response.setContentType("application/json");
+				response.setCharacterEncoding("UTF-8");
+				new CompetitionData().exportData(output);
+			}
 			output.flush();
 			printWriter.flush();
 
@@ -149,9 +152,6 @@ public class CompetitionExport extends HttpServlet {
 			if (printWriter != null) {
 				printWriter.close();
 			}
-			if (inputStream != null) {
-				inputStream.close();
-			}
 		}
 	}
 
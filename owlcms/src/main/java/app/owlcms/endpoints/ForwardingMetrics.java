@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.endpoints;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import app.owlcms.apputils.AccessUtils;
+import app.owlcms.monitors.ForwardingClient;
+import app.owlcms.utils.LoggerUtils;
+import app.owlcms.utils.ProxyUtils;
+import ch.qos.logback.classic.Logger;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Requests, errors, dropped status updates and response times for each forwarding destination (publicresults, video
+ * data server), as JSON.
+ *
+ * @author Jean-François Lamy
+ */
+@SuppressWarnings("serial")
+@WebServlet("/metrics/forwarding")
+public class ForwardingMetrics extends HttpServlet {
+
+	private static Logger logger = (Logger) LoggerFactory.getLogger(ForwardingMetrics.class);
+
+	/**
+	 * Process GET request.
+	 *
+	 * @see HttpServlet#doGet(HttpServletRequest, HttpServletResponse).
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+	        throws ServletException, IOException {
+		// use proxyutils because this is a plain servlet, not a Vaadin servlet
+		String host = ProxyUtils.getClientIp(request);
+		if (!AccessUtils.checkBackdoor(host)) {
+			logger.error("{} not in backdoor list, denied forwarding metrics", host);
+			response.setStatus(403);
+			response.flushBuffer();
+			return;
+		}
+
+		response.reset();
+		try (OutputStream output = response.getOutputStream()) {
+			response.setContentType("application/json");
+			response.setCharacterEncoding("UTF-8");
+
+			List<Map<String, Object>> destinations = new ArrayList<>();
+			for (ForwardingClient c : ForwardingClient.getClients()) {
+				Map<String, Object> metrics = new LinkedHashMap<>();
+				metrics.put("destination", c.getDestination());
+				metrics.put("requests", c.getNbRequests());
+				metrics.put("errors", c.getNbErrors());
+				metrics.put("dropped", c.getNbDropped());
+				metrics.put("inFlight", c.getInFlight());
+				metrics.put("queued", c.getQueueDepth());
+				metrics.put("averageMillis", c.getAverageMillis());
+				metrics.put("maxMillis", c.getMaxMillis());
+				destinations.add(metrics);
+			}
+			new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(output, destinations);
+			response.setStatus(200);
+		} catch (Throwable t) {
+			logger.error("{}", LoggerUtils.stackTrace(t));
+			response.setStatus(500);
+		}
+	}
+
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.endpoints;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import app.owlcms.apputils.AccessUtils;
+import app.owlcms.data.jpa.LazyLoadMonitor;
+import app.owlcms.data.jpa.TransactionTracer;
+import app.owlcms.utils.LoggerUtils;
+import app.owlcms.utils.ProxyUtils;
+import ch.qos.logback.classic.Logger;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Transaction counts, durations and entities touched, by call site, as JSON.
+ *
+ * Only filled when transaction tracing is enabled (see {@link TransactionTracer}). The lazy loads done outside of a
+ * transaction are always counted (see {@link LazyLoadMonitor}). Adding ?reset=true clears the totals after returning
+ * them, so the load caused by a given screen or phase of the competition can be measured.
+ *
+ * @author Jean-François Lamy
+ */
+@SuppressWarnings("serial")
+@WebServlet("/metrics/transactions")
+public class TransactionMetrics extends HttpServlet {
+
+	private static Logger logger = (Logger) LoggerFactory.getLogger(TransactionMetrics.class);
+
+	/**
+	 * Process GET request.
+	 *
+	 * @see HttpServlet#doGet(HttpServletRequest, HttpServletResponse).
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+	        throws ServletException, IOException {
+		// use proxyutils because this is a plain servlet, not a Vaadin servlet
+		String host = ProxyUtils.getClientIp(request);
+		if (!AccessUtils.checkBackdoor(host)) {
+			logger.error("{} not in backdoor list, denied transaction metrics", host);
+			response.setStatus(403);
+			response.flushBuffer();
+			return;
+		}
+
+		response.reset();
+		try (OutputStream output = response.getOutputStream()) {
+			response.setContentType("application/json");
+			response.setCharacterEncoding("UTF-8");
+
+			Map<String, Object> metrics = new LinkedHashMap<>();
+			metrics.put("enabled", TransactionTracer.isEnabled());
+			metrics.put("callSites", TransactionTracer.getStats());
+			metrics.put("lazyLoadsOutsideTransaction", LazyLoadMonitor.getCounts());
+			new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(output, metrics);
+			if ("true".equals(request.getParameter("reset"))) {
+				TransactionTracer.reset();
+				LazyLoadMonitor.reset();
+			}
+			response.setStatus(200);
+		} catch (Throwable t) {
+			logger.error("{}", LoggerUtils.stackTrace(t));
+			response.setStatus(500);
+		}
+	}
+
+}
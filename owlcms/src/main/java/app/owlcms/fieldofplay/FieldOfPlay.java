@@ -18,6 +18,7 @@ import static app.owlcms.uievents.BreakType.FIRST_CJ;
 import static app.owlcms.uievents.BreakType.FIRST_SNATCH;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -53,6 +54,8 @@ import app.owlcms.data.athlete.Athlete;
 import app.owlcms.data.athlete.AthleteRepository;
 import app.owlcms.data.athlete.LiftDefinition;
 import app.owlcms.data.athleteSort.AthleteSorter;
+import app.owlcms.data.athleteSort.RankWriter;
+import app.owlcms.data.athleteSort.CategoryRankingIndex;
 import app.owlcms.data.athleteSort.Ranking;
 import app.owlcms.data.category.Category;
 import app.owlcms.data.category.Participation;
@@ -64,6 +67,8 @@ import app.owlcms.data.platform.Platform;
 import app.owlcms.data.records.RecordConfig;
 import app.owlcms.data.records.RecordEvent;
 import app.owlcms.data.records.RecordFilter;
+import app.owlcms.data.records.RecordThresholds;
+import app.owlcms.fieldofplay.GroupLoader.GroupData;
 import app.owlcms.fieldofplay.FOPEvent.BarbellOrPlatesChanged;
 import app.owlcms.fieldofplay.FOPEvent.CeremonyDone;
 import app.owlcms.fieldofplay.FOPEvent.CeremonyStarted;
@@ -158,6 +163,7 @@ public class FieldOfPlay implements IUnregister {
 	private IProxyTimer athleteTimer;
 	private IProxyTimer breakTimer;
 	private BreakType breakType;
+	private CategoryRankingIndex categoryRankingIndex = new CategoryRankingIndex();
 	private CeremonyType ceremonyType;
 	private boolean cjStarted;
 	/**
@@ -215,6 +221,10 @@ public class FieldOfPlay implements IUnregister {
 	Map<Athlete, List<RecordEvent>> displayableRecordsByAthlete = new HashMap<>();
 	Map<Athlete, List<RecordEvent>> eligibleRecordsByAthlete = new HashMap<>();
 	Set<RecordEvent> groupRecords = new HashSet<>();
+	private Map<Long, RecordThresholds> recordThresholdsByAthlete = new HashMap<>();
+	private List<Object> recordsContext;
+	private int[] recordsCrossings;
+	private boolean nextGroupPrefetched;
 	private boolean clockStoppedDecisionsAllowed;
 	private Group videoGroup;
 	private Category videoCategory;
@@ -985,6 +995,11 @@ public class FieldOfPlay implements IUnregister {
 	}
 
 	public void init(List<Athlete> athletes, IProxyTimer timer, IProxyTimer breakTimer, boolean alreadyLoaded) {
+		init(athletes, null, timer, breakTimer, alreadyLoaded);
+	}
+
+	private void init(List<Athlete> athletes, GroupData groupData, IProxyTimer timer, IProxyTimer breakTimer,
+	        boolean alreadyLoaded) {
 		// logger.debug("start of init state={} \\n{}", state, LoggerUtils.
 		// stackTrace());
 		this.athleteTimer = timer;
@@ -995,13 +1010,14 @@ public class FieldOfPlay implements IUnregister {
 		this.setClockOwner(null);
 		this.setClockOwnerInitialTimeAllowed(0);
 		this.setLiftingOrder(athletes);
-		List<AgeGroup> allAgeGroups = AgeGroupRepository.findAgeGroups(getGroup());
+		List<AgeGroup> allAgeGroups = groupData != null ? groupData.getAgeGroups()
+		        : AgeGroupRepository.findAgeGroups(getGroup());
 		this.ageGroupMap = new LinkedHashMap<>();
 		for (AgeGroup ag : allAgeGroups) {
 			this.ageGroupMap.put(ag.getCode(), null);
 		}
 		this.setMedals(new TreeMap<>());
-		this.recomputeRecordsMap(athletes);
+		this.recomputeRecordsMap(athletes, groupData);
 
 		boolean done = false;
 		for (Athlete a : athletes) {
@@ -1119,14 +1135,12 @@ public class FieldOfPlay implements IUnregister {
 				        forceLoad,
 				        LoggerUtils.whereFrom());
 			}
-			List<Athlete> groupAthletes = AthleteRepository.findAllByGroupAndWeighIn(group, true);
-			if (groupAthletes.stream().map(Athlete::getStartNumber).anyMatch(sn -> sn == 0)) {
-				this.logger./**/warn("start numbers were not assigned correctly");
-				AthleteRepository.assignStartNumbers(group);
-				groupAthletes = AthleteRepository.findAllByGroupAndWeighIn(group, true);
-			}
-
-			init(groupAthletes, this.athleteTimer, this.breakTimer, alreadyLoaded);
+			// athletes, records, flags and pictures are read concurrently
+			GroupData groupData = GroupLoader.load(group);
+			this.nextGroupPrefetched = false;
+			// the index has the categories of the previous session
+			this.categoryRankingIndex.reset();
+			init(groupData.getAthletes(), groupData, this.athleteTimer, this.breakTimer, alreadyLoaded);
 			this.lastGroupLoaded = now;
 		} else {
 			this.logger.debug("{}null group", FieldOfPlay.getLoggingName(this));
@@ -1171,6 +1185,7 @@ public class FieldOfPlay implements IUnregister {
 
 	public void recomputeRecords(Athlete curAthlete) {
 		if (curAthlete == null) {
+			this.recordsCrossings = null;
 			setRecordsJson(Json.createNull());
 			setChallengedRecords(List.of());
 			setNewRecords(List.of());
@@ -1190,6 +1205,21 @@ public class FieldOfPlay implements IUnregister {
 		List<RecordEvent> displayableRecords = this.displayableRecordsByAthlete.get(curAthlete);
 		boolean showAllFederationRecords = computeShowInformationalRecords(eligibleRecords, displayableRecords);
 		boolean showAllCategoryRecords = computeShowAllGroupRecords();
+
+		// the records shown only change when the request goes past a record value
+		List<Object> context = Arrays.asList(curAthlete.getId(), showAllFederationRecords, showAllCategoryRecords,
+		        curAthlete.getPersonalBestSnatch(), curAthlete.getPersonalBestCleanJerk(),
+		        curAthlete.getPersonalBestTotal());
+		int[] previous = context.equals(this.recordsContext) ? this.recordsCrossings : null;
+		int[] crossings = null;
+		RecordThresholds thresholds = this.recordThresholdsByAthlete.get(curAthlete.getId());
+		if (thresholds != null) {
+			crossings = thresholds.crossings(snatchRequest, cjRequest, totalRequest, previous);
+			if (previous != null && crossings == previous) {
+				return;
+			}
+		}
+
 		List<RecordEvent> challengedRecords = RecordFilter.computeChallengedRecords(
 		        eligibleRecords,
 		        snatchRequest,
@@ -1221,10 +1251,13 @@ public class FieldOfPlay implements IUnregister {
 			recordsJson = null;
 		}
 		if (recordsJson == null) {
+			this.recordsCrossings = null;
 			setRecordsJson(Json.createNull());
 			setChallengedRecords(List.of());
 			setNewRecords(List.of());
 		} else {
+			this.recordsContext = context;
+			this.recordsCrossings = crossings;
 			setRecordsJson(recordsJson);
 			setChallengedRecords(challengedRecords);
 			for (RecordEvent re : challengedRecords) {
@@ -2070,6 +2103,11 @@ public class FieldOfPlay implements IUnregister {
 
 	private void pushOutDone() {
 		this.logger.debug("{} *** group {} done", FieldOfPlay.getLoggingName(this), getGroup());
+		if (!this.testingMode && !this.nextGroupPrefetched && getGroup() != null) {
+			// switching to the next group will not need to wait for the database
+			this.nextGroupPrefetched = true;
+			GroupLoader.prefetchNext(getGroup());
+		}
 		UIEvent.GroupDone event = new UIEvent.GroupDone(this.getGroup(), null, LoggerUtils.whereFrom());
 		// make sure the publicresults update carries the right state.
 		this.setBreakType(BreakType.GROUP_DONE);
@@ -2214,17 +2252,21 @@ public class FieldOfPlay implements IUnregister {
 		logger.debug("{}recompute ranks recomputeCategoryRanks={} [{}]", FieldOfPlay.getLoggingName(this), recomputeCategoryRanks, LoggerUtils.whereFrom());
 		if (recomputeCategoryRanks) {
 			// we update the ranks all athletes in our category, as well as the current scoring system
+			// only the athletes whose results changed are repositioned in the category rankings
 			athletes = JPAService.runInTransaction(em -> {
-				List<Athlete> l = AthleteSorter.assignCategoryRanks(em, g);
-				List<Athlete> nl = updateScoringSystemRanking(em, l);
-				return nl;
+				this.categoryRankingIndex.beforeLoad();
+				List<Athlete> l = g != null ? AthleteRepository.findAthletesForGlobalRanking(em, g)
+				        : AthleteRepository.doFindAllByGroupAndWeighIn(em, null, true, null);
+				RankWriter.Snapshot before = RankWriter.snapshot(l);
+				AthleteSorter.rankCategories(l, g != null ? this.categoryRankingIndex : null);
+				return updateScoringSystemRanking(em, l, before);
 			});
 		} else {
 			// only recompute the current scoring system
 			athletes = JPAService.runInTransaction(em -> {
 				List<Athlete> l = AthleteRepository.findAthletesForGlobalRanking(em, g);
-				List<Athlete> nl = updateScoringSystemRanking(em, l);
-				return nl;
+				RankWriter.Snapshot before = RankWriter.snapshot(l, false);
+				return updateScoringSystemRanking(em, l, before);
 			});
 		}
 		endAssignRanks = System.nanoTime();
@@ -2281,12 +2323,20 @@ public class FieldOfPlay implements IUnregister {
 
 	}
 
-	private List<Athlete> updateScoringSystemRanking(EntityManager em, List<Athlete> l) {
+	/**
+	 * Rank the athletes for the current scoring system, and queue the ranks that changed for writing.
+	 *
+	 * @param em     the current transaction
+	 * @param l      the athletes, managed by em
+	 * @param before their ranks before ranking
+	 * @return the athletes, detached from em so the transaction does not write them
+	 */
+	private List<Athlete> updateScoringSystemRanking(EntityManager em, List<Athlete> l, RankWriter.Snapshot before) {
 		if (Competition.getCurrent().isDisplayScoreRanks()) {
 			long beforeRanks = System.currentTimeMillis();
 			try {
-				// this only computes the current scoring system
-				Competition.getCurrent().scoringSystemRankings(em);
+				// this only computes the current scoring system, repositioning the athletes from the group
+				Competition.getCurrent().scoringSystemRankings(em, l);
 			} catch (Exception e) {
 				this.logger.error("{} scoringSystemRankings exception {}\n ", FieldOfPlay.getLoggingName(this),
 				        e,
@@ -2296,24 +2346,39 @@ public class FieldOfPlay implements IUnregister {
 			logger.warn("-------------------- scoringSystemRankings {}ms", afterRanks - beforeRanks);
 		}
 
-		List<Athlete> nl = new LinkedList<>();
-		for (Athlete a : l) {
-			nl.add(em.merge(a));
-		}
-		em.flush();
-		return nl;
+		// only the rank columns that changed are written, in the background
+		RankWriter.write(before, l);
+		em.clear();
+		return l;
 	}
 
 	private void recomputeRecordsMap(List<Athlete> athletes) {
+		recomputeRecordsMap(athletes, null);
+	}
+
+	/**
+	 * @param athletes
+	 * @param groupData records already computed when the group was read, null if none.
+	 */
+	private void recomputeRecordsMap(List<Athlete> athletes, GroupData groupData) {
 		// logger.debug("recompute record map");
 		this.groupRecords.clear();
+		this.recordThresholdsByAthlete.clear();
+		this.recordsCrossings = null;
 		for (Athlete a : athletes) {
-			List<RecordEvent> displayableRecords = RecordFilter.computeDisplayableRecordsForAthlete(a);
+			List<RecordEvent> displayableRecords = groupData != null ? groupData.getDisplayableRecords(a) : null;
+			if (displayableRecords == null) {
+				displayableRecords = RecordFilter.computeDisplayableRecordsForAthlete(a);
+			}
 			this.displayableRecordsByAthlete.put(a, displayableRecords);
 
-			List<RecordEvent> eligibleRecords = RecordFilter.filterEligibleRecordsForAthlete(a, displayableRecords);
+			List<RecordEvent> eligibleRecords = groupData != null ? groupData.getEligibleRecords(a) : null;
+			if (eligibleRecords == null) {
+				eligibleRecords = RecordFilter.filterEligibleRecordsForAthlete(a, displayableRecords);
+			}
 			// logger.debug("athlete {} {}",a, eligibleRecords);
 			this.eligibleRecordsByAthlete.put(a, eligibleRecords);
+			this.recordThresholdsByAthlete.put(a.getId(), new RecordThresholds(eligibleRecords));
 
 			this.groupRecords.addAll(displayableRecords);
 		}
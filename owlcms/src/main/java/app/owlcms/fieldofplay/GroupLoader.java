@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.fieldofplay;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.data.agegroup.AgeGroup;
+import app.owlcms.data.agegroup.AgeGroupRepository;
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athlete.AthleteRepository;
+import app.owlcms.data.group.Group;
+import app.owlcms.data.group.GroupRepository;
+import app.owlcms.data.jpa.DataVersion;
+import app.owlcms.data.records.RecordEvent;
+import app.owlcms.data.records.RecordFilter;
+import app.owlcms.utils.ImageTags;
+import app.owlcms.utils.LoggerUtils;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Read what a field of play needs to start a group.
+ *
+ * The athletes are read first; the records of each athlete, the flags and pictures, and the age groups are then
+ * obtained concurrently on a small pool of threads. When a group is done, the next group on the same platform is read
+ * ahead of time, and is used when the announcer switches to it if nothing has been changed in the meantime.
+ */
+public class GroupLoader {
+
+	/**
+	 * The data for a group.
+	 */
+	public static class GroupData {
+		private final List<AgeGroup> ageGroups;
+		private final List<Athlete> athletes;
+		private final Map<Long, List<RecordEvent>> displayableRecords;
+		private final Map<Long, List<RecordEvent>> eligibleRecords;
+		private final long version;
+
+		GroupData(long version, List<Athlete> athletes, List<AgeGroup> ageGroups,
+		        Map<Long, List<RecordEvent>> displayableRecords, Map<Long, List<RecordEvent>> eligibleRecords) {
+			this.version = version;
+			this.athletes = athletes;
+			this.ageGroups = ageGroups;
+			this.displayableRecords = displayableRecords;
+			this.eligibleRecords = eligibleRecords;
+		}
+
+		public List<AgeGroup> getAgeGroups() {
+			return this.ageGroups;
+		}
+
+		public List<Athlete> getAthletes() {
+			return this.athletes;
+		}
+
+		/**
+		 * @param a
+		 * @return the records that can be shown for the athlete, null if not known
+		 */
+		public List<RecordEvent> getDisplayableRecords(Athlete a) {
+			return this.displayableRecords.get(a.getId());
+		}
+
+		/**
+		 * @param a
+		 * @return the records the athlete can break, null if not known
+		 */
+		public List<RecordEvent> getEligibleRecords(Athlete a) {
+			return this.eligibleRecords.get(a.getId());
+		}
+	}
+
+	private static final int MAX_QUEUED = 20;
+	private static final int NB_THREADS = 4;
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(GroupLoader.class);
+	private static ThreadPoolExecutor executor;
+	private static Map<Long, CompletableFuture<GroupData>> prefetched = new ConcurrentHashMap<>();
+
+	static {
+		AtomicInteger threadNumber = new AtomicInteger();
+		executor = new ThreadPoolExecutor(NB_THREADS, NB_THREADS, 60, TimeUnit.SECONDS,
+		        new ArrayBlockingQueue<>(MAX_QUEUED),
+		        (r) -> {
+			        Thread t = new Thread(r, "group-loader-" + threadNumber.incrementAndGet());
+			        t.setDaemon(true);
+			        return t;
+		        });
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Read a group, using what was read ahead of time if still current.
+	 *
+	 * @param group
+	 * @return the data for the group
+	 */
+	public static GroupData load(Group group) {
+		GroupData data = takePrefetched(group);
+		if (data != null) {
+			logger.debug("using prefetched group {}", group);
+			return data;
+		}
+		try {
+			return fetch(group).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Read ahead of time the group that follows on the same platform, if any.
+	 *
+	 * @param group the group that is finishing
+	 */
+	public static void prefetchNext(Group group) {
+		try {
+			CompletableFuture.runAsync(() -> {
+				Group next = findNextGroup(group);
+				if (next == null) {
+					return;
+				}
+				CompletableFuture<GroupData> current = prefetched.get(next.getId());
+				if (current != null && !current.isCompletedExceptionally()
+				        && (!current.isDone() || current.join().version == DataVersion.get())) {
+					return;
+				}
+				logger.debug("prefetching group {}", next);
+				prefetched.values().removeIf(f -> f.isDone()
+				        && (f.isCompletedExceptionally() || f.join().version != DataVersion.get()));
+				prefetched.put(next.getId(), fetch(next));
+			}, executor).exceptionally((t) -> {
+				LoggerUtils.logError(logger, t);
+				return null;
+			});
+		} catch (RejectedExecutionException e) {
+			// busy, the group will be read when loaded.
+		}
+	}
+
+	private static CompletableFuture<GroupData> fetch(Group group) {
+		long version = DataVersion.get();
+		CompletableFuture<List<AgeGroup>> ageGroups = stage(() -> AgeGroupRepository.findAgeGroups(group));
+		CompletableFuture<List<Athlete>> athletes = stage(() -> fetchAthletes(group));
+
+		CompletableFuture<Void> images = athletes.thenCompose((l) -> stage(() -> {
+			// displays find flags and pictures already looked up
+			ImageTags.preload(
+			        l.stream().map(Athlete::getTeam).filter(Objects::nonNull).collect(Collectors.toSet()),
+			        l.stream().map(Athlete::getMembership).filter(Objects::nonNull).collect(Collectors.toSet()));
+			return null;
+		}));
+		CompletableFuture<Map<Long, List<RecordEvent>>> displayable = athletes.thenCompose((l) -> stage(() -> {
+			Map<Long, List<RecordEvent>> records = new HashMap<>();
+			for (Athlete a : l) {
+				records.put(a.getId(), RecordFilter.computeDisplayableRecordsForAthlete(a));
+			}
+			return records;
+		}));
+		CompletableFuture<Map<Long, List<RecordEvent>>> eligible = displayable.thenApply((m) -> {
+			Map<Long, List<RecordEvent>> records = new HashMap<>();
+			for (Athlete a : athletes.join()) {
+				records.put(a.getId(), RecordFilter.filterEligibleRecordsForAthlete(a, m.get(a.getId())));
+			}
+			return records;
+		});
+
+		return CompletableFuture.allOf(ageGroups, images, eligible)
+		        .thenApply((v) -> new GroupData(version, athletes.join(), ageGroups.join(), displayable.join(),
+		                eligible.join()));
+	}
+
+	private static List<Athlete> fetchAthletes(Group group) {
+		List<Athlete> groupAthletes = AthleteRepository.findAllByGroupAndWeighIn(group, true);
+		if (groupAthletes.stream().map(Athlete::getStartNumber).anyMatch(sn -> sn == 0)) {
+			logger./**/warn("start numbers were not assigned correctly");
+			AthleteRepository.assignStartNumbers(group);
+			groupAthletes = AthleteRepository.findAllByGroupAndWeighIn(group, true);
+		}
+		return groupAthletes;
+	}
+
+	/**
+	 * @param group
+	 * @return the first group scheduled after this one on the same platform, null if none.
+	 */
+	private static Group findNextGroup(Group group) {
+		LocalDateTime time = group.getCompetitionTime();
+		if (time == null || group.getPlatform() == null) {
+			return null;
+		}
+		String platformName = group.getPlatform().getName();
+		return GroupRepository.findAll().stream()
+		        .filter(g -> g.getPlatform() != null && Objects.equals(g.getPlatform().getName(), platformName))
+		        .filter(g -> g.getCompetitionTime() != null && g.getCompetitionTime().isAfter(time))
+		        .min(Comparator.comparing(Group::getCompetitionTime))
+		        .orElse(null);
+	}
+
+	/**
+	 * Run a stage on the pool, or in the calling thread if the pool is busy.
+	 */
+	private static <T> CompletableFuture<T> stage(Supplier<T> supplier) {
+		try {
+			return CompletableFuture.supplyAsync(supplier, executor);
+		} catch (RejectedExecutionException e) {
+			try {
+				return CompletableFuture.completedFuture(supplier.get());
+			} catch (Throwable t) {
+				return CompletableFuture.failedFuture(t);
+			}
+		}
+	}
+
+	/**
+	 * @return the prefetched data for the group, null if there is none or if the database changed since.
+	 */
+	private static GroupData takePrefetched(Group group) {
+		if (group.getId() == null) {
+			return null;
+		}
+		CompletableFuture<GroupData> future = prefetched.remove(group.getId());
+		if (future == null) {
+			return null;
+		}
+		try {
+			GroupData data = future.join();
+			return data.version == DataVersion.get() ? data : null;
+		} catch (CompletionException e) {
+			return null;
+		}
+	}
+
+}
@@ -9,6 +9,7 @@ package app.owlcms.init;
 import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
+import java.util.concurrent.Callable;
 import java.util.function.Consumer;
 
 import org.slf4j.LoggerFactory;
@@ -40,6 +41,7 @@ public class OwlcmsSession {
 	private static final String LOCALE = "locale";
 	private final static Logger logger = (Logger) LoggerFactory.getLogger(OwlcmsSession.class);
 	private static OwlcmsSession owlcmsSessionSingleton = null;
+	private static ThreadLocal<Locale> threadLocale = new ThreadLocal<>();
 
 	static {
 		logger.setLevel(Level.INFO);
@@ -105,7 +107,11 @@ public class OwlcmsSession {
 	}
 
 	public static Locale getLocale() {
-		Locale locale = (Locale) getAttribute(LOCALE);
+		Locale locale = threadLocale.get();
+		if (locale != null) {
+			return locale;
+		}
+		locale = (Locale) getAttribute(LOCALE);
 		if (locale != null) {
 			return locale;
 		}
@@ -163,6 +169,29 @@ public class OwlcmsSession {
 		setAttribute(REQUESTED_URL, url);
 	}
 
+	/**
+	 * Run code outside of the user's session (for example, a report generated in the background) with the user's
+	 * locale.
+	 *
+	 * @param locale   the locale captured while the session was available
+	 * @param callable the code to run
+	 * @return what the code returns
+	 * @throws Exception
+	 */
+	public static <T> T withLocale(Locale locale, Callable<T> callable) throws Exception {
+		Locale prev = threadLocale.get();
+		try {
+			threadLocale.set(locale);
+			return callable.call();
+		} finally {
+			if (prev == null) {
+				threadLocale.remove();
+			} else {
+				threadLocale.set(prev);
+			}
+		}
+	}
+
 	public static void withFop(Consumer<FieldOfPlay> command) {
 		FieldOfPlay fop = getFop();
 		if (fop == null) {
@@ -9,6 +9,7 @@ package app.owlcms.monitors;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
@@ -17,9 +18,19 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
-
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.NameValuePair;
 import org.apache.http.StatusLine;
@@ -29,14 +40,13 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.entity.mime.content.StringBody;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.hash.Hashing;
 
 import app.owlcms.data.agegroup.AgeGroup;
 import app.owlcms.data.agegroup.Championship;
@@ -73,10 +83,11 @@ import app.owlcms.uievents.UIEvent.LiftingOrderUpdated;
 import app.owlcms.uievents.UIEvent.SetTime;
 import app.owlcms.uievents.UIEvent.StartTime;
 import app.owlcms.uievents.UIEvent.StopTime;
+import app.owlcms.utils.ImageTags;
 import app.owlcms.utils.LoggerUtils;
 import app.owlcms.utils.ResourceWalker;
 import app.owlcms.utils.StartupUtils;
-import app.owlcms.utils.URLUtils;
+import app.owlcms.utils.UpdateProtocol;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 import elemental.json.Json;
@@ -90,6 +101,15 @@ public class EventForwarder implements BreakDisplay, HasBoardMode, IUnregister {
 	final private static Logger logger = (Logger) LoggerFactory.getLogger(EventForwarder.class);
 	final private static Logger uiEventLogger = (Logger) LoggerFactory.getLogger("UI" + logger.getName());
 	public static final Object singleThreadLock = new Object();
+	/**
+	 * shared by all forwarders, used to time coalesced updates and keepalives. The posts themselves are made by the
+	 * threads of the {@link ForwardingClient} of each destination.
+	 */
+	private static final ScheduledExecutorService updateScheduler = Executors.newScheduledThreadPool(1, (r) -> {
+		Thread t = new Thread(r, "forwarder-updates");
+		t.setDaemon(true);
+		return t;
+	});
 	private boolean NO_KEEPALIVE = false;
 	private String attempt;
 	private String categoryName;
@@ -117,6 +137,9 @@ public class EventForwarder implements BreakDisplay, HasBoardMode, IUnregister {
 	private String teamName;
 	private Integer timeAllowed;
 	private JsonObject translationMap;
+	private String translationMapJson;
+	private String translationHash;
+	private Locale translationLocale;
 	private long translatorResetTimeStamp;
 	private Integer weight;
 	private boolean wideTeamNames;
@@ -127,7 +150,12 @@ public class EventForwarder implements BreakDisplay, HasBoardMode, IUnregister {
 	private Map<String, String> lastTimerMap;
 	private Map<String, String> lastDecisionMap;
 	private Map<String, String> lastUpdate;
-	Thread keepaliveThread;
+	private final AtomicReference<UIEvent> pendingUpdate = new AtomicReference<>();
+	private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+	private volatile UIEvent lastPushedEvent;
+	private volatile long lastPushMillis = 0L;
+	private long minUpdateIntervalMillis;
+	private ScheduledFuture<?> keepaliveFuture;
 	private boolean showLiftRanks;
 	private boolean showSinclair;
 	private boolean showSinclairRank;
@@ -166,6 +194,8 @@ public class EventForwarder implements BreakDisplay, HasBoardMode, IUnregister {
 		// logger.debug("|||| eventForwarder {} {} {}", System.identityHashCode(this),
 		// emittingFop.getName(),System.identityHashCode(emittingFop));
 		this.NO_KEEPALIVE = Config.getCurrent().featureSwitch("noForwarderKeepAlive");
+		int maxUpdatesPerSecond = StartupUtils.getIntegerParam("forwarderMaxUpdatesPerSecond", 4);
+		this.minUpdateIntervalMillis = maxUpdatesPerSecond > 0 ? 1000 / maxUpdatesPerSecond : 0;
 
 		this.postBus = getFop().getEventForwardingBus();
 		this.postBus.register(this);
@@ -475,20 +505,13 @@ public class EventForwarder implements BreakDisplay, HasBoardMode, IUnregister {
 	 */
 	public void setTeamFlag(Athlete a, JsonObject ja) {
 		String team = a.getTeam();
-		String teamFileName = URLUtils.sanitizeFilename(team);
 		String prop = null;
 		if (this.teamFlags == null) {
-			this.teamFlags = URLUtils.checkFlags();
+			this.teamFlags = ImageTags.hasFlags();
 		}
 
-		if (this.teamFlags && !team.isBlank()) {
-			prop = URLUtils.getImgTag("flags/", teamFileName, ".svg", "");
-			if (prop == null) {
-				prop = URLUtils.getImgTag("flags/", teamFileName, ".png", "");
-				if (prop == null) {
-					prop = URLUtils.getImgTag("flags/", teamFileName, ".jpg", "");
-				}
-			}
+		if (this.teamFlags) {
+			prop = ImageTags.getFlagTag(team, "");
 		}
 		ja.put("teamLength", team.isBlank() ? "" : (team.length() + 2) + "ch");
 		ja.put("flagURL", prop != null ? prop : "");
@@ -704,6 +727,9 @@ public class EventForwarder implements BreakDisplay, HasBoardMode, IUnregister {
 			}
 		}
 		setTranslationMap(translations);
+		// the map is serialized and hashed once per locale version; publicresults caches it by hash.
+		this.translationMapJson = translations.toJson();
+		this.translationHash = Hashing.sha256().hashString(this.translationMapJson, StandardCharsets.UTF_8).toString();
 	}
 
 	void setAttempt(String formattedAttempt) {
@@ -1027,8 +1053,12 @@ public class EventForwarder implements BreakDisplay, HasBoardMode, IUnregister {
 		String paramStylesDir = Config.getCurrent().getParamStylesDir();
 		mapPut(sb, "stylesDir", paramStylesDir);
 
-		if (this.translatorResetTimeStamp != Translator.getResetTimeStamp()) {
+		Locale locale = Translator.getLocaleSupplier().get();
+		if (this.translationMap == null || this.translatorResetTimeStamp != Translator.getResetTimeStamp()
+		        || !Objects.equals(locale, this.translationLocale)) {
 			// translation map has been updated (reload or language change)
+			this.translatorResetTimeStamp = Translator.getResetTimeStamp();
+			this.translationLocale = locale;
 			setTranslationMap();
 		}
 
@@ -1090,7 +1120,9 @@ public class EventForwarder implements BreakDisplay, HasBoardMode, IUnregister {
 		createRecord(sb);
 
 		// presentation information
-		mapPut(sb, "translationMap", this.translationMap.toJson());
+		mapPut(sb, "translationMap", this.translationMapJson);
+		mapPut(sb, "translationHash", this.translationHash);
+		mapPut(sb, "translationLocale", this.translationLocale != null ? this.translationLocale.toLanguageTag() : null);
 		mapPut(sb, "hidden", String.valueOf(this.hidden));
 		mapPut(sb, "wideTeamNames", String.valueOf(this.wideTeamNames));
 		mapPut(sb, "sinclairMeet", Boolean.toString(Competition.getCurrent().isSinclair()));
@@ -1153,11 +1185,14 @@ public class EventForwarder implements BreakDisplay, HasBoardMode, IUnregister {
 		while (!done && nbTries <= 1) {
 			try {
 				post.setEntity(new UrlEncodedFormEntity(urlParameters, "UTF-8"));
-				try (CloseableHttpClient httpClient = HttpClients.createDefault();
-				        CloseableHttpResponse response = httpClient.execute(post)) {
+				ForwardingClient client = ForwardingClient.forUrl(url);
+				try (CloseableHttpResponse response = client.execute(post)) {
 					StatusLine statusLine = response.getStatusLine();
 					Integer statusCode = statusLine != null ? statusLine.getStatusCode() : null;
+					// consume the body so the connection goes back to the pool
+					EntityUtils.consume(response.getEntity());
 					if (statusCode != null && statusCode != 200) {
+						client.recordError();
 						synchronized (singleThreadLock) {
 							if (nbTries == 0 && statusCode != null && statusCode == 412) {
 								logger.error("{}missing remote configuration {} {} {}",
@@ -1177,8 +1212,8 @@ public class EventForwarder implements BreakDisplay, HasBoardMode, IUnregister {
 						done = true;
 					}
 				} catch (Exception e1) {
-					logger.error("{}could not post to {} {}", FieldOfPlay.getLoggingName(getFop()), url,
-					        LoggerUtils.exceptionMessage(e1));
+					logger.error("{}could not post to {} {} [{}]", FieldOfPlay.getLoggingName(getFop()), url,
+					        LoggerUtils.exceptionMessage(e1), client);
 					done = true;
 				}
 			} catch (UnsupportedEncodingException e2) {
@@ -1500,30 +1535,74 @@ public class EventForwarder implements BreakDisplay, HasBoardMode, IUnregister {
 	}
 
 	/**
-	 * push updates every n seconds in case publicresults is restarted. The individual instances for each viewer need to
-	 * debounce because they will get duplicate events.
+	 * Queue an update for sending. Updates are coalesced: if several events arrive before the previous update has been
+	 * sent, only the latest one is sent, and no more than forwarderMaxUpdatesPerSecond updates are sent per second.
 	 *
+	 * The latest update is also pushed again every KEEPALIVE_INTERVAL in case publicresults is restarted. The individual
+	 * instances for each viewer need to debounce because they will get duplicate events.
 	 */
-	private synchronized void pushUpdate(UIEvent e2) {
-		if (this.NO_KEEPALIVE) {
-			pushUpdateDoIt(e2);
+	private void pushUpdate(UIEvent e2) {
+		this.pendingUpdate.set(e2);
+		if (!this.NO_KEEPALIVE && this.keepaliveFuture == null) {
+			startKeepalive();
+		}
+		if (!this.drainScheduled.compareAndSet(false, true)) {
+			// a send is already scheduled, it will pick up the latest event.
 			return;
 		}
-		if (this.keepaliveThread != null) {
-			this.keepaliveThread.interrupt();
+		long sinceLast = System.currentTimeMillis() - this.lastPushMillis;
+		long delay = Math.max(0, this.minUpdateIntervalMillis - sinceLast);
+		updateScheduler.schedule(this::startDrain, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Hand the drain over to the pool of the publicresults destination, so that a slow destination does not hold the
+	 * scheduler threads shared by all the fields of play.
+	 */
+	private void startDrain() {
+		String updateUrl = Config.getCurrent().getParamUpdateUrl();
+		if (updateUrl == null) {
+			// the video data post is already asynchronous
+			drainUpdate();
+			return;
 		}
-		this.keepaliveThread = new Thread(() -> {
-			while (!Thread.currentThread().isInterrupted()) {
-				try {
-					pushUpdateDoIt(e2);
-					Thread.sleep(KEEPALIVE_INTERVAL);
-				} catch (InterruptedException e) {
-					logger.debug("thread {} interrupted", Thread.currentThread().getId());
-					break;
-				}
+		ForwardingClient.forUrl(updateUrl).submit(this::drainUpdate);
+	}
+
+	/**
+	 * Send the most recent pending update. Only one drain is scheduled at a time for a given forwarder, so updates for
+	 * a field of play are sent by a single writer, in order. Runs on a forwarding client thread (see
+	 * {@link #startDrain()}).
+	 */
+	private void drainUpdate() {
+		try {
+			UIEvent e = this.pendingUpdate.getAndSet(null);
+			if (e != null) {
+				this.lastPushedEvent = e;
+				this.lastPushMillis = System.currentTimeMillis();
+				pushUpdateDoIt(e);
 			}
-		});
-		this.keepaliveThread.start();
+		} catch (Throwable t) {
+			logger.error("{}could not push update {}", FieldOfPlay.getLoggingName(getFop()), LoggerUtils.stackTrace(t));
+		} finally {
+			this.drainScheduled.set(false);
+			if (this.pendingUpdate.get() != null && this.drainScheduled.compareAndSet(false, true)) {
+				// an event arrived while we were sending.
+				updateScheduler.schedule(this::startDrain, this.minUpdateIntervalMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	private synchronized void startKeepalive() {
+		if (this.keepaliveFuture != null) {
+			return;
+		}
+		this.keepaliveFuture = updateScheduler.scheduleWithFixedDelay(() -> {
+			UIEvent last = this.lastPushedEvent;
+			if (last != null && System.currentTimeMillis() - this.lastPushMillis >= KEEPALIVE_INTERVAL) {
+				pushUpdate(last);
+			}
+		}, KEEPALIVE_INTERVAL, KEEPALIVE_INTERVAL / 3, TimeUnit.MILLISECONDS);
 	}
 
 	private void pushUpdateDoIt(UIEvent e2) {
@@ -1538,8 +1617,132 @@ public class EventForwarder implements BreakDisplay, HasBoardMode, IUnregister {
 			return;
 		}
 
-		sendPost(videoUrl, current.getParamVideoDataKey(), this.lastUpdate);
-		sendPost(updateUrl, current.getParamUpdateKey(), this.lastUpdate);
+		// video data servers get the full update, publicresults gets deltas once it has said it understands them.
+		sendPost(videoUrl, current.getParamVideoDataKey(), this.lastUpdate, true);
+		postUpdate(updateUrl, current.getParamUpdateKey(), this.lastUpdate);
+	}
+
+	/**
+	 * Post an update to publicresults using the delta protocol. Called from the single writer for this field of play
+	 * so that sequence numbers arrive in order.
+	 *
+	 * @param url
+	 * @param updateKey
+	 * @param full      the complete update parameters
+	 */
+	private void postUpdate(String url, String updateKey, Map<String, String> full) {
+		if (url == null) {
+			return;
+		}
+		UpdateDeltaEncoder encoder = this.deltaEncoders.computeIfAbsent(url, (u) -> new UpdateDeltaEncoder());
+		ForwardingClient client = ForwardingClient.forUrl(url);
+		int nbTries = 0;
+		while (nbTries <= 1) {
+			Map<String, String> parameters = encoder.encode(withoutPublishedTranslations(url, updateKey, encoder, full));
+			HttpPost post = new HttpPost(url);
+			List<NameValuePair> urlParameters = new ArrayList<>();
+			parameters.entrySet().stream()
+			        .forEach((e) -> urlParameters.add(new BasicNameValuePair(e.getKey(), e.getValue())));
+			try {
+				post.setEntity(new UrlEncodedFormEntity(urlParameters, "UTF-8"));
+				try (CloseableHttpResponse response = client.execute(post)) {
+					StatusLine statusLine = response.getStatusLine();
+					int statusCode = statusLine != null ? statusLine.getStatusCode() : 0;
+					EntityUtils.consume(response.getEntity());
+					if (statusCode == 200) {
+						Header protocolHeader = response.getFirstHeader(UpdateProtocol.PROTOCOL_HEADER);
+						encoder.acknowledge(protocolHeader != null ? protocolHeader.getValue() : null);
+						return;
+					}
+					// whatever happened, the receiver state is unknown, next post is a full snapshot
+					encoder.reset();
+					if (statusCode == 409 && nbTries == 0) {
+						logger.debug("{}update sequence gap reported by {}, sending full update",
+						        FieldOfPlay.getLoggingName(getFop()), url);
+					} else if (statusCode == 412 && nbTries == 0) {
+						logger.error("{}missing remote configuration {} {}", FieldOfPlay.getLoggingName(getFop()), url,
+						        statusLine);
+						synchronized (singleThreadLock) {
+							sendConfig(url, updateKey);
+						}
+					} else {
+						client.recordError();
+						logger.error("{}could not post to {} {}", FieldOfPlay.getLoggingName(getFop()), url,
+						        statusLine);
+						return;
+					}
+				}
+			} catch (Exception e1) {
+				encoder.reset();
+				logger.error("{}could not post to {} {} [{}]", FieldOfPlay.getLoggingName(getFop()), url,
+				        LoggerUtils.exceptionMessage(e1), client);
+				return;
+			}
+			nbTries++;
+		}
+	}
+
+	/**
+	 * publicresults versions that understand the update protocol receive the translation map once per hash through
+	 * /config, and updates only carry the hash.
+	 *
+	 * @return the update parameters, without the translation map if the receiver already has it
+	 */
+	private Map<String, String> withoutPublishedTranslations(String url, String updateKey, UpdateDeltaEncoder encoder,
+	        Map<String, String> full) {
+		String hash = full.get("translationHash");
+		if (hash == null || !encoder.isDeltasAccepted()) {
+			return full;
+		}
+		if (!hash.equals(this.publishedTranslationHashes.get(url))) {
+			sendTranslations(url, updateKey, hash, full.get("translationLocale"), full.get("translationMap"));
+		}
+		if (!hash.equals(this.publishedTranslationHashes.get(url))) {
+			return full;
+		}
+		Map<String, String> stripped = new LinkedHashMap<>(full);
+		stripped.remove("translationMap");
+		return stripped;
+	}
+
+	private void addTranslationParts(MultipartEntityBuilder builder) {
+		if (this.translationHash == null) {
+			return;
+		}
+		ContentType utf8Text = ContentType.create("text/plain", StandardCharsets.UTF_8);
+		builder.addPart("translationHash", new StringBody(this.translationHash, utf8Text));
+		builder.addPart("translationLocale", new StringBody(
+		        this.translationLocale != null ? this.translationLocale.toLanguageTag() : "", utf8Text));
+		builder.addPart("translationMap", new StringBody(this.translationMapJson, utf8Text));
+	}
+
+	private void sendTranslations(String url, String updateKey, String hash, String locale, String translations) {
+		if (url == null || updateKey == null || translations == null) {
+			return;
+		}
+		String destination = url.replaceAll("/update", "") + "/config";
+		ContentType utf8Text = ContentType.create("text/plain", StandardCharsets.UTF_8);
+		MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+		builder.addPart("updateKey", new StringBody(updateKey, ContentType.TEXT_PLAIN));
+		builder.addPart("translationHash", new StringBody(hash, utf8Text));
+		builder.addPart("translationLocale", new StringBody(locale != null ? locale : "", utf8Text));
+		builder.addPart("translationMap", new StringBody(translations, utf8Text));
+		HttpPost post = new HttpPost(destination);
+		post.setEntity(builder.build());
+		try (CloseableHttpResponse response = ForwardingClient.forUrl(destination).execute(post)) {
+			StatusLine statusLine = response.getStatusLine();
+			EntityUtils.consume(response.getEntity());
+			if (statusLine != null && statusLine.getStatusCode() == 200) {
+				logger.info("{}translations {} sent to {}", FieldOfPlay.getLoggingName(getFop()), hash, destination);
+				this.publishedTranslationHashes.put(url, hash);
+			} else {
+				logger.error("{}could not send translations to {} {}", FieldOfPlay.getLoggingName(getFop()),
+				        destination, statusLine);
+			}
+		} catch (Exception e) {
+			logger.error("{}could not send translations to {} {}", FieldOfPlay.getLoggingName(getFop()), destination,
+			        LoggerUtils.exceptionMessage(e));
+		}
 	}
 
 	private void sendConfig(String url, String updateKey) {
@@ -1559,6 +1762,7 @@ public class EventForwarder implements BreakDisplay, HasBoardMode, IUnregister {
 
 				MultipartEntityBuilder builder = MultipartEntityBuilder.create();
 				builder.addPart("updateKey", new StringBody(updateKey, ContentType.TEXT_PLAIN));
+				addTranslationParts(builder);
 
 				try {
 					PipedOutputStream out = new PipedOutputStream();
@@ -1580,8 +1784,7 @@ public class EventForwarder implements BreakDisplay, HasBoardMode, IUnregister {
 				HttpEntity entity = builder.build();
 
 				post.setEntity(entity);
-				try (CloseableHttpClient httpClient = HttpClients.createDefault();
-				        CloseableHttpResponse response = httpClient.execute(post)) {
+				try (CloseableHttpResponse response = ForwardingClient.forUrl(destination).execute(post)) {
 					StatusLine statusLine = response.getStatusLine();
 					Integer statusCode = statusLine != null ? statusLine.getStatusCode() : null;
 					if (statusCode != null && statusCode != 200) {
@@ -1591,6 +1794,9 @@ public class EventForwarder implements BreakDisplay, HasBoardMode, IUnregister {
 						        LoggerUtils.whereFrom(1));
 					}
 					EntityUtils.toString(response.getEntity());
+					if (statusCode != null && statusCode == 200 && this.translationHash != null) {
+						this.publishedTranslationHashes.put(url, this.translationHash);
+					}
 				} catch (Exception e1) {
 					logger.error("{}could not send config to {} {}", FieldOfPlay.getLoggingName(getFop()), destination,
 					        LoggerUtils.exceptionMessage(e1));
@@ -1601,25 +1807,44 @@ public class EventForwarder implements BreakDisplay, HasBoardMode, IUnregister {
 		}
 	}
 
-	Map<String, Integer> debouncingHash = new HashMap<>();
-	Map<String, Long> debouncingMillis = new HashMap<>();
+	Map<String, UpdateDeltaEncoder> deltaEncoders = new ConcurrentHashMap<>();
+	Map<String, String> publishedTranslationHashes = new ConcurrentHashMap<>();
+	/**
+	 * hash code and time of the last post, by url. Posts come from the event bus and from the update scheduler.
+	 */
+	Map<String, long[]> debouncing = new ConcurrentHashMap<>();
 
 	private void sendPost(String url, String updateKey, Map<String, String> parameters) {
+		sendPost(url, updateKey, parameters, false);
+	}
+
+	/**
+	 * @param supersedable true for status updates, which need not be sent if a more recent one is queued for the same
+	 *                     url. Decisions and timer events are always sent.
+	 */
+	private void sendPost(String url, String updateKey, Map<String, String> parameters, boolean supersedable) {
 		if (url == null) {
 			return;
 		}
-		Integer previousDebounceHash = debouncingHash.get(url);
-		Long previousDebounceMillis = debouncingMillis.get(url);
-		Long deltaMillis = System.currentTimeMillis() - (previousDebounceMillis != null ? previousDebounceMillis : 0);
-		Integer hashCode = parameters.hashCode();
+		int hashCode = parameters.hashCode();
+		boolean[] send = new boolean[1];
 
 		// debounce, sometimes several identical updates in a rapid succession
 		// identical updates are ok after 1 sec.
-		if (hashCode != previousDebounceHash || (deltaMillis > 1000)) {
-			new Thread(() -> doPost(url, updateKey, parameters)).start();
-
-			this.debouncingHash.put(url, hashCode);
-			this.debouncingMillis.put(url, System.currentTimeMillis());
+		this.debouncing.compute(url, (k, previous) -> {
+			long now = System.currentTimeMillis();
+			if (previous == null || previous[0] != hashCode || now - previous[1] > 1000) {
+				send[0] = true;
+				return new long[] { hashCode, now };
+			}
+			return previous;
+		});
+		if (send[0]) {
+			if (supersedable) {
+				ForwardingClient.forUrl(url).submitLatest(url, () -> doPost(url, updateKey, parameters));
+			} else {
+				ForwardingClient.forUrl(url).submitInOrder(() -> doPost(url, updateKey, parameters));
+			}
 		}
 
 	}
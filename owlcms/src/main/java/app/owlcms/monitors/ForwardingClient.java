@@ -0,0 +1,258 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.monitors;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.utils.StartupUtils;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Shared HTTP client for one forwarding destination (publicresults, video data server).
+ *
+ * Connections are pooled and kept alive between posts, so that a decision or a timer event does not pay a new TCP/TLS
+ * handshake.
+ *
+ * Decisions, timer and break events are sent one at a time, in the order they were submitted, by a single thread per
+ * destination, so that a StartTime cannot overtake the StopTime that preceded it. At most forwarderMaxQueued of them
+ * wait for that thread; beyond that they are dropped and counted, since a destination that far behind is not
+ * answering anyway.
+ *
+ * Status updates are sent by a small pool, and coalesced by endpoint: when the destination is slow, an update that has
+ * not been sent yet is replaced by the more recent one, and counted as dropped. The queue of the pool is not bounded,
+ * but holds at most one task per endpoint and one drain per field of play.
+ *
+ * @author Jean-François Lamy
+ */
+public class ForwardingClient {
+
+	private static final int CONNECT_TIMEOUT = 5000;
+	private static final int SOCKET_TIMEOUT = 15000;
+	private static final long IDLE_EVICTION_SECONDS = 30;
+
+	final private static Logger logger = (Logger) LoggerFactory.getLogger(ForwardingClient.class);
+	private static ConcurrentHashMap<String, ForwardingClient> clientsByDestination = new ConcurrentHashMap<>();
+
+	/**
+	 * @param url the full URL of a post
+	 * @return the shared client for the scheme, host and port of the url
+	 */
+	public static ForwardingClient forUrl(String url) {
+		return clientsByDestination.computeIfAbsent(destinationKey(url), (k) -> new ForwardingClient(k));
+	}
+
+	/**
+	 * @return the clients created so far, reported by /metrics/forwarding
+	 */
+	public static Collection<ForwardingClient> getClients() {
+		return Collections.unmodifiableCollection(clientsByDestination.values());
+	}
+
+	private static String destinationKey(String url) {
+		try {
+			URI uri = URI.create(url);
+			return uri.getScheme() + "://" + uri.getHost() + (uri.getPort() > 0 ? ":" + uri.getPort() : "");
+		} catch (IllegalArgumentException e) {
+			return url;
+		}
+	}
+
+	private final String destination;
+	private final CloseableHttpClient httpClient;
+	private final ThreadPoolExecutor executor;
+	private final ThreadPoolExecutor serialExecutor;
+	private final ConcurrentHashMap<String, Runnable> pendingByKey = new ConcurrentHashMap<>();
+
+	private final AtomicLong nbRequests = new AtomicLong();
+	private final AtomicLong nbErrors = new AtomicLong();
+	private final AtomicLong nbDropped = new AtomicLong();
+	private final AtomicLong totalMillis = new AtomicLong();
+	private final AtomicLong maxMillis = new AtomicLong();
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private ForwardingClient(String destination) {
+		this.destination = destination;
+		int maxInFlight = StartupUtils.getIntegerParam("forwarderMaxInFlight", 4);
+
+		PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
+		int maxQueued = StartupUtils.getIntegerParam("forwarderMaxQueued", 1000);
+
+		// the pool, and the thread for the ordered posts
+		cm.setMaxTotal(maxInFlight + 1);
+		cm.setDefaultMaxPerRoute(maxInFlight + 1);
+		cm.setValidateAfterInactivity(2000);
+		RequestConfig requestConfig = RequestConfig.custom()
+		        .setConnectTimeout(CONNECT_TIMEOUT)
+		        .setConnectionRequestTimeout(CONNECT_TIMEOUT)
+		        .setSocketTimeout(SOCKET_TIMEOUT)
+		        .build();
+		this.httpClient = HttpClients.custom()
+		        .setConnectionManager(cm)
+		        .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+		        .setDefaultRequestConfig(requestConfig)
+		        .evictExpiredConnections()
+		        .evictIdleConnections(IDLE_EVICTION_SECONDS, TimeUnit.SECONDS)
+		        .build();
+
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(maxInFlight, maxInFlight, 60, TimeUnit.SECONDS,
+		        new LinkedBlockingQueue<>(),
+		        (r) -> {
+			        Thread t = new Thread(r, "forwarder-" + destination + "-" + threadNumber.incrementAndGet());
+			        t.setDaemon(true);
+			        return t;
+		        });
+		this.executor.allowCoreThreadTimeOut(true);
+		this.serialExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+		        new LinkedBlockingQueue<>(maxQueued),
+		        (r) -> {
+			        Thread t = new Thread(r, "forwarder-" + destination + "-ordered");
+			        t.setDaemon(true);
+			        return t;
+		        });
+		this.serialExecutor.allowCoreThreadTimeOut(true);
+		logger.info("created pooled forwarding client for {}", destination);
+	}
+
+	/**
+	 * Execute a request on a pooled, kept-alive connection. The caller must close the response so that the connection
+	 * is returned to the pool.
+	 *
+	 * @param request
+	 * @return the response
+	 * @throws IOException
+	 */
+	public CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+		long start = System.currentTimeMillis();
+		this.nbRequests.incrementAndGet();
+		this.inFlight.incrementAndGet();
+		try {
+			return this.httpClient.execute(request);
+		} catch (IOException e) {
+			this.nbErrors.incrementAndGet();
+			throw e;
+		} finally {
+			this.inFlight.decrementAndGet();
+			long elapsed = System.currentTimeMillis() - start;
+			this.totalMillis.addAndGet(elapsed);
+			this.maxMillis.accumulateAndGet(elapsed, Math::max);
+		}
+	}
+
+	public long getAverageMillis() {
+		long n = this.nbRequests.get();
+		return n > 0 ? this.totalMillis.get() / n : 0;
+	}
+
+	public String getDestination() {
+		return this.destination;
+	}
+
+	public int getInFlight() {
+		return this.inFlight.get();
+	}
+
+	public long getMaxMillis() {
+		return this.maxMillis.get();
+	}
+
+	public long getNbDropped() {
+		return this.nbDropped.get();
+	}
+
+	public long getNbErrors() {
+		return this.nbErrors.get();
+	}
+
+	public long getNbRequests() {
+		return this.nbRequests.get();
+	}
+
+	public int getQueueDepth() {
+		return this.executor.getQueue().size() + this.serialExecutor.getQueue().size();
+	}
+
+	/**
+	 * Record an error that was not signaled by an exception (unexpected HTTP status)
+	 */
+	public void recordError() {
+		this.nbErrors.incrementAndGet();
+	}
+
+	/**
+	 * Run a task asynchronously, at most forwarderMaxInFlight at a time for this destination. The caller makes sure
+	 * that the same task is not submitted again before it has run.
+	 *
+	 * @param task
+	 */
+	public void submit(Runnable task) {
+		this.executor.execute(task);
+	}
+
+	/**
+	 * Run a post asynchronously, after the posts submitted before it through this method.
+	 *
+	 * @param post
+	 */
+	public void submitInOrder(Runnable post) {
+		try {
+			this.serialExecutor.execute(post);
+		} catch (RejectedExecutionException e) {
+			this.nbDropped.incrementAndGet();
+			logger.warn("{} is not keeping up, {} posts waiting, post dropped", this.destination,
+			        this.serialExecutor.getQueue().size());
+		}
+	}
+
+	/**
+	 * Run a post asynchronously, unless a more recent post with the same key is submitted before this one has started.
+	 * Used for status updates, where only the latest state matters.
+	 *
+	 * @param key  the endpoint
+	 * @param post
+	 */
+	public void submitLatest(String key, Runnable post) {
+		if (this.pendingByKey.put(key, post) != null) {
+			// the previous post was still waiting, and will not be sent.
+			this.nbDropped.incrementAndGet();
+			return;
+		}
+		this.executor.execute(() -> {
+			Runnable latest = this.pendingByKey.remove(key);
+			if (latest != null) {
+				latest.run();
+			}
+		});
+	}
+
+	@Override
+	public String toString() {
+		return this.destination + " requests=" + getNbRequests() + " errors=" + getNbErrors() + " dropped="
+		        + getNbDropped() + " inFlight=" + getInFlight() + " queued=" + getQueueDepth() + " avgMs="
+		        + getAverageMillis() + " maxMs=" + getMaxMillis();
+	}
+
+}
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.monitors;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.StringJoiner;
+
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.utils.UpdateProtocol;
+import ch.qos.logback.classic.Logger;
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+import elemental.json.JsonValue;
+
+/**
+ * Computes the parameters of an /update post for version 2 of the update protocol.
+ *
+ * The first post, and any post after an error, carries the full state (delta=false). Subsequent posts only carry the
+ * fields whose values changed since the last acknowledged post. The athlete lists are compared row by row, and only
+ * the changed rows are sent, as a JSON object <code>{"size":n, "rows":{"index":row,...}}</code> in a field suffixed
+ * with "Delta". Fields that became absent are listed in "removedFields". Every post has a sequence number; the
+ * receiver answers with status 409 when it sees a gap, and a full snapshot is then sent.
+ *
+ * Deltas are only sent once the receiver has advertised that it understands the protocol, so older publicresults
+ * versions and video data servers keep getting full updates.
+ *
+ * One encoder is used per field of play and per destination, and is only called from the single writer for that field
+ * of play.
+ *
+ * @author Jean-François Lamy
+ */
+public class UpdateDeltaEncoder {
+
+	static final Set<String> ROW_FIELDS = UpdateProtocol.ROW_FIELDS;
+	static final Set<String> ALWAYS_SENT = Set.of("updateKey", "fop");
+
+	final private static Logger logger = (Logger) LoggerFactory.getLogger(UpdateDeltaEncoder.class);
+
+	private long seq = 0;
+	private boolean deltasAccepted = false;
+	private Map<String, String> acknowledged;
+	private Map<String, List<String>> acknowledgedRows = new HashMap<>();
+	private Map<String, String> pending;
+	private Map<String, List<String>> pendingRows;
+
+	/**
+	 * Called once the receiver has accepted the post returned by the last {@link #encode(Map)}
+	 *
+	 * @param protocolVersion the value of the protocol header returned by the receiver, null if absent
+	 */
+	public void acknowledge(String protocolVersion) {
+		this.acknowledged = this.pending;
+		this.acknowledgedRows = this.pendingRows;
+		this.deltasAccepted = UpdateProtocol.PROTOCOL_VERSION.equals(protocolVersion);
+	}
+
+	/**
+	 * @param full the complete set of update parameters
+	 * @return the parameters to post, either the full set or only what changed since the last acknowledged post.
+	 */
+	public Map<String, String> encode(Map<String, String> full) {
+		this.seq++;
+		this.pending = full;
+		this.pendingRows = new HashMap<>();
+		for (String rowField : ROW_FIELDS) {
+			String value = full.get(rowField);
+			if (value != null) {
+				this.pendingRows.put(rowField, splitRows(value));
+			}
+		}
+
+		Map<String, String> params;
+		if (!this.deltasAccepted || this.acknowledged == null) {
+			params = new LinkedHashMap<>(full);
+			params.put("delta", "false");
+		} else {
+			params = computeDelta(full);
+			params.put("delta", "true");
+		}
+		params.put("protocol", UpdateProtocol.PROTOCOL_VERSION);
+		params.put("seq", Long.toString(this.seq));
+		return params;
+	}
+
+	/**
+	 * @return true if the receiver has advertised that it understands this protocol
+	 */
+	public boolean isDeltasAccepted() {
+		return this.deltasAccepted;
+	}
+
+	/**
+	 * Force the next post to be a full snapshot (error, gap reported by the receiver, receiver restarted).
+	 */
+	public void reset() {
+		this.acknowledged = null;
+		this.acknowledgedRows = new HashMap<>();
+	}
+
+	private Map<String, String> computeDelta(Map<String, String> full) {
+		Map<String, String> params = new LinkedHashMap<>();
+		StringJoiner removed = new StringJoiner(",");
+		for (Entry<String, String> e : full.entrySet()) {
+			String key = e.getKey();
+			if (ALWAYS_SENT.contains(key)) {
+				params.put(key, e.getValue());
+			} else if (ROW_FIELDS.contains(key)) {
+				putRowDelta(params, key, e.getValue());
+			} else if (!Objects.equals(e.getValue(), this.acknowledged.get(key))) {
+				params.put(key, e.getValue());
+			}
+		}
+		for (String key : this.acknowledged.keySet()) {
+			if (!full.containsKey(key)) {
+				removed.add(key);
+			}
+		}
+		if (removed.length() > 0) {
+			params.put("removedFields", removed.toString());
+		}
+		logger.trace("delta {} fields out of {}", params.size(), full.size());
+		return params;
+	}
+
+	private void putRowDelta(Map<String, String> params, String key, String fullValue) {
+		List<String> newRows = this.pendingRows.get(key);
+		List<String> oldRows = this.acknowledgedRows.get(key);
+		if (oldRows == null) {
+			params.put(key, fullValue);
+			return;
+		}
+		if (newRows.equals(oldRows)) {
+			return;
+		}
+		JsonObject changedRows = Json.createObject();
+		for (int i = 0; i < newRows.size(); i++) {
+			if (i >= oldRows.size() || !newRows.get(i).equals(oldRows.get(i))) {
+				changedRows.put(Integer.toString(i), Json.parse(newRows.get(i)));
+			}
+		}
+		JsonObject delta = Json.createObject();
+		delta.put("size", newRows.size());
+		delta.put("rows", changedRows);
+		String deltaJson = delta.toJson();
+		if (deltaJson.length() < fullValue.length()) {
+			params.put(key + "Delta", deltaJson);
+		} else {
+			// most rows changed, the full list is cheaper.
+			params.put(key, fullValue);
+		}
+	}
+
+	private List<String> splitRows(String jsonArray) {
+		List<String> rows = new ArrayList<>();
+		JsonValue parsed = Json.parse(jsonArray);
+		if (parsed instanceof JsonArray) {
+			JsonArray array = (JsonArray) parsed;
+			for (int i = 0; i < array.length(); i++) {
+				rows.add(array.get(i).toJson());
+			}
+		}
+		return rows;
+	}
+
+}
@@ -61,6 +61,7 @@ import app.owlcms.data.athlete.AthleteRepository;
 import app.owlcms.data.athlete.Gender;
 import app.owlcms.data.athleteSort.AthleteSorter;
 import app.owlcms.data.athleteSort.RegistrationOrderComparator;
+import app.owlcms.data.athleteSort.ScoreRankingIndex;
 import app.owlcms.data.category.Category;
 import app.owlcms.data.category.Participation;
 import app.owlcms.data.competition.Competition;
@@ -953,6 +954,7 @@ public class RegistrationContent extends BaseContent implements CrudListener<Ath
 				em.remove(ath);
 			}
 			em.flush();
+			ScoreRankingIndex.invalidate();
 			return null;
 		});
 		refreshCrudGrid();
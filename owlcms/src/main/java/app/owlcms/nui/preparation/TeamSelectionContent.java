@@ -74,6 +74,7 @@ import app.owlcms.nui.shared.OwlcmsLayout;
 import app.owlcms.nui.shared.RequireLogin;
 import app.owlcms.spreadsheet.JXLSCompetitionBook;
 import app.owlcms.spreadsheet.PAthlete;
+import app.owlcms.utils.ImageTags;
 import app.owlcms.utils.URLUtils;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
@@ -309,7 +310,7 @@ public class TeamSelectionContent extends BaseContent
 	 */
 	protected OwlcmsCrudGrid<TeamTreeItem> createCrudGrid(OwlcmsCrudFormFactory<TeamTreeItem> crudFormFactory) {
 		TreeGrid<TeamTreeItem> grid = new TreeGrid<>();
-		boolean teamFlags = URLUtils.checkFlags();
+		boolean teamFlags = ImageTags.hasFlags();
 		
 		grid.addComponentHierarchyColumn((p -> {
 			if (p.isTeamMember() != null) {
@@ -317,17 +318,7 @@ public class TeamSelectionContent extends BaseContent
 			}
 
 			String team = p.getTeam().getName();
-			String teamFileName = URLUtils.sanitizeFilename(team);
-			String tag = null;
-			if (teamFlags && !team.isBlank()) {
-				tag = URLUtils.getImgTag("flags/", teamFileName, ".svg", "style='width:3em'");
-				if (tag == null) {
-					tag = URLUtils.getImgTag("flags/", teamFileName, ".png", "style='width:3em'");
-					if (tag == null) {
-						tag = URLUtils.getImgTag("flags/", teamFileName, ".jpg", "style='width:3em'");
-					}
-				}
-			}
+			String tag = teamFlags ? ImageTags.getFlagTag(team, "style='width:3em'") : null;
 			HorizontalLayout hl = new HorizontalLayout();
 			if (tag != null) {
 				hl.add(new Html(tag));
@@ -9,6 +9,7 @@ package app.owlcms.spreadsheet;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -52,6 +53,12 @@ public class JXLSWinningSheet extends JXLSWorkbookStreamSource {
 		this.resultsByCategory = b;
 	}
 
+	@Override
+	public String getReportKey(Locale locale) {
+		String key = super.getReportKey(locale);
+		return key != null ? key + "|" + this.resultsByCategory : null;
+	}
+
 	@Override
 	public List<Athlete> getSortedAthletes() {
 		if (this.sortedAthletes != null) {
@@ -7,9 +7,8 @@
 package app.owlcms.spreadsheet;
 
 import java.io.BufferedInputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -25,7 +24,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.BorderStyle;
 import org.apache.poi.ss.usermodel.Cell;
@@ -36,7 +35,8 @@ import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
 import org.jxls.builder.JxlsStreaming;
-import org.jxls.transform.poi.JxlsPoi;
+import org.jxls.transform.poi.JxlsPoiTemplateFillerBuilder;
+import org.jxls.transform.poi.PoiTransformer;
 import org.slf4j.LoggerFactory;
 
 import com.vaadin.flow.component.UI;
@@ -49,6 +49,7 @@ import com.vaadin.flow.server.VaadinSession;
 
 import app.owlcms.data.agegroup.Championship;
 import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athleteSort.RankWriter;
 import app.owlcms.data.category.Category;
 import app.owlcms.data.competition.Competition;
 import app.owlcms.data.group.Group;
@@ -56,8 +57,9 @@ import app.owlcms.data.group.GroupRepository;
 import app.owlcms.data.records.RecordEvent;
 import app.owlcms.i18n.Translator;
 import app.owlcms.init.OwlcmsSession;
+import app.owlcms.spreadsheet.TemplateRegistry.Template;
+import app.owlcms.spreadsheet.TemplateRegistry.TemplateStream;
 import app.owlcms.utils.LoggerUtils;
-import app.owlcms.utils.ResourceWalker;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 import net.sf.jxls.transformer.XLSTransformer;
@@ -101,20 +103,29 @@ public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter,
 	/**
 	 * Read the xls template and write the processed XLS file out.
 	 *
+	 * The session is only locked to get the user's locale; the user interface remains usable while the document is
+	 * generated.
+	 *
 	 * @see com.vaadin.flow.server.StreamResourceWriter#accept(java.io.OutputStream,
 	 *      com.vaadin.flow.server.VaadinSession)
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public void accept(OutputStream stream, VaadinSession session) throws IOException {
+		Locale locale;
+		session.lock();
 		try {
-			session.lock();
-			writeStream(stream);
-		} catch (Throwable t) {
-			logger.error(LoggerUtils./**/stackTrace(t));
+			locale = OwlcmsSession.getLocale();
 		} finally {
 			session.unlock();
 		}
+		try {
+			OwlcmsSession.withLocale(locale, () -> {
+				writeStream(stream);
+				return null;
+			});
+		} catch (Throwable t) {
+			logger.error(LoggerUtils./**/stackTrace(t));
+		}
 	}
 
 	@Override
@@ -140,6 +151,28 @@ public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter,
 		}
 	}
 
+	/**
+	 * Generate the document in memory. Does not need the user's session, so can be called from any thread.
+	 *
+	 * @param locale the user's locale
+	 * @return the document
+	 * @throws Exception
+	 */
+	public byte[] generate(Locale locale) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Consumer<String> callback = this.doneCallback;
+		try {
+			this.doneCallback = null;
+			OwlcmsSession.withLocale(locale, () -> {
+				writeStream(out);
+				return null;
+			});
+		} finally {
+			this.doneCallback = callback;
+		}
+		return out.toByteArray();
+	}
+
 	/**
 	 * @return the ageDivision
 	 */
@@ -179,6 +212,34 @@ public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter,
 		return this.reportingBeans;
 	}
 
+	/**
+	 * Identify the document that {@link #generate(Locale)} would produce from the same competition data.
+	 *
+	 * Subclasses with settings of their own add them to the key.
+	 *
+	 * @param locale the user's locale
+	 * @return the key, null if the template is not known and the document cannot be reused.
+	 */
+	public String getReportKey(Locale locale) {
+		if (!(this.inputStream instanceof TemplateStream)) {
+			return null;
+		}
+		Template template = ((TemplateStream) this.inputStream).getTemplate();
+		Category cat = getCategory();
+		Championship champ = getChampionship();
+		return getClass().getName()
+		        + "|" + template.getLocation() + "@" + template.getStamp()
+		        + "|" + (cat != null ? cat.getCode() : null)
+		        + "|" + getAgeGroupPrefix()
+		        + "|" + (champ != null ? champ.getName() : null)
+		        + "|" + (this.group != null ? this.group.getId() : null)
+		        + "|" + isExcludeNotWeighed() + "|" + isEmptyOk()
+		        + "|" + (this.sortedAthletes != null
+		                ? this.sortedAthletes.stream().map(Athlete::getId).collect(Collectors.toList()).hashCode()
+		                : null)
+		        + "|" + locale;
+	}
+
 	public List<Athlete> getSortedAthletes() {
 		return this.sortedAthletes;
 	}
@@ -316,32 +377,24 @@ public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter,
 			extensionList = Arrays.asList(extension);
 		}
 
-		for (String ext : extensionList) {
-			for (String suffix : tryList) {
-				String name = templateName + suffix + ext;
-				try {
-					final InputStream resourceAsStream = ResourceWalker.getFileOrResource(name);
-					// logger.debug("trying {} : {}", name, resourceAsStream);
-					if (resourceAsStream != null) {
-						this.setFileExtension(ext);
-						return resourceAsStream;
-					}
-				} catch (FileNotFoundException e) {
-					// ignore
-				}
-			}
+		Template template = TemplateRegistry.getLocalized(templateName, extensionList, tryList);
+		if (template != null) {
+			this.setFileExtension(template.getExtension());
+			return template.openStream();
 		}
 		throw new IOException("no template found for : " + templateName + extension + " tried with suffix " + tryList);
 	}
 
 	protected InputStream getTemplate(Locale locale) throws IOException, Exception {
-		if (this.inputStream != null) {
+		if (this.inputStream instanceof TemplateStream) {
+			// cached content, can be read again for another download
+			return ((TemplateStream) this.inputStream).getTemplate().openStream();
+		} else if (this.inputStream != null) {
 			logger.debug("explicitly set template {}", this.inputStream);
 			return new BufferedInputStream(this.inputStream);
 		}
 		String templateFileName2 = getTemplateFileName();
-		InputStream resourceAsStream = ResourceWalker.getFileOrResource(templateFileName2);
-		return new BufferedInputStream(resourceAsStream);
+		return TemplateRegistry.get(templateFileName2).openStream();
 	}
 
 	protected void init() {
@@ -397,34 +450,60 @@ public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter,
 		getReportingBeans().put("sessions", sessions);
 	}
 
+	/**
+	 * Streaming mode for JXLS3 templates. By default, only the sheets whose jx:area comment says
+	 * <code>sheetStreaming="true"</code> are streamed. With streaming, only a window of rows is kept in memory, so
+	 * {@link #postProcess(Workbook)} must not go back to arbitrary rows.
+	 *
+	 * @return the streaming mode
+	 */
+	protected JxlsStreaming getStreaming() {
+		return JxlsStreaming.AUTO_DETECT;
+	}
+
 	@SuppressWarnings("unchecked")
 	protected void writeStream(OutputStream stream) throws IOException {
-		File tempFile = null;
 		try {
-			InputStream template;
+			// ranks computed by the fields of play may not have been written yet
+			RankWriter.flush();
 			Locale locale = OwlcmsSession.getLocale();
-			template = getTemplate(locale);
-			tempFile = File.createTempFile("jxlsTemplate", ".tmp");
-			FileUtils.copyInputStreamToFile(template, tempFile);
-			Workbook workbook = WorkbookFactory.create(tempFile);
-			if (checkJxls3(workbook)) {
-				jxls3Transform(stream, tempFile);
+			Template template;
+			try (InputStream is = getTemplate(locale)) {
+				if (is instanceof TemplateStream) {
+					template = ((TemplateStream) is).getTemplate();
+				} else {
+					template = TemplateRegistry.get(is.readAllBytes());
+				}
+			}
+			Workbook workbook = null;
+			if (template.isJxls3() == null) {
+				workbook = WorkbookFactory.create(new ByteArrayInputStream(template.getContent()));
+				checkJxls3(workbook, template);
+			}
+			if (template.getPageLength() != null) {
+				this.setPageLength(template.getPageLength());
+			}
+			if (template.isJxls3()) {
+				jxls3Transform(stream, template.getContent());
 			} else {
+				if (workbook == null) {
+					workbook = WorkbookFactory.create(new ByteArrayInputStream(template.getContent()));
+				}
 				jxls1Transform(stream, workbook);
 			}
 		} catch (Exception e) {
 			LoggerUtils.logError(logger, e);
 			return;
-		} finally {
-			if (tempFile != null) {
-				tempFile.delete();
-			}
 		}
 
 	}
 
-	private boolean checkJxls3(Workbook tempWorkbook) throws IOException {
+	/**
+	 * Find out if the template is for JXLS3, and its page length; the result is kept with the template.
+	 */
+	private void checkJxls3(Workbook tempWorkbook, Template template) throws IOException {
 		boolean jxls3 = false;
+		Integer pageLength = null;
 		Sheet sheet = tempWorkbook.getSheetAt(0); // Get the first sheet
 		Row row = sheet.getRow(0); // Get the first row (0-based)
 		if (row != null) {
@@ -440,7 +519,7 @@ public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter,
 					if (matcher.find()) {
 						String lastLine = matcher.group(1);
 						try {
-							this.setPageLength(Integer.parseInt(lastLine));
+							pageLength = Integer.parseInt(lastLine);
 						} catch (NumberFormatException e) {
 							LoggerUtils.logError(logger, e, true);
 						}
@@ -449,7 +528,7 @@ public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter,
 			}
 
 		}
-		return jxls3;
+		template.setParsed(jxls3, pageLength);
 	}
 
 	private void jxls1Transform(OutputStream stream, Workbook workbook) {
@@ -498,9 +577,12 @@ public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter,
 		}
 	}
 
-	private void jxls3Transform(OutputStream stream, File templateFile) {
+	/**
+	 * Fill the template straight into the output stream. Post-processing is done on the filled workbook just before
+	 * it is written, so the result is not read back.
+	 */
+	private void jxls3Transform(OutputStream stream, byte[] template) {
 		Workbook workbook = null;
-		File tempFile = null;
 		try {
 			setReportingInfo();
 			HashMap<String, Object> reportingInfo = getReportingBeans();
@@ -508,13 +590,20 @@ public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter,
 			List<Athlete> athletes = (List<Athlete>) reportingInfo.get("athletes");
 			logger.debug("reportingInfo sessions {}", reportingInfo.get("sessions"));
 			if (athletes != null && (athletes.size() > 0 || isEmptyOk())) {
-				tempFile = File.createTempFile("jxlsOutput", ".xlsx");
-				JxlsPoi.fill(new FileInputStream(templateFile), JxlsStreaming.STREAMING_OFF, reportingInfo, tempFile);
-				workbook = WorkbookFactory.create(tempFile);
-				logger.debug("after workbook3 {}", workbook);
-				if (workbook != null) {
-					postProcess(workbook);
+				JxlsPoiTemplateFillerBuilder.newInstance()
+				        .withTemplate(new ByteArrayInputStream(template))
+				        .withStreaming(getStreaming())
+				        .withPreWrite((transformer, context) -> {
+					        Workbook filled = ((PoiTransformer) transformer).getWorkbook();
+					        logger.debug("after workbook3 {}", filled);
+					        postProcess(filled);
+				        })
+				        .build()
+				        .fill(reportingInfo, () -> CloseShieldOutputStream.wrap(stream));
+				if (this.doneCallback != null) {
+					this.doneCallback.accept(null);
 				}
+				logger.debug("wrote stream3");
 			} else {
 				String noAthletes = Translator.translate("NoAthletes");
 				logger./**/warn("no athletes: empty report.");
@@ -531,10 +620,6 @@ public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter,
 			}
 		} catch (Exception e) {
 			LoggerUtils.logError(logger, e);
-		} finally {
-			if (tempFile != null) {
-				tempFile.delete();
-			}
 		}
 		if (workbook != null) {
 			logger.debug("writing stream");
@@ -32,6 +32,7 @@ import org.xml.sax.SAXException;
 import app.owlcms.components.GroupCategorySelectionMenu.TriConsumer;
 import app.owlcms.data.athlete.Athlete;
 import app.owlcms.data.athlete.AthleteRepository;
+import app.owlcms.data.athleteSort.ScoreRankingIndex;
 import app.owlcms.data.category.Category;
 import app.owlcms.data.category.Participation;
 import app.owlcms.data.group.Group;
@@ -211,6 +212,7 @@ public class NRegistrationFileProcessor implements IRegistrationFileProcessor {
 				em.remove(a);
 			}
 			em.flush();
+			ScoreRankingIndex.invalidate();
 			return null;
 		});
 	}
@@ -19,6 +19,7 @@ import org.xml.sax.SAXException;
 
 import app.owlcms.data.athlete.Athlete;
 import app.owlcms.data.athlete.AthleteRepository;
+import app.owlcms.data.athleteSort.ScoreRankingIndex;
 import app.owlcms.data.category.Category;
 import app.owlcms.data.category.Participation;
 import app.owlcms.data.competition.Competition;
@@ -174,6 +175,7 @@ public class ORegistrationFileProcessor implements IRegistrationFileProcessor {
 				em.remove(a);
 			}
 			em.flush();
+			ScoreRankingIndex.invalidate();
 			return null;
 		});
 	}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.spreadsheet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.data.athleteSort.RankWriter;
+import app.owlcms.data.jpa.DataVersion;
+import app.owlcms.utils.LoggerUtils;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Generate documents in the background and keep them until the competition data changes.
+ *
+ * Generation starts as soon as the user picks a template, on a small pool of threads, so the user interface is not
+ * blocked. A document already generated from the same data, with the same template and filters, is reused: asking
+ * again for the final package at the end of the day is immediate if no result has been changed since.
+ */
+public class ReportService {
+
+	private static class Report {
+		private final CompletableFuture<byte[]> document;
+		private final long version;
+
+		Report(long version, CompletableFuture<byte[]> document) {
+			this.version = version;
+			this.document = document;
+		}
+	}
+
+	private static final int MAX_CACHED = 20;
+	private static final int MAX_QUEUED = 10;
+	private static final int NB_THREADS = 2;
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(ReportService.class);
+	private static Map<String, Report> reports = new ConcurrentHashMap<>();
+	private static ThreadPoolExecutor executor;
+
+	static {
+		AtomicInteger threadNumber = new AtomicInteger();
+		executor = new ThreadPoolExecutor(NB_THREADS, NB_THREADS, 60, TimeUnit.SECONDS,
+		        new ArrayBlockingQueue<>(MAX_QUEUED),
+		        (r) -> {
+			        Thread t = new Thread(r, "report-" + threadNumber.incrementAndGet());
+			        t.setDaemon(true);
+			        return t;
+		        });
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Get the document, generating it in the background if needed.
+	 *
+	 * @param source a stream source with its template and filters set
+	 * @param locale the user's locale
+	 * @return the document, when available. Fails if the document could not be generated or if too many documents are
+	 *         being generated; see {@link #write(OutputStream, CompletableFuture, JXLSWorkbookStreamSource, Locale)}.
+	 */
+	public static CompletableFuture<byte[]> submit(JXLSWorkbookStreamSource source, Locale locale) {
+		// the version must account for the ranks still being written
+		RankWriter.flush();
+		long version = DataVersion.get();
+		String key = source.getReportKey(locale);
+		if (key != null) {
+			Report cached = reports.get(key);
+			if (cached != null && cached.version == version && !cached.document.isCompletedExceptionally()) {
+				logger.debug("reusing {}", key);
+				return cached.document;
+			}
+		}
+
+		CompletableFuture<byte[]> document = new CompletableFuture<>();
+		try {
+			executor.execute(() -> {
+				try {
+					long start = System.currentTimeMillis();
+					byte[] content = source.generate(locale);
+					if (content.length == 0) {
+						throw new IOException("empty document");
+					}
+					logger.debug("generated {} in {} ms", key, System.currentTimeMillis() - start);
+					document.complete(content);
+				} catch (Throwable t) {
+					if (key != null) {
+						reports.remove(key);
+					}
+					document.completeExceptionally(t);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			document.completeExceptionally(e);
+			return document;
+		}
+
+		if (key != null) {
+			prune(version);
+			reports.put(key, new Report(version, document));
+		}
+		return document;
+	}
+
+	/**
+	 * Write a document obtained from {@link #submit(JXLSWorkbookStreamSource, Locale)}. Waits for it if still being
+	 * generated, and generates it in the calling thread if the background generation failed.
+	 *
+	 * @param out      where to write
+	 * @param document the result of submit
+	 * @param source   the stream source given to submit
+	 * @param locale   the user's locale
+	 * @throws IOException
+	 */
+	public static void write(OutputStream out, CompletableFuture<byte[]> document, JXLSWorkbookStreamSource source,
+	        Locale locale) throws IOException {
+		byte[] content;
+		try {
+			content = document.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} catch (ExecutionException e) {
+			if (!(e.getCause() instanceof RejectedExecutionException)) {
+				LoggerUtils.logError(logger, e.getCause());
+			}
+			try {
+				content = source.generate(locale);
+			} catch (Exception e1) {
+				throw new IOException(e1);
+			}
+		}
+		out.write(content);
+	}
+
+	/**
+	 * Drop the documents generated from older data, and everything if too many are kept.
+	 */
+	private static void prune(long version) {
+		reports.values().removeIf(r -> r.version != version);
+		if (reports.size() >= MAX_CACHED) {
+			reports.clear();
+		}
+	}
+
+}
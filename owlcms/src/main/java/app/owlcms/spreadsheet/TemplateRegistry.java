@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.spreadsheet;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.utils.LocalDirWatcher;
+import app.owlcms.utils.ResourceWalker;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Templates already read, with what was learned by parsing them.
+ *
+ * Templates are looked up in the local override directory and then on the classpath, trying several locale suffixes.
+ * The outcome of the lookup and the template content are kept, so printing the same document again does no template
+ * I/O. Everything is dropped when the local override directory changes. When that directory is not being watched, a
+ * change would go unnoticed, so only the templates provided as streams are kept.
+ */
+public class TemplateRegistry {
+
+	/**
+	 * A template, in memory.
+	 */
+	public static class Template {
+		private final byte[] content;
+		private final String extension;
+		private volatile Integer pageLength;
+		private volatile Boolean jxls3;
+		private final String name;
+		private final String location;
+		private final long stamp;
+
+		Template(String name, String extension, byte[] content, String location, long stamp) {
+			this.name = name;
+			this.extension = extension;
+			this.content = content;
+			this.location = location;
+			this.stamp = stamp;
+		}
+
+		public byte[] getContent() {
+			return this.content;
+		}
+
+		public String getExtension() {
+			return this.extension;
+		}
+
+		/**
+		 * @return where the template was read from, null if it was provided as a stream
+		 */
+		public String getLocation() {
+			return this.location;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * @return the last row of the jx:area, null if not known.
+		 */
+		public Integer getPageLength() {
+			return this.pageLength;
+		}
+
+		/**
+		 * @return true if a JXLS3 template, null if not parsed yet
+		 */
+		public Boolean isJxls3() {
+			return this.jxls3;
+		}
+
+		/**
+		 * @return the modification time of the file read, or a hash of the content for a template provided as a stream
+		 */
+		public long getStamp() {
+			return this.stamp;
+		}
+
+		public TemplateStream openStream() {
+			return new TemplateStream(this);
+		}
+
+		void setParsed(boolean jxls3, Integer pageLength) {
+			this.pageLength = pageLength;
+			this.jxls3 = jxls3;
+		}
+	}
+
+	/**
+	 * Stream over a cached template, gives access to the template so its metadata can be used.
+	 */
+	public static class TemplateStream extends ByteArrayInputStream {
+		private final Template template;
+
+		TemplateStream(Template template) {
+			super(template.content);
+			this.template = template;
+		}
+
+		public Template getTemplate() {
+			return this.template;
+		}
+	}
+
+	private static final int MAX_CACHED = 100;
+	private static Map<String, Template> byName = new ConcurrentHashMap<>();
+	/**
+	 * Templates provided as streams; keyed by content, so an edited template is seen as a new one.
+	 */
+	private static Map<ByteBuffer, Template> byContent = new ConcurrentHashMap<>();
+	private static Map<Path, Template> byPath = new ConcurrentHashMap<>();
+	private static Map<String, Template> byLocalizedName = new ConcurrentHashMap<>();
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(TemplateRegistry.class);
+
+	static {
+		LocalDirWatcher.addListener(TemplateRegistry::clear);
+	}
+
+	public static void clear() {
+		byName.clear();
+		byContent.clear();
+		byPath.clear();
+		byLocalizedName.clear();
+		logger.debug("template cache cleared");
+	}
+
+	/**
+	 * @param name a template name, looked up in the local override directory and then on the classpath.
+	 * @return the template
+	 * @throws FileNotFoundException
+	 */
+	public static Template get(String name) throws FileNotFoundException {
+		boolean cacheable = ResourceWalker.isResolvedCacheable();
+		Template t = cacheable ? byName.get(name) : null;
+		if (t == null) {
+			long version = ResourceWalker.getResolvedVersion();
+			t = read(name, extensionOf(name));
+			if (t == null) {
+				throw new FileNotFoundException(name);
+			}
+			if (cacheable && version == ResourceWalker.getResolvedVersion()) {
+				byName.put(name, t);
+			}
+		}
+		return t;
+	}
+
+	/**
+	 * @param content a template read from a stream
+	 * @return the template with that content, so it is parsed only once
+	 */
+	public static Template get(byte[] content) {
+		ByteBuffer key = ByteBuffer.wrap(content);
+		Template t = byContent.get(key);
+		if (t == null) {
+			t = new Template(null, null, content, null, Arrays.hashCode(content));
+			if (byContent.size() >= MAX_CACHED) {
+				byContent.clear();
+			}
+			byContent.put(key, t);
+		}
+		return t;
+	}
+
+	/**
+	 * @param path a template file chosen from a resource list
+	 * @return the template
+	 * @throws IOException
+	 */
+	public static Template get(Path path) throws IOException {
+		boolean cacheable = ResourceWalker.isResolvedCacheable();
+		Template t = cacheable ? byPath.get(path) : null;
+		if (t == null) {
+			long version = ResourceWalker.getResolvedVersion();
+			String fileName = path.getFileName().toString();
+			t = new Template(fileName, extensionOf(fileName), Files.readAllBytes(path), path.toUri().toString(),
+			        lastModified(path));
+			if (cacheable && version == ResourceWalker.getResolvedVersion()) {
+				if (byPath.size() >= MAX_CACHED) {
+					byPath.clear();
+				}
+				byPath.put(path, t);
+			}
+		}
+		return t;
+	}
+
+	/**
+	 * Find the first variant of a template that exists. For "/templates/start/startList", extensions ".xlsx" and
+	 * ".xls", and suffixes "_fr_CA", "_fr", "", the names tried are /templates/start/startList_fr_CA.xlsx,
+	 * /templates/start/startList_fr.xlsx, /templates/start/startList.xlsx, /templates/start/startList_fr_CA.xls, etc.
+	 *
+	 * @param templateName
+	 * @param extensions
+	 * @param suffixes
+	 * @return the template, null if no variant exists
+	 */
+	public static Template getLocalized(String templateName, List<String> extensions, List<String> suffixes) {
+		String key = templateName + "|" + extensions + "|" + suffixes;
+		boolean cacheable = ResourceWalker.isResolvedCacheable();
+		Template t = cacheable ? byLocalizedName.get(key) : null;
+		if (t != null) {
+			return t;
+		}
+		long version = ResourceWalker.getResolvedVersion();
+		for (String ext : extensions) {
+			for (String suffix : suffixes) {
+				t = read(templateName + suffix + ext, ext);
+				if (t != null) {
+					if (cacheable && version == ResourceWalker.getResolvedVersion()) {
+						byLocalizedName.put(key, t);
+					}
+					return t;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static String extensionOf(String name) {
+		int dot = name.lastIndexOf('.');
+		return dot >= 0 ? name.substring(dot) : "";
+	}
+
+	private static long lastModified(Path path) {
+		if (path == null) {
+			return 0L;
+		}
+		try {
+			return Files.getLastModifiedTime(path).toMillis();
+		} catch (IOException | UnsupportedOperationException e) {
+			return 0L;
+		}
+	}
+
+	private static Template read(String name, String extension) {
+		try (InputStream is = ResourceWalker.getFileOrResource(name)) {
+			if (is == null) {
+				return null;
+			}
+			logger.debug("reading template {}", name);
+			Path path = ResourceWalker.findFileOrResourcePath(name);
+			return new Template(name, extension, is.readAllBytes(), path != null ? path.toUri().toString() : name,
+			        lastModified(path));
+		} catch (FileNotFoundException e) {
+			return null;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import app.owlcms.Main;
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athlete.AthleteRepository;
+import app.owlcms.data.athleteSort.AthleteSorter;
+import app.owlcms.data.athleteSort.CategoryRankingIndex;
+import app.owlcms.data.category.Participation;
+import app.owlcms.data.config.Config;
+import app.owlcms.data.group.Group;
+import app.owlcms.data.group.GroupRepository;
+import app.owlcms.data.jpa.JPAService;
+
+/**
+ * The incremental index gives the same ranks as sorting all the athletes, after lifts have been committed.
+ */
+public class CategoryRankingIndexTest {
+
+    @BeforeClass
+    public static void setupTests() {
+        Main.injectSuppliers();
+        JPAService.init(true, true);
+        Config.initConfig();
+        TestData.insertInitialData(5, true);
+    }
+
+    @AfterClass
+    public static void tearDownTests() {
+        JPAService.close();
+    }
+
+    @Test
+    public void committedLiftsAreRepositioned() {
+        Group group = GroupRepository.findByName("A");
+        CategoryRankingIndex index = new CategoryRankingIndex();
+        ranks(group, index);
+
+        lift(group, 0, 80);
+        assertEquals(ranks(group, null), ranks(group, index));
+        lift(group, 1, 85);
+        assertEquals(ranks(group, null), ranks(group, index));
+        // same weight as the previous one
+        lift(group, 2, 85);
+        assertEquals(ranks(group, null), ranks(group, index));
+    }
+
+    private void lift(Group group, int index, int weight) {
+        JPAService.runInTransaction(em -> {
+            List<Athlete> athletes = AthleteRepository.findAthletesForGlobalRanking(em, group);
+            athletes.sort((a, b) -> a.getId().compareTo(b.getId()));
+            Athlete a = athletes.get(index);
+            a.setValidation(false);
+            a.setSnatch1Declaration(Integer.toString(weight));
+            a.setSnatch1ActualLift(Integer.toString(weight));
+            a.setValidation(true);
+            return null;
+        });
+    }
+
+    /**
+     * @return the snatch and total ranks of each participation
+     */
+    private Map<String, String> ranks(Group group, CategoryRankingIndex index) {
+        return JPAService.runInTransaction(em -> {
+            List<Athlete> athletes = index != null ? AthleteSorter.assignCategoryRanks(em, group, index)
+                    : AthleteSorter.assignCategoryRanks(em, group);
+            Map<String, String> ranks = new TreeMap<>();
+            for (Athlete a : athletes) {
+                for (Participation p : a.getParticipations()) {
+                    ranks.put(a.getId() + "/" + p.getCategory().getComputedCode(),
+                            p.getSnatchRank() + "/" + p.getTotalRank());
+                }
+            }
+            return ranks;
+        });
+    }
+
+}
@@ -1,13 +1,21 @@
 package app.owlcms.tests;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import app.owlcms.Main;
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athlete.AthleteRepository;
 import app.owlcms.data.config.Config;
 import app.owlcms.data.export.CompetitionData;
+import app.owlcms.data.group.GroupRepository;
 import app.owlcms.data.jpa.JPAService;
 
 public class JSONExportImportTest {
@@ -35,4 +43,57 @@ public class JSONExportImportTest {
 		}
 	}
 
+    @Test
+    public void snapshotRoundTrip() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CompetitionData().exportSnapshot(out);
+        checkRestore(out);
+    }
+
+    @Test
+    public void streamingRoundTrip() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CompetitionData().exportData(out);
+        checkRestore(out);
+    }
+
+    @Test
+    public void truncatedExportIsNotKept() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CompetitionData().exportData(out);
+        byte[] export = out.toByteArray();
+        long nbAthletes = AthleteRepository.findAll().size();
+
+        // cut in the middle of the athletes
+        String json = new String(export, StandardCharsets.UTF_8);
+        int cut = Math.min(json.indexOf("\"athletes\"") + 2000, json.length() - 2);
+        byte[] truncated = json.substring(0, cut).getBytes(StandardCharsets.UTF_8);
+        try {
+            new CompetitionData().restore(new ByteArrayInputStream(truncated));
+            fail("truncated export restored");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        assertEquals(0, AthleteRepository.findAll().size());
+        assertEquals(0, GroupRepository.findAll().size());
+
+        new CompetitionData().restore(new ByteArrayInputStream(export));
+        assertEquals(nbAthletes, AthleteRepository.findAll().size());
+    }
+
+    /*
+     * The exported data must restore the athletes with their references to groups and categories.
+     */
+    private void checkRestore(ByteArrayOutputStream out) {
+        long nbAthletes = AthleteRepository.findAll().size();
+        long nbInGroups = AthleteRepository.findAll().stream().filter(a -> a.getGroup() != null).count();
+        long nbInCategories = AthleteRepository.findAll().stream().filter(a -> a.getCategory() != null).count();
+        new CompetitionData().restore(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(nbAthletes, AthleteRepository.findAll().size());
+        assertEquals(nbInGroups, AthleteRepository.findAll().stream().map(Athlete::getGroup)
+                .filter(g -> g != null).count());
+        assertEquals(nbInCategories, AthleteRepository.findAll().stream().map(Athlete::getCategory)
+                .filter(c -> c != null).count());
+    }
+
 }
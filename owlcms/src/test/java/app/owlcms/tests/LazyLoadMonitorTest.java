@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.tests;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.hibernate.LazyInitializationException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import app.owlcms.Main;
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athlete.AthleteRepository;
+import app.owlcms.data.category.Participation;
+import app.owlcms.data.config.Config;
+import app.owlcms.data.group.Group;
+import app.owlcms.data.group.GroupRepository;
+import app.owlcms.data.jpa.JPAService;
+import app.owlcms.data.jpa.LazyLoadMonitor;
+
+/**
+ * The queries used by the displays must fetch what the displays use after the transaction.
+ */
+public class LazyLoadMonitorTest {
+
+    @BeforeClass
+    public static void setupTests() {
+        Main.injectSuppliers();
+        JPAService.init(true, true);
+        Config.initConfig();
+        TestData.insertInitialData(5, true);
+    }
+
+    @AfterClass
+    public static void tearDownTests() {
+        JPAService.close();
+    }
+
+    @After
+    public void clearStrict() {
+        LazyLoadMonitor.setStrict(false);
+    }
+
+    @Before
+    public void setStrict() {
+        LazyLoadMonitor.setStrict(true);
+    }
+
+    @Test
+    public void globalRankingIsFetched() {
+        List<Athlete> athletes = AthleteRepository.findAthletesForGlobalRanking((Group) null, false);
+        assertFalse(athletes.isEmpty());
+        touch(athletes);
+    }
+
+    @Test
+    public void groupIsFetched() {
+        Group group = GroupRepository.findByName("A");
+        List<Athlete> athletes = AthleteRepository.findAllByGroupAndWeighIn(group, null);
+        assertFalse(athletes.isEmpty());
+        touch(athletes);
+    }
+
+    @Test
+    public void outsideLoadIsDetected() {
+        // findAll does not fetch the participations
+        List<Athlete> athletes = AthleteRepository.findAll();
+        assertFalse(athletes.isEmpty());
+        try {
+            athletes.get(0).getParticipations().size();
+            fail("lazy load outside of a transaction not detected");
+        } catch (LazyInitializationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void outsideLoadIsDetectedDuringATransaction() {
+        List<Athlete> athletes = AthleteRepository.findAll();
+        assertFalse(athletes.isEmpty());
+        // the thread is in a transaction, but the athlete's session is closed
+        JPAService.runInTransaction(em -> {
+            try {
+                athletes.get(0).getParticipations().size();
+                fail("lazy load outside of the athlete's session not detected");
+            } catch (LazyInitializationException e) {
+                // expected
+            }
+            return null;
+        });
+    }
+
+    @Test
+    public void loadInOpenSessionIsAllowed() {
+        JPAService.runInTransaction(em -> {
+            @SuppressWarnings("unchecked")
+            List<Athlete> athletes = em.createQuery("select a from Athlete a").getResultList();
+            assertFalse(athletes.isEmpty());
+            touch(athletes);
+            return null;
+        });
+    }
+
+    private void touch(List<Athlete> athletes) {
+        for (Athlete a : athletes) {
+            if (a.getCategory() != null) {
+                assertNotNull(a.getCategory().getCode());
+            }
+            for (Participation p : a.getParticipations()) {
+                assertNotNull(p.getCategory().getCode());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import app.owlcms.Main;
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athleteSort.AthleteSorter;
+import app.owlcms.data.athleteSort.Ranking;
+import app.owlcms.data.athleteSort.WinningOrderComparator;
+import app.owlcms.data.category.Category;
+import app.owlcms.data.category.Participation;
+import app.owlcms.data.competition.Competition;
+import app.owlcms.data.config.Config;
+import app.owlcms.data.group.Group;
+import app.owlcms.data.group.GroupRepository;
+import app.owlcms.data.jpa.JPAService;
+import app.owlcms.spreadsheet.PAthlete;
+
+/**
+ * The medal contenders computed in a single pass are the same as those of the per-category sorts.
+ */
+public class MedalsTest {
+
+    @BeforeClass
+    public static void setupTests() {
+        Main.injectSuppliers();
+        JPAService.init(true, true);
+        Config.initConfig();
+        TestData.insertInitialData(5, true);
+    }
+
+    @AfterClass
+    public static void tearDownTests() {
+        JPAService.close();
+    }
+
+    @Test
+    public void sameContendersAsPerCategorySorts() {
+        Group group = GroupRepository.findByName("A");
+        JPAService.runInTransaction(em -> {
+            List<Athlete> athletes = AthleteSorter.assignCategoryRanks(em, group);
+            athletes.sort((a, b) -> a.getId().compareTo(b.getId()));
+            // finished with a total
+            lifts(athletes.get(0), "80", "82", "-85", "100", "-105", "105");
+            // bombed out in snatch, still a contender in clean & jerk
+            lifts(athletes.get(1), "-80", "-80", "-80", "100", "105", "110");
+            // finished without any result
+            lifts(athletes.get(2), "-80", "-80", "-80", "-100", "-100", "-100");
+            // not finished: athletes.get(3) has not lifted, athletes.get(4) has a snatch
+            lifts(athletes.get(4), "82");
+            return null;
+        });
+
+        JPAService.runInTransaction(em -> {
+            List<Athlete> ranked = AthleteSorter.assignCategoryRanks(em, group);
+            Map<String, List<Long>> expected = ids(perCategorySorts(ranked));
+            Map<String, List<Long>> actual = ids(Competition.getCurrent().computeMedalsByCategory(ranked));
+            assertFalse(actual.isEmpty());
+            assertEquals(expected, actual);
+            return null;
+        });
+    }
+
+    private Map<String, List<Long>> ids(Map<String, TreeSet<Athlete>> medals) {
+        Map<String, List<Long>> ids = new TreeMap<>();
+        medals.forEach((code, medalists) -> ids.put(code,
+                medalists.stream().map(Athlete::getId).collect(Collectors.toList())));
+        return ids;
+    }
+
+    private void lifts(Athlete a, String... weights) {
+        a.setValidation(false);
+        String[] declarations = new String[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            declarations[i] = weights[i].replace("-", "");
+        }
+        if (weights.length > 0) {
+            a.setSnatch1Declaration(declarations[0]);
+            a.setSnatch1ActualLift(weights[0]);
+        }
+        if (weights.length > 1) {
+            a.setSnatch2Declaration(declarations[1]);
+            a.setSnatch2ActualLift(weights[1]);
+        }
+        if (weights.length > 2) {
+            a.setSnatch3Declaration(declarations[2]);
+            a.setSnatch3ActualLift(weights[2]);
+        }
+        if (weights.length > 3) {
+            a.setCleanJerk1Declaration(declarations[3]);
+            a.setCleanJerk1ActualLift(weights[3]);
+        }
+        if (weights.length > 4) {
+            a.setCleanJerk2Declaration(declarations[4]);
+            a.setCleanJerk2ActualLift(weights[4]);
+        }
+        if (weights.length > 5) {
+            a.setCleanJerk3Declaration(declarations[5]);
+            a.setCleanJerk3ActualLift(weights[5]);
+        }
+        a.setValidation(true);
+    }
+
+    /**
+     * The computation replaced by the single pass: for each category, the union of the snatch, clean &amp; jerk and
+     * total leaders and of the athletes who have not finished.
+     */
+    private Map<String, TreeSet<Athlete>> perCategorySorts(List<Athlete> rankedAthletes) {
+        Set<Category> medalCategories = rankedAthletes.stream()
+                .map(a -> a.getEligibleCategories())
+                .flatMap(Collection::stream)
+                .collect(Collectors.toSet());
+        Map<String, TreeSet<Athlete>> medals = new TreeMap<>();
+        for (Category category : medalCategories) {
+            List<Athlete> currentCategoryAthletes = new ArrayList<>();
+            for (Athlete a : rankedAthletes) {
+                Optional<Participation> matchingParticipation = a.getParticipations().stream()
+                        .filter(p -> p.getCategory().sameAs(category)).findFirst();
+                if (matchingParticipation.isPresent()) {
+                    currentCategoryAthletes.add(new PAthlete(matchingParticipation.get()));
+                }
+            }
+            List<Athlete> snatchLeaders = AthleteSorter.resultsOrderCopy(currentCategoryAthletes, Ranking.SNATCH)
+                    .stream().filter(a -> a.getBestSnatch() > 0 && a.isEligibleForIndividualRanking())
+                    .collect(Collectors.toList());
+            List<Athlete> cjLeaders = AthleteSorter.resultsOrderCopy(currentCategoryAthletes, Ranking.CLEANJERK)
+                    .stream().filter(a -> a.getBestCleanJerk() > 0 && a.isEligibleForIndividualRanking())
+                    .collect(Collectors.toList());
+            List<Athlete> totalLeaders = AthleteSorter.resultsOrderCopy(currentCategoryAthletes, Ranking.TOTAL)
+                    .stream().filter(a -> a.getTotal() > 0 && a.isEligibleForIndividualRanking())
+                    .collect(Collectors.toList());
+            List<Athlete> notFinished = AthleteSorter.resultsOrderCopy(currentCategoryAthletes, Ranking.TOTAL)
+                    .stream().filter(a -> a.isEligibleForIndividualRanking() && a.getActuallyAttemptedLifts() < 6)
+                    .collect(Collectors.toList());
+            TreeSet<Athlete> medalists = new TreeSet<>(new WinningOrderComparator(Ranking.TOTAL, false));
+            medalists.addAll(totalLeaders);
+            medalists.addAll(cjLeaders);
+            medalists.addAll(snatchLeaders);
+            medalists.addAll(notFinished);
+            medals.put(category.getCode(), medalists);
+        }
+        return medals;
+    }
+
+}
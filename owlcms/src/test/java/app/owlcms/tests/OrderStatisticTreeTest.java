@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import app.owlcms.data.athleteSort.OrderStatisticTree;
+
+public class OrderStatisticTreeTest {
+
+    @Test
+    public void insertAndRemoveMatchSortedList() {
+        Random random = new Random(42);
+        OrderStatisticTree<Integer> tree = new OrderStatisticTree<>(Comparator.naturalOrder());
+        List<Integer> reference = new ArrayList<>();
+
+        for (int i = 0; i < 2000; i++) {
+            if (reference.isEmpty() || random.nextInt(3) > 0) {
+                int value = random.nextInt(100);
+                int index = tree.insert(value);
+                int expected = 0;
+                while (expected < reference.size() && reference.get(expected) <= value) {
+                    expected++;
+                }
+                reference.add(expected, value);
+                assertEquals(expected, index);
+            } else {
+                int index = random.nextInt(reference.size());
+                assertEquals(reference.remove(index), tree.removeAt(index));
+            }
+            assertEquals(reference.size(), tree.size());
+        }
+
+        List<Integer> contents = new ArrayList<>();
+        tree.forEach(contents::add);
+        assertEquals(reference, contents);
+        for (int i = 0; i < reference.size(); i++) {
+            assertEquals(reference.get(i), tree.get(i));
+        }
+    }
+
+    @Test
+    public void buildSortsAndReplaceKeepsOrder() {
+        OrderStatisticTree<String> tree = new OrderStatisticTree<>(Comparator.naturalOrder());
+        List<String> values = new ArrayList<>(List.of("d", "a", "c", "b"));
+        tree.build(values);
+        tree.replaceAll(String::toUpperCase);
+
+        List<String> contents = new ArrayList<>();
+        tree.forEach(contents::add);
+        assertEquals(List.of("A", "B", "C", "D"), contents);
+        assertEquals("C", tree.get(2));
+    }
+
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import app.owlcms.Main;
+import app.owlcms.data.athlete.Gender;
+import app.owlcms.data.athleteSort.Ranking;
+import app.owlcms.data.config.Config;
+import app.owlcms.data.jpa.JPAService;
+import app.owlcms.data.records.RecordDefinitionReader;
+import app.owlcms.data.records.RecordEvent;
+import app.owlcms.data.records.RecordIndex;
+import app.owlcms.data.records.RecordRepository;
+
+/**
+ * The in-memory record lookups give the same records as the database query, and only committed records are added.
+ */
+public class RecordIndexTest {
+
+    @BeforeClass
+    public static void setupTests() throws IOException {
+        Main.injectSuppliers();
+        JPAService.init(true, true);
+        Config.initConfig();
+        TestData.insertInitialData(5, true);
+        RecordRepository.clearLoadedRecords();
+        RecordRepository.clearNewRecords();
+        try (InputStream zipStream = RecordIndexTest.class.getResourceAsStream("/testData/records/IWF_EWF.zip")) {
+            RecordDefinitionReader.readZip(zipStream);
+        }
+    }
+
+    @AfterClass
+    public static void tearDownTests() {
+        JPAService.close();
+    }
+
+    @Test
+    public void intervalLookupMatchesQuery() {
+        List<Gender> genders = Arrays.asList(Gender.M, Gender.F, null);
+        List<Integer> ages = Arrays.asList(13, 16, 20, 35, null);
+        // inside categories, on the boundaries, and outside all of them
+        List<Double> bodyWeights = Arrays.asList(30.0, 45.0, 55.0, 61.0, 66.5, 73.0, 109.0, 109.01, 200.0, null);
+        for (Gender g : genders) {
+            for (Integer age : ages) {
+                for (Double bw : bodyWeights) {
+                    List<RecordEvent> expected = RecordRepository.findFiltered(g, age, bw, null, null);
+                    List<RecordEvent> actual = RecordIndex.find(g, age, bw);
+                    String criteria = g + " " + age + " " + bw;
+                    // records that are equal for the sort may come in any order from the database
+                    assertEquals(criteria, sortKeys(expected), sortKeys(actual));
+                    assertEquals(criteria, sortedIds(expected), sortedIds(actual));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void onlyCommittedRecordsAreAdded() {
+        // the index is loaded
+        RecordIndex.find(Gender.M, 35, 80.0);
+
+        try {
+            JPAService.runInTransaction(em -> {
+                em.persist(newRecord("rolledBack"));
+                em.flush();
+                throw new IllegalStateException("rollback");
+            });
+            fail("exception expected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertFalse(names(RecordIndex.find(Gender.M, 35, 80.0)).contains("rolledBack"));
+
+        JPAService.runInTransaction(em -> {
+            em.persist(newRecord("committed"));
+            return null;
+        });
+        List<String> names = names(RecordIndex.find(Gender.M, 35, 80.0));
+        assertTrue(names.contains("committed"));
+        assertFalse(names.contains("rolledBack"));
+        assertEquals(sortedIds(RecordRepository.findFiltered(Gender.M, 35, 80.0, null, null)),
+                sortedIds(RecordIndex.find(Gender.M, 35, 80.0)));
+    }
+
+    private List<String> names(List<RecordEvent> records) {
+        return records.stream().map(RecordEvent::getRecordName).collect(Collectors.toList());
+    }
+
+    private RecordEvent newRecord(String name) {
+        RecordEvent rec = new RecordEvent();
+        rec.setRecordName(name);
+        rec.setRecordFederation("TEST");
+        rec.setFileName("test");
+        rec.setGender(Gender.M);
+        rec.setAgeGrp("SR");
+        rec.setAgeGrpLower(0);
+        rec.setAgeGrpUpper(999);
+        rec.setBwCatLower(0);
+        rec.setBwCatUpper(999);
+        rec.setRecordLift(Ranking.SNATCH);
+        rec.setRecordValue(1.0D);
+        return rec;
+    }
+
+    private List<Long> sortedIds(List<RecordEvent> records) {
+        return records.stream().map(RecordEvent::getId).sorted().collect(Collectors.toList());
+    }
+
+    private List<String> sortKeys(List<RecordEvent> records) {
+        return records.stream()
+                .map(r -> r.getGender() + "/" + r.getAgeGrpLower() + "/" + r.getAgeGrpUpper() + "/" + r.getBwCatUpper()
+                        + "/" + r.getRecordValue())
+                .collect(Collectors.toList());
+    }
+
+}
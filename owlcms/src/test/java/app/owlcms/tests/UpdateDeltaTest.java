@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import app.owlcms.monitors.UpdateDeltaEncoder;
+import app.owlcms.utils.UpdateDeltaDecoder;
+import app.owlcms.utils.UpdateProtocol;
+
+/**
+ * The posts of the owlcms encoder, applied by the publicresults decoder, give back the full update.
+ */
+public class UpdateDeltaTest {
+
+    @Test
+    public void deltaFrame() {
+        UpdateDeltaEncoder encoder = new UpdateDeltaEncoder();
+        UpdateDeltaDecoder decoder = new UpdateDeltaDecoder();
+        decoder.apply(encoder.encode(update("A", row("a", "100"), row("b", "90"), row("c", "80"))));
+        encoder.acknowledge(UpdateProtocol.PROTOCOL_VERSION);
+
+        Map<String, String> full = update("A", row("a", "100"), row("b", "95"), row("c", "80"));
+        full.remove("groupDescription");
+        Map<String, String> params = encoder.encode(full);
+        assertEquals("true", params.get("delta"));
+        assertFalse(params.containsKey("groupName"));
+        assertFalse(params.containsKey("groupAthletes"));
+        assertTrue(params.get("groupAthletesDelta").contains("\"1\""));
+        assertFalse(params.get("groupAthletesDelta").contains("\"0\""));
+        assertEquals("groupDescription", params.get("removedFields"));
+        assertEquals(full, decoder.apply(params));
+    }
+
+    @Test
+    public void fullFrame() {
+        UpdateDeltaEncoder encoder = new UpdateDeltaEncoder();
+        UpdateDeltaDecoder decoder = new UpdateDeltaDecoder();
+        Map<String, String> full = update("A", row("a", "100"), row("b", "90"));
+        Map<String, String> params = encoder.encode(full);
+        assertEquals("false", params.get("delta"));
+        assertEquals(UpdateProtocol.PROTOCOL_VERSION, params.get("protocol"));
+        assertEquals(full, decoder.apply(params));
+    }
+
+    @Test
+    public void sequenceGap() {
+        UpdateDeltaEncoder encoder = new UpdateDeltaEncoder();
+        UpdateDeltaDecoder decoder = new UpdateDeltaDecoder();
+        decoder.apply(encoder.encode(update("A", row("a", "100"))));
+        encoder.acknowledge(UpdateProtocol.PROTOCOL_VERSION);
+
+        // lost on the way
+        encoder.encode(update("A", row("a", "105")));
+        encoder.acknowledge(UpdateProtocol.PROTOCOL_VERSION);
+        Map<String, String> params = encoder.encode(update("A", row("a", "110")));
+        assertEquals("true", params.get("delta"));
+        assertNull(decoder.apply(params));
+
+        // the receiver answers 409, the next post is a full snapshot.
+        encoder.reset();
+        Map<String, String> full = update("A", row("a", "110"));
+        params = encoder.encode(full);
+        assertEquals("false", params.get("delta"));
+        assertEquals(full, decoder.apply(params));
+    }
+
+    @Test
+    public void versionMismatch() {
+        UpdateDeltaEncoder encoder = new UpdateDeltaEncoder();
+        UpdateDeltaDecoder decoder = new UpdateDeltaDecoder();
+        decoder.apply(encoder.encode(update("A", row("a", "100"))));
+
+        // a receiver that does not understand this version keeps getting full updates
+        encoder.acknowledge("1");
+        assertFalse(encoder.isDeltasAccepted());
+        Map<String, String> full = update("B", row("a", "100"));
+        Map<String, String> params = encoder.encode(full);
+        assertEquals("false", params.get("delta"));
+        assertEquals(full, decoder.apply(params));
+
+        encoder.acknowledge(null);
+        assertFalse(encoder.isDeltasAccepted());
+        assertEquals("false", encoder.encode(full).get("delta"));
+    }
+
+    private String row(String name, String total) {
+        return "{\"fullName\":\"" + name + "\",\"total\":\"" + total + "\"}";
+    }
+
+    private Map<String, String> update(String groupName, String... rows) {
+        Map<String, String> full = new LinkedHashMap<>();
+        full.put("updateKey", "secret");
+        full.put("fop", "A");
+        full.put("groupName", groupName);
+        full.put("groupDescription", "Group " + groupName);
+        full.put("groupAthletes", "[" + String.join(",", rows) + "]");
+        return full;
+    }
+
+}
@@ -31,10 +31,12 @@ import app.owlcms.components.elements.BreakTimerElementPR;
 import app.owlcms.components.elements.DecisionElementPR;
 import app.owlcms.displays.options.DisplayOptions;
 import app.owlcms.i18n.Translator;
+import app.owlcms.prutils.LatestEventMailbox;
 import app.owlcms.prutils.SafeEventBusRegistrationPR;
 import app.owlcms.prutils.SoundUtils;
 import app.owlcms.publicresults.DecisionReceiverServlet;
 import app.owlcms.publicresults.TimerReceiverServlet;
+import app.owlcms.publicresults.TranslationCache;
 import app.owlcms.publicresults.UpdateReceiverServlet;
 import app.owlcms.uievents.BreakTimerEvent;
 import app.owlcms.uievents.BreakTimerEvent.BreakStart;
@@ -48,7 +50,6 @@ import ch.qos.logback.classic.Logger;
 import elemental.json.Json;
 import elemental.json.JsonArray;
 import elemental.json.JsonObject;
-import elemental.json.impl.JreJsonFactory;
 
 /**
  * Class Scoreboard
@@ -101,6 +102,8 @@ public class ResultsPR extends LitTemplate
     private boolean liftingOrder;
     private boolean done;
     private int lastHashCode;
+    private LatestEventMailbox<UpdateEvent> updateMailbox = new LatestEventMailbox<>(
+            (r) -> this.ui.access(r::run), this::doUpdateEvent);
 
     /**
      * Instantiates a new results board.
@@ -372,117 +375,118 @@ public class ResultsPR extends LitTemplate
             // event is not for us
             return;
         }
+        // if we are still busy with a previous update, only the latest one will be processed.
+        this.updateMailbox.offer(e.getFopName(), e);
+    }
+
+    /**
+     * Runs in the UI, with the most recent update received.
+     *
+     * @param e
+     */
+    private void doUpdateEvent(UpdateEvent e) {
         String fopState = e.getFopState();
         BreakType breakType = e.getBreakType();
         String stylesDir = e.getStylesDir();
 
-        this.ui.access(() -> {
-            this.getElement().setProperty("stylesDir", stylesDir);
-            this.getElement().setProperty("done", e.isDone());
-            setDone(e.isDone());
-
-            setBoardMode(e.getMode());
-            String groupInfo = e.getGroupInfo();
-            String description = null;
-            if (groupInfo != null) {
-                description = e.getGroupDescription();
-                if (description == null) {
-                    description = Translator.translate("Group_number", groupInfo);
-                }
+        this.getElement().setProperty("stylesDir", stylesDir);
+        this.getElement().setProperty("done", e.isDone());
+        setDone(e.isDone());
+
+        setBoardMode(e.getMode());
+        String groupInfo = e.getGroupInfo();
+        String description = null;
+        if (groupInfo != null) {
+            description = e.getGroupDescription();
+            if (description == null) {
+                description = Translator.translate("Group_number", groupInfo);
             }
-            this.getElement().setProperty("groupDescription", description != null ? description : "");
-
-            String athletes = e.getAthletes();
-            if (isLiftingOrder()) {
-                athletes = e.getLiftingOrderAthletes();
-            }
-
-            String leaders = e.getLeaders();
-            String records = e.getRecords();
-            String translationMap = e.getTranslationMap();
-
-            JreJsonFactory jreJsonFactory = new JreJsonFactory();
+        }
+        this.getElement().setProperty("groupDescription", description != null ? description : "");
+
+        // JSON is parsed once per event and shared by all the scoreboards
+        JsonArray athleteList = isLiftingOrder() ? e.getLiftingOrderAthletesJson() : e.getAthletesJson();
+        JsonArray leaderList = e.getLeadersJson();
+        JsonObject recordList = e.getRecordsJson();
+        if (athleteList != null) {
+            this.getElement().setPropertyJson("athletes", athleteList);
+            this.getElement().setProperty("resultLines", athleteList.length() + 1);
+        } else {
+            this.getElement().setPropertyJson("athletes", Json.createNull());
+            this.getElement().setProperty("resultLines", 1);
+        }
 
-            if (athletes != null) {
-                JsonArray athleteList = (JsonArray) jreJsonFactory.parse(athletes);
-                this.getElement().setPropertyJson("athletes", athleteList);
-                this.getElement().setProperty("resultLines", athleteList.length() + 1);
-            } else {
-                this.getElement().setPropertyJson("athletes", Json.createNull());
-                this.getElement().setProperty("resultLines", 1);
-            }
+        if (leaderList != null && (breakType != BreakType.GROUP_DONE || e.isSinclairMeet())) {
+            this.getElement().setPropertyJson("leaders", leaderList);
+            this.getElement().setProperty("leaderLines", leaderList.length() + 1);
+        } else {
+            this.getElement().setPropertyJson("leaders", Json.createNull());
+            this.getElement().setProperty("leaderLines", 1);
+        }
 
-            if (leaders != null && (breakType != BreakType.GROUP_DONE || e.isSinclairMeet())) {
-                JsonArray leaderList = (JsonArray) jreJsonFactory.parse(leaders);
-                this.getElement().setPropertyJson("leaders", leaderList);
-                this.getElement().setProperty("leaderLines", leaderList.length() + 1);
-            } else {
-                this.getElement().setPropertyJson("leaders", Json.createNull());
-                this.getElement().setProperty("leaderLines", 1);
-            }
+        if (recordList != null) {
+            // logger.debug("records = {}", records);
+            this.getElement().setPropertyJson("records", recordList);
+            this.getElement().setProperty("recordKind", e.getRecordKind());
+            this.getElement().setProperty("recordMessage", e.getRecordMessage());
+        } else {
+            // logger.debug("null records = {}", records);
+            this.getElement().setPropertyJson("records", Json.createNull());
+        }
 
-            if (records != null) {
-                // logger.debug("records = {}", records);
-                JsonObject recordList = (JsonObject) jreJsonFactory.parse(records);
-                this.getElement().setPropertyJson("records", recordList);
-                this.getElement().setProperty("recordKind", e.getRecordKind());
-                this.getElement().setProperty("recordMessage", e.getRecordMessage());
-            } else {
-                // logger.debug("null records = {}", records);
-                this.getElement().setPropertyJson("records", Json.createNull());
-            }
+        JsonObject translations = TranslationCache.get(e.getTranslationHash(), e.getTranslationLocale());
+        if (translations == null) {
+            translations = e.getTranslationsJson();
+        }
+        this.getElement().setPropertyJson("t", translations != null ? translations : Json.createNull());
+
+        // following two are fixed in owlcms
+        getElement().setProperty("showTotal", true);
+        getElement().setProperty("showBest", true);
+        
+        getElement().setProperty("showLiftRanks", e.isShowLiftRanks());
+        getElement().setProperty("showTotalRank",  e.isShowTotalRank());
+        getElement().setProperty("showSinclair", e.isShowSinclair());
+        getElement().setProperty("showSinclairRanks", e.isShowSinclairRank());
+        
+        getElement().setProperty("competitionName", e.getCompetitionName());
+        getElement().setProperty("attempt", e.getAttempt());
+        getElement().setProperty("fullName", e.getFullName());
+        getElement().setProperty("groupInfo", e.getGroupInfo());
+        getElement().setProperty("startNumber", e.getStartNumber());
+        getElement().setProperty("teamName", e.getTeamName());
+        getElement().setProperty("weight", e.getWeight() != null ? e.getWeight() : 0);
+        getElement().setProperty("categoryName", e.getCategoryName());
+        setWideTeamNames(e.getWideTeamNames());
+        String liftsDone = e.getLiftsDone();
+        getElement().setProperty("liftsDone", " \u2013 " + liftsDone);
 
-            this.getElement().setPropertyJson("t",
-                    translationMap != null ? jreJsonFactory.parse(translationMap) : Json.createNull());
-
-            // following two are fixed in owlcms
-            getElement().setProperty("showTotal", true);
-            getElement().setProperty("showBest", true);
-            
-            getElement().setProperty("showLiftRanks", e.isShowLiftRanks());
-            getElement().setProperty("showTotalRank",  e.isShowTotalRank());
-            getElement().setProperty("showSinclair", e.isShowSinclair());
-            getElement().setProperty("showSinclairRanks", e.isShowSinclairRank());
-            
-            getElement().setProperty("competitionName", e.getCompetitionName());
-            getElement().setProperty("attempt", e.getAttempt());
-            getElement().setProperty("fullName", e.getFullName());
-            getElement().setProperty("groupInfo", e.getGroupInfo());
-            getElement().setProperty("startNumber", e.getStartNumber());
-            getElement().setProperty("teamName", e.getTeamName());
-            getElement().setProperty("weight", e.getWeight() != null ? e.getWeight() : 0);
-            getElement().setProperty("categoryName", e.getCategoryName());
-            setWideTeamNames(e.getWideTeamNames());
-            String liftsDone = e.getLiftsDone();
-            getElement().setProperty("liftsDone", " \u2013 " + liftsDone);
-
-            if (StartupUtils.isDebugSetting()) {
-                logger./**/warn("### state {} {}", fopState, e.getBreakType());
-            }
+        if (StartupUtils.isDebugSetting()) {
+            logger./**/warn("### state {} {}", fopState, e.getBreakType());
+        }
 
-            if (this.decisionVisible) {
-                // wait for next event before doing anything.
-                logger.debug("### waiting for decision reset");
-            } else if ("INACTIVE".equals(fopState)
-                    || ("BREAK".equals(fopState) && e.getBreakType() == BreakType.GROUP_DONE)) {
-                logger.debug("### not in a group");
-                doDone(e.getFullName());
-                this.needReset = true;
-            } else if ("BREAK".equals(fopState)) {
-                logger.debug("### in a break {}", e.getBreakType());
-                // also trigger a break timer event to make sure we are in sync with owlcms
-                BreakStart breakStart = new BreakStart(e.getBreakRemaining(), e.isIndefinite());
-                breakStart.setFopName(e.getFopName());
-                TimerReceiverServlet.getEventBus().post(breakStart);
-                this.needReset = true;
-            } else if (!this.needReset) {
-                // logger.debug("no reset");
-            } else {
-                logger.debug("### resetting becase of ranking update");
-                // this.getElement().callJsFunction("reset");
-                this.needReset = false;
-            }
-        });
+        if (this.decisionVisible) {
+            // wait for next event before doing anything.
+            logger.debug("### waiting for decision reset");
+        } else if ("INACTIVE".equals(fopState)
+                || ("BREAK".equals(fopState) && e.getBreakType() == BreakType.GROUP_DONE)) {
+            logger.debug("### not in a group");
+            doDone(e.getFullName());
+            this.needReset = true;
+        } else if ("BREAK".equals(fopState)) {
+            logger.debug("### in a break {}", e.getBreakType());
+            // also trigger a break timer event to make sure we are in sync with owlcms
+            BreakStart breakStart = new BreakStart(e.getBreakRemaining(), e.isIndefinite());
+            breakStart.setFopName(e.getFopName());
+            TimerReceiverServlet.getEventBus().post(breakStart);
+            this.needReset = true;
+        } else if (!this.needReset) {
+            // logger.debug("no reset");
+        } else {
+            logger.debug("### resetting becase of ranking update");
+            // this.getElement().callJsFunction("reset");
+            this.needReset = false;
+        }
     }
 
     // protected void doEmpty() {
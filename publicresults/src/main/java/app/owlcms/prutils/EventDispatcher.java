@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.prutils;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.LoggerFactory;
+
+import com.google.common.eventbus.AsyncEventBus;
+import com.google.common.eventbus.EventBus;
+
+import app.owlcms.utils.StartupUtils;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Bounded worker pool shared by the event buses that fan out owlcms updates, timers and decisions to the scoreboards.
+ *
+ * The number of workers and the queue are bounded, so a burst of events with hundreds of connected viewers does not
+ * create hundreds of threads. When the queue is full, the servlet thread posting the event runs the delivery itself,
+ * which slows down the intake instead of growing without bounds. Virtual threads are used when the JVM has them.
+ *
+ * Update events go through a {@link LatestEventMailbox} per scoreboard, which drops updates superseded by a newer one
+ * before they were processed; the counts are kept here, per field of play.
+ */
+public class EventDispatcher {
+
+    private static final Logger logger = (Logger) LoggerFactory.getLogger(EventDispatcher.class);
+
+    private static final int NB_WORKERS = StartupUtils.getIntegerParam("eventWorkers",
+            Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+    private static final int QUEUE_SIZE = StartupUtils.getIntegerParam("eventQueueSize", 2000);
+
+    private static ThreadPoolExecutor executor = createExecutor();
+    private static Map<String, AtomicLong> droppedByFop = new ConcurrentHashMap<>();
+    private static Map<String, AtomicInteger> pendingByFop = new ConcurrentHashMap<>();
+
+    /**
+     * @param identifier
+     * @return an event bus that delivers on the shared bounded pool
+     */
+    public static EventBus createEventBus(String identifier) {
+        return new AsyncEventBus(identifier, executor);
+    }
+
+    /**
+     * Run a task on the shared bounded pool.
+     *
+     * @param task
+     */
+    public static void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * @return number of dropped (superseded) events per field of play
+     */
+    public static Map<String, Long> getDroppedByFop() {
+        Map<String, Long> dropped = new TreeMap<>();
+        droppedByFop.forEach((k, v) -> dropped.put(k, v.get()));
+        return dropped;
+    }
+
+    /**
+     * @return number of scoreboards with an update waiting to be processed, per field of play
+     */
+    public static Map<String, Integer> getPendingByFop() {
+        Map<String, Integer> pending = new TreeMap<>();
+        pendingByFop.forEach((k, v) -> pending.put(k, v.get()));
+        return pending;
+    }
+
+    /**
+     * @return number of deliveries waiting for a worker, all buses together.
+     */
+    public static int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public static String getStats() {
+        return "queue=" + getQueueDepth() + " active=" + executor.getActiveCount() + " pending=" + getPendingByFop()
+                + " dropped=" + getDroppedByFop();
+    }
+
+    static void recordDropped(String fopName) {
+        droppedByFop.computeIfAbsent(fopKey(fopName), (k) -> new AtomicLong()).incrementAndGet();
+    }
+
+    static void recordPending(String fopName, int delta) {
+        pendingByFop.computeIfAbsent(fopKey(fopName), (k) -> new AtomicInteger()).addAndGet(delta);
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        ThreadFactory threadFactory = virtualThreadFactory();
+        if (threadFactory == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            threadFactory = (r) -> {
+                Thread t = new Thread(r, "event-dispatcher-" + threadNumber.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            };
+            logger.info("event dispatcher using {} platform threads", NB_WORKERS);
+        } else {
+            logger.info("event dispatcher using {} virtual threads", NB_WORKERS);
+        }
+        ThreadPoolExecutor tpe = new ThreadPoolExecutor(NB_WORKERS, NB_WORKERS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_SIZE), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+        tpe.allowCoreThreadTimeOut(true);
+        return tpe;
+    }
+
+    private static String fopKey(String fopName) {
+        return fopName != null ? fopName : "";
+    }
+
+    /**
+     * @return a virtual thread factory on JDK 21 and later, null otherwise
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        if (Runtime.version().feature() < 21) {
+            return null;
+        }
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (Exception e) {
+            logger.warn("virtual threads not available {}", e.toString());
+            return null;
+        }
+    }
+
+}
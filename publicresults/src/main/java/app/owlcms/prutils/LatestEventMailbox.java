@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.prutils;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * One-slot mailbox for a subscriber that only cares about the latest state.
+ *
+ * The first event schedules a single processing task through the scheduler (typically <code>ui.access</code>). Events
+ * that arrive before that task has run replace the waiting one, which is counted as dropped. The delivering thread
+ * never waits for the subscriber, so a slow or stalled browser session does not tie up the shared pool.
+ *
+ * @param <T> the event type
+ */
+public class LatestEventMailbox<T> {
+
+    private final AtomicReference<T> pending = new AtomicReference<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Consumer<Runnable> scheduler;
+    private final Consumer<T> handler;
+    private volatile String fopName;
+
+    /**
+     * @param scheduler runs the processing task, for example in the subscriber's UI
+     * @param handler   processes the latest event
+     */
+    public LatestEventMailbox(Consumer<Runnable> scheduler, Consumer<T> handler) {
+        this.scheduler = scheduler;
+        this.handler = handler;
+    }
+
+    /**
+     * @param fopName the field of play, used for metrics
+     * @param event
+     */
+    public void offer(String fopName, T event) {
+        this.fopName = fopName;
+        if (this.pending.getAndSet(event) != null) {
+            EventDispatcher.recordDropped(fopName);
+        } else {
+            EventDispatcher.recordPending(fopName, 1);
+        }
+        if (this.scheduled.compareAndSet(false, true)) {
+            try {
+                this.scheduler.accept(this::processLatest);
+            } catch (RuntimeException e) {
+                // UI gone; next offer will try again.
+                if (this.pending.getAndSet(null) != null) {
+                    EventDispatcher.recordPending(fopName, -1);
+                }
+                this.scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void processLatest() {
+        this.scheduled.set(false);
+        T event = this.pending.getAndSet(null);
+        if (event != null) {
+            EventDispatcher.recordPending(this.fopName, -1);
+            this.handler.accept(event);
+        }
+    }
+
+}
@@ -9,6 +9,7 @@ package app.owlcms.publicresults;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
@@ -51,14 +52,26 @@ public class ConfigReceiverServlet extends HttpServlet {
         JakartaServletFileUpload<DiskFileItem, DiskFileItemFactory> upload = new JakartaServletFileUpload<>(f);
         boolean authenticated = false;
 
+        String translationHash = null;
+        String translationLocale = null;
+        String translationMap = null;
+
         // Parse the request
         List<DiskFileItem> items = upload.parseRequest(req);
         for (DiskFileItem item : items) {
             String fieldName = item.getFieldName();
             if (item.isFormField()) {
-                String string = item.getString();
-                // updateKey should come first
-                authenticated = checkUpdateKey(req, resp, authenticated, fieldName, string);
+                String string = item.getString(StandardCharsets.UTF_8);
+                if ("translationHash".equals(fieldName)) {
+                    translationHash = string;
+                } else if ("translationLocale".equals(fieldName)) {
+                    translationLocale = string;
+                } else if ("translationMap".equals(fieldName)) {
+                    translationMap = string;
+                } else {
+                    // updateKey should come first
+                    authenticated = checkUpdateKey(req, resp, authenticated, fieldName, string);
+                }
             } else {
                 if (!authenticated) {
                     deny(req, resp, null);
@@ -74,7 +87,9 @@ public class ConfigReceiverServlet extends HttpServlet {
         }
         if (!authenticated) {
             deny(req, resp, null);
+            return;
         }
+        TranslationCache.put(translationHash, translationLocale, translationMap);
     }
 
     /**
@@ -10,13 +10,12 @@ import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.Executors;
 
 import org.slf4j.LoggerFactory;
 
-import com.google.common.eventbus.AsyncEventBus;
 import com.google.common.eventbus.EventBus;
 
+import app.owlcms.prutils.EventDispatcher;
 import app.owlcms.uievents.DecisionEvent;
 import app.owlcms.uievents.DecisionEventType;
 import app.owlcms.utils.ProxyUtils;
@@ -32,8 +31,7 @@ import jakarta.servlet.http.HttpServletResponse;
 public class DecisionReceiverServlet extends HttpServlet implements Traceable {
 
     private static String defaultFopName;
-    static EventBus eventBus = new AsyncEventBus(DecisionReceiverServlet.class.getSimpleName(),
-            Executors.newCachedThreadPool());
+    static EventBus eventBus = EventDispatcher.createEventBus(DecisionReceiverServlet.class.getSimpleName());
 
     public static EventBus getEventBus() {
         return eventBus;
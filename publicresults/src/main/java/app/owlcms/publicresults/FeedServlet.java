@@ -0,0 +1,527 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.publicresults;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.slf4j.LoggerFactory;
+
+import com.google.common.eventbus.Subscribe;
+
+import app.owlcms.prutils.EventDispatcher;
+import app.owlcms.prutils.LatestEventMailbox;
+import app.owlcms.uievents.BreakTimerEvent;
+import app.owlcms.uievents.DecisionEvent;
+import app.owlcms.uievents.TimerEvent;
+import app.owlcms.uievents.UpdateEvent;
+import app.owlcms.utils.LoggerUtils;
+import app.owlcms.utils.ProxyUtils;
+import app.owlcms.utils.StartupUtils;
+import ch.qos.logback.classic.Logger;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+import elemental.json.JsonValue;
+import elemental.json.impl.JreJsonFactory;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Server-Sent Events feed of a field of play, for lightweight viewers that do not need a Vaadin session.
+ *
+ * <code>GET /feed</code> returns the list of fields of play as JSON. <code>GET /feed/{fop}</code> is an event stream
+ * with "update", "timer", "decision" and "translations" events, each carrying a JSON object. The current state from
+ * the update cache is sent as soon as the stream is opened. Each event is serialized once and the same text is written
+ * to all the viewers of the field of play. Decisions are all sent, in order; for updates, athlete timer and break timer
+ * events, a viewer that has not yet been sent an event only gets the latest one of each kind. Writes never block the threads that deliver the events. The page in <code>feed.html</code> renders the scoreboard from this feed.
+ */
+@WebServlet(urlPatterns = "/feed/*", asyncSupported = true)
+public class FeedServlet extends HttpServlet {
+
+    /**
+     * One open event stream.
+     *
+     * The stream is written with non-blocking I/O: events are queued and written when the container says the
+     * connection can take more, so the dispatcher threads never wait for a viewer. A viewer that lets more than
+     * {@link #MAX_PENDING} events pile up is too slow to follow the competition and is disconnected.
+     */
+    static class FeedClient implements WriteListener {
+        private final AsyncContext asyncContext;
+        private final ServletOutputStream out;
+        private final String fopName;
+        private final LatestEventMailbox<FeedMessage> updates;
+        private final LatestEventMailbox<String> timers;
+        private final LatestEventMailbox<String> breakTimers;
+        private final Queue<byte[]> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger nbPending = new AtomicInteger();
+        private String translationsKey;
+        private boolean unflushed;
+        private volatile boolean closed;
+
+        FeedClient(AsyncContext asyncContext, String fopName) throws IOException {
+            this.asyncContext = asyncContext;
+            this.out = asyncContext.getResponse().getOutputStream();
+            this.fopName = fopName;
+            this.updates = new LatestEventMailbox<>(EventDispatcher::execute, this::writeUpdate);
+            this.timers = new LatestEventMailbox<>(EventDispatcher::execute, (data) -> write("timer", data));
+            this.breakTimers = new LatestEventMailbox<>(EventDispatcher::execute, (data) -> write("timer", data));
+            // the container calls onWritePossible once the listener is set.
+            this.out.setWriteListener(this);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            close();
+        }
+
+        @Override
+        public void onWritePossible() {
+            drain();
+        }
+
+        void close() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            removeClient(this);
+            this.pending.clear();
+            try {
+                this.asyncContext.complete();
+            } catch (Exception e) {
+                // already completed by the container.
+            }
+        }
+
+        boolean isClosed() {
+            return this.closed;
+        }
+
+        void ping() {
+            writeRaw(": ping\n\n");
+        }
+
+        void write(String eventName, String data) {
+            writeRaw(frame(eventName, data));
+        }
+
+        /**
+         * Write whatever the connection accepts without blocking; called again by the container when it can take more.
+         */
+        private synchronized void drain() {
+            try {
+                while (!this.closed && this.out.isReady()) {
+                    byte[] next = this.pending.poll();
+                    if (next == null) {
+                        if (!this.unflushed) {
+                            return;
+                        }
+                        this.unflushed = false;
+                        this.out.flush();
+                    } else {
+                        this.nbPending.decrementAndGet();
+                        this.out.write(next);
+                        this.unflushed = true;
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                // viewer went away
+                close();
+            }
+        }
+
+        private void writeRaw(String text) {
+            if (this.closed) {
+                return;
+            }
+            if (this.nbPending.incrementAndGet() > MAX_PENDING) {
+                logger.debug("feed viewer for {} not keeping up, disconnected", this.fopName);
+                close();
+                return;
+            }
+            this.pending.add(text.getBytes(StandardCharsets.UTF_8));
+            drain();
+        }
+
+        private synchronized void writeUpdate(FeedMessage message) {
+            if (message.translationsKey != null && !message.translationsKey.equals(this.translationsKey)) {
+                JsonObject translations = getTranslations(message.event);
+                if (translations != null) {
+                    write("translations", translations.toJson());
+                    this.translationsKey = message.translationsKey;
+                }
+            }
+            write("update", message.json);
+        }
+    }
+
+    /**
+     * An update serialized once for all the viewers.
+     */
+    private static class FeedMessage {
+        private final UpdateEvent event;
+        private final String json;
+        private final String translationsKey;
+
+        FeedMessage(UpdateEvent event) {
+            this.event = event;
+            this.translationsKey = translationsKey(event);
+            this.json = toJson(event, this.translationsKey).toJson();
+        }
+    }
+
+    /**
+     * Receives the events from the servlets and fans them out to the viewers.
+     */
+    private static class FeedSubscriber {
+        @Subscribe
+        public void onBreakTimerEvent(BreakTimerEvent e) {
+            String data = toJson(e).toJson();
+            forEachClient(e.getFopName(), (c) -> c.breakTimers.offer(c.fopName, data));
+        }
+
+        @Subscribe
+        public void onDecisionEvent(DecisionEvent e) {
+            String data = toJson(e).toJson();
+            // not coalesced: a decision that is replaced by the next one would never be shown.
+            forEachClient(e.getFopName(), (c) -> c.write("decision", data));
+        }
+
+        @Subscribe
+        public void onTimerEvent(TimerEvent e) {
+            String data = toJson(e).toJson();
+            forEachClient(e.getFopName(), (c) -> c.timers.offer(c.fopName, data));
+        }
+
+        @Subscribe
+        public void onUpdateEvent(UpdateEvent e) {
+            Set<FeedClient> clients = e.getFopName() != null ? clientsByFop.get(e.getFopName()) : null;
+            if (clients == null || clients.isEmpty()) {
+                return;
+            }
+            FeedMessage message = new FeedMessage(e);
+            forEachClient(e.getFopName(), (c) -> c.updates.offer(c.fopName, message));
+        }
+    }
+
+    private static final int MAX_CLIENTS = StartupUtils.getIntegerParam("feedMaxClients", 10000);
+    private static final long PING_SECONDS = 15;
+    /**
+     * events waiting to be written to one viewer; the mailboxes only keep the latest of each kind, and decisions are a
+     * few seconds apart, so a viewer that is keeping up has two or three.
+     */
+    private static final int MAX_PENDING = StartupUtils.getIntegerParam("feedMaxPending", 64);
+
+    private static Logger logger = (Logger) LoggerFactory.getLogger(FeedServlet.class);
+    private static Map<String, Set<FeedClient>> clientsByFop = new ConcurrentHashMap<>();
+    private static AtomicInteger nbClients = new AtomicInteger();
+    private static FeedSubscriber subscriber;
+    private static ScheduledExecutorService pinger;
+    private static JreJsonFactory jsonFactory = new JreJsonFactory();
+
+    /**
+     * @return number of open event streams, per field of play
+     */
+    public static Map<String, Integer> getClientCounts() {
+        Map<String, Integer> counts = new TreeMap<>();
+        clientsByFop.forEach((k, v) -> counts.put(k, v.size()));
+        return counts;
+    }
+
+    private static void addClient(FeedClient client) {
+        clientsByFop.computeIfAbsent(client.fopName, (k) -> ConcurrentHashMap.newKeySet()).add(client);
+        nbClients.incrementAndGet();
+    }
+
+    /**
+     * @param eventName
+     * @param data      the event data; each line is sent as a separate data field
+     * @return the Server-Sent Events message
+     */
+    static String frame(String eventName, String data) {
+        StringBuilder sb = new StringBuilder("event: ").append(eventName).append('\n');
+        for (String line : data.split("\r\n|\r|\n", -1)) {
+            sb.append("data: ").append(line).append('\n');
+        }
+        return sb.append('\n').toString();
+    }
+
+    private static void forEachClient(String fopName, Consumer<FeedClient> action) {
+        if (fopName == null) {
+            return;
+        }
+        Set<FeedClient> clients = clientsByFop.get(fopName);
+        if (clients == null) {
+            return;
+        }
+        for (FeedClient c : clients) {
+            try {
+                action.accept(c);
+            } catch (RuntimeException ex) {
+                logger.debug("feed client error {}", LoggerUtils.exceptionMessage(ex));
+                c.close();
+            }
+        }
+    }
+
+    private static JsonObject getTranslations(UpdateEvent e) {
+        JsonObject translations = TranslationCache.get(e.getTranslationHash(), e.getTranslationLocale());
+        return translations != null ? translations : e.getTranslationsJson();
+    }
+
+    private static void pingAll() {
+        for (Set<FeedClient> clients : clientsByFop.values()) {
+            for (FeedClient c : clients) {
+                EventDispatcher.execute(c::ping);
+            }
+        }
+    }
+
+    private static void put(JsonObject o, String key, Boolean value) {
+        if (value != null) {
+            o.put(key, value);
+        }
+    }
+
+    private static void put(JsonObject o, String key, Integer value) {
+        if (value != null) {
+            o.put(key, value);
+        }
+    }
+
+    private static void put(JsonObject o, String key, JsonValue value) {
+        if (value != null) {
+            o.put(key, value);
+        }
+    }
+
+    private static void put(JsonObject o, String key, Object value) {
+        if (value != null) {
+            o.put(key, value.toString());
+        }
+    }
+
+    private static void removeClient(FeedClient client) {
+        Set<FeedClient> clients = clientsByFop.get(client.fopName);
+        if (clients != null && clients.remove(client)) {
+            nbClients.decrementAndGet();
+        }
+    }
+
+    private static synchronized void startFeed() {
+        if (subscriber != null) {
+            return;
+        }
+        subscriber = new FeedSubscriber();
+        UpdateReceiverServlet.getEventBus().register(subscriber);
+        TimerReceiverServlet.getEventBus().register(subscriber);
+        DecisionReceiverServlet.getEventBus().register(subscriber);
+        pinger = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread t = new Thread(r, "feed-ping");
+            t.setDaemon(true);
+            return t;
+        });
+        pinger.scheduleWithFixedDelay(FeedServlet::pingAll, PING_SECONDS, PING_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static JsonObject toJson(BreakTimerEvent e) {
+        JsonObject o = jsonFactory.createObject();
+        o.put("type", e.getClass().getSimpleName());
+        put(o, "fop", e.getFopName());
+        put(o, "breakType", e.getBreakType());
+        put(o, "mode", e.getMode());
+        if (e instanceof BreakTimerEvent.BreakStart) {
+            put(o, "timeRemaining", ((BreakTimerEvent.BreakStart) e).getTimeRemaining());
+            o.put("indefinite", ((BreakTimerEvent.BreakStart) e).isIndefinite());
+        } else if (e instanceof BreakTimerEvent.BreakSetTime) {
+            put(o, "timeRemaining", ((BreakTimerEvent.BreakSetTime) e).getTimeRemaining());
+            o.put("indefinite", ((BreakTimerEvent.BreakSetTime) e).isIndefinite());
+        } else if (e instanceof BreakTimerEvent.BreakPaused) {
+            put(o, "timeRemaining", ((BreakTimerEvent.BreakPaused) e).getTimeRemaining());
+        }
+        return o;
+    }
+
+    private static JsonObject toJson(DecisionEvent e) {
+        JsonObject o = jsonFactory.createObject();
+        o.put("type", "DecisionEvent");
+        put(o, "fop", e.getFopName());
+        put(o, "eventType", e.getEventType());
+        put(o, "d1", e.getDecisionLight1());
+        put(o, "d2", e.getDecisionLight2());
+        put(o, "d3", e.getDecisionLight3());
+        o.put("decisionsVisible", e.isDecisionLightsVisible());
+        o.put("down", e.isDown());
+        put(o, "recordKind", e.getRecordKind());
+        put(o, "recordMessage", e.getRecordMessage());
+        put(o, "mode", e.getMode());
+        return o;
+    }
+
+    private static JsonObject toJson(TimerEvent e) {
+        JsonObject o = jsonFactory.createObject();
+        o.put("type", e.getClass().getSimpleName());
+        put(o, "fop", e.getFopName());
+        if (e instanceof TimerEvent.StartTime) {
+            put(o, "timeRemaining", ((TimerEvent.StartTime) e).getTimeRemaining());
+            o.put("silent", ((TimerEvent.StartTime) e).isSilent());
+        } else if (e instanceof TimerEvent.SetTime) {
+            put(o, "timeRemaining", ((TimerEvent.SetTime) e).getTimeRemaining());
+        } else if (e instanceof TimerEvent.StopTime) {
+            put(o, "timeRemaining", ((TimerEvent.StopTime) e).getTimeRemaining());
+        }
+        return o;
+    }
+
+    private static JsonObject toJson(UpdateEvent e, String translationsKey) {
+        JsonObject o = jsonFactory.createObject();
+        o.put("type", "UpdateEvent");
+        put(o, "fop", e.getFopName());
+        put(o, "competitionName", e.getCompetitionName());
+        put(o, "fopState", e.getFopState());
+        put(o, "mode", e.getMode());
+        put(o, "break", e.isBreak());
+        put(o, "breakType", e.getBreakType());
+        put(o, "ceremonyType", e.getCeremonyType());
+        put(o, "breakRemaining", e.getBreakRemaining());
+        o.put("indefinite", e.isIndefinite());
+        o.put("done", e.isDone());
+        put(o, "groupName", e.getGroupName());
+        put(o, "groupInfo", e.getGroupInfo());
+        put(o, "groupDescription", e.getGroupDescription());
+        put(o, "fullName", e.getFullName());
+        put(o, "teamName", e.getTeamName());
+        put(o, "startNumber", e.getStartNumber());
+        put(o, "attempt", e.getAttempt());
+        put(o, "weight", e.getWeight());
+        put(o, "categoryName", e.getCategoryName());
+        put(o, "timeAllowed", e.getTimeAllowed());
+        put(o, "liftsDone", e.getLiftsDone());
+        put(o, "recordKind", e.getRecordKind());
+        put(o, "recordMessage", e.getRecordMessage());
+        o.put("hidden", e.getHidden());
+        o.put("showLiftRanks", e.isShowLiftRanks());
+        o.put("showTotalRank", e.isShowTotalRank());
+        o.put("showSinclair", e.isShowSinclair());
+        o.put("showSinclairRank", e.isShowSinclairRank());
+        o.put("sinclairMeet", e.isSinclairMeet());
+        o.put("wideTeamNames", e.getWideTeamNames());
+        put(o, "translationsKey", translationsKey);
+
+        // the parsed values are shared with the scoreboards and are only read here.
+        put(o, "athletes", e.getAthletesJson());
+        put(o, "liftingOrderAthletes", e.getLiftingOrderAthletesJson());
+        put(o, "leaders", e.getLeadersJson());
+        put(o, "records", e.getRecordsJson());
+        return o;
+    }
+
+    private static String translationsKey(UpdateEvent e) {
+        if (e.getTranslationHash() != null) {
+            return e.getTranslationHash() + "/" + (e.getTranslationLocale() != null ? e.getTranslationLocale() : "");
+        } else if (e.getTranslationMap() != null) {
+            // older owlcms versions send the full map every time.
+            return Integer.toHexString(e.getTranslationMap().hashCode());
+        }
+        return null;
+    }
+
+    /**
+     * @see jakarta.servlet.http.HttpServlet#doGet(jakarta.servlet.http.HttpServletRequest,
+     *      jakarta.servlet.http.HttpServletResponse)
+     */
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String pathInfo = req.getPathInfo();
+        String fopName = pathInfo != null && pathInfo.length() > 1 ? pathInfo.substring(1) : null;
+        if (fopName == null) {
+            listFops(resp);
+            return;
+        }
+        if (!UpdateReceiverServlet.getUpdateCache().containsKey(fopName)) {
+            resp.sendError(404, "Unknown field of play");
+            return;
+        }
+        if (nbClients.get() >= MAX_CLIENTS) {
+            logger.warn("feed refused to {}, {} viewers already connected", ProxyUtils.getClientIp(req), nbClients.get());
+            resp.setHeader("Retry-After", "30");
+            resp.sendError(503, "Too many viewers");
+            return;
+        }
+
+        startFeed();
+        resp.setContentType("text/event-stream");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+        // tell reverse proxies not to buffer the stream
+        resp.setHeader("X-Accel-Buffering", "no");
+        resp.setStatus(200);
+
+        AsyncContext asyncContext = req.startAsync();
+        asyncContext.setTimeout(0);
+        FeedClient client = new FeedClient(asyncContext, fopName);
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                client.close();
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                client.close();
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                client.close();
+            }
+        });
+        addClient(client);
+        logger.debug("feed opened for {} from {}, {} viewers", fopName, ProxyUtils.getClientIp(req), nbClients.get());
+
+        client.writeRaw("retry: 5000\n\n");
+        UpdateEvent current = UpdateReceiverServlet.getUpdateCache().get(fopName);
+        if (current != null) {
+            client.updates.offer(fopName, new FeedMessage(current));
+        }
+    }
+
+    private void listFops(HttpServletResponse resp) throws IOException {
+        JsonArray fops = jsonFactory.createArray();
+        for (String fop : new ArrayList<>(UpdateReceiverServlet.getUpdateCache().keySet())) {
+            fops.set(fops.length(), fop);
+        }
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+        resp.getWriter().write(fops.toJson());
+    }
+
+}
@@ -10,13 +10,13 @@ import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.Executors;
+import java.util.function.Function;
 
 import org.slf4j.LoggerFactory;
 
-import com.google.common.eventbus.AsyncEventBus;
 import com.google.common.eventbus.EventBus;
 
+import app.owlcms.prutils.EventDispatcher;
 import app.owlcms.uievents.BreakTimerEvent;
 import app.owlcms.uievents.TimerEvent;
 import app.owlcms.utils.LoggerUtils;
@@ -33,8 +33,7 @@ import jakarta.servlet.http.HttpServletResponse;
 public class TimerReceiverServlet extends HttpServlet implements Traceable {
 
     private static String defaultFopName;
-    static EventBus eventBus = new AsyncEventBus(TimerReceiverServlet.class.getSimpleName(),
-            Executors.newCachedThreadPool());
+    static EventBus eventBus = EventDispatcher.createEventBus(TimerReceiverServlet.class.getSimpleName());
 
     public static EventBus getEventBus() {
         return eventBus;
@@ -92,19 +91,31 @@ public class TimerReceiverServlet extends HttpServlet implements Traceable {
     }
 
     public static String processTimerReq(HttpServletRequest req, HttpServletResponse resp, Logger logger) throws IOException {
+        return processTimerReq(req::getParameter, resp, logger);
+    }
+
+    /**
+     * @param req    access to the parameters, either from the request or from an update rebuilt from deltas
+     * @param resp   null if errors must not be sent back
+     * @param logger
+     * @return the name of the field of play
+     * @throws IOException
+     */
+    public static String processTimerReq(Function<String, String> req, HttpServletResponse resp, Logger logger)
+            throws IOException {
         TimerEvent timerEvent = null;
         BreakTimerEvent breakTimerEvent = null;
 
-        String athleteTimerEventTypeString = req.getParameter("athleteTimerEventType");
-        String breakTimerEventTypeString = req.getParameter("breakTimerEventType");
-        String fopName = req.getParameter("fopName");
+        String athleteTimerEventTypeString = req.apply("athleteTimerEventType");
+        String breakTimerEventTypeString = req.apply("breakTimerEventType");
+        String fopName = req.apply("fopName");
 
         int athleteMillis = computeAthleteTargetDuration(req);
         int breakMillis = computeBreakTargetDuration(req);
 
-        String indefiniteString = req.getParameter("timerIndefiniteBreak");
+        String indefiniteString = req.apply("timerIndefiniteBreak");
         boolean indefinite = indefiniteString != null ? Boolean.valueOf(indefiniteString) : false;
-        String silentString = req.getParameter("silent");
+        String silentString = req.apply("silent");
         boolean silent = silentString != null ? Boolean.valueOf(silentString) : false;
 
         if (athleteTimerEventTypeString != null) {
@@ -145,16 +156,16 @@ public class TimerReceiverServlet extends HttpServlet implements Traceable {
         }
         if (breakTimerEvent != null) {
             breakTimerEvent.setFopName(fopName);
-            String mode = req.getParameter("mode");
+            String mode = req.apply("mode");
             breakTimerEvent.setMode(mode);
             eventBus.post(breakTimerEvent);
         }
         return fopName;
     }
 
-    private static int computeAthleteTargetDuration(HttpServletRequest req) {
-        String startTimeMillisString = req.getParameter("athleteStartTimeMillis");
-        String secondsString = req.getParameter("athleteMillisRemaining");
+    private static int computeAthleteTargetDuration(Function<String, String> req) {
+        String startTimeMillisString = req.apply("athleteStartTimeMillis");
+        String secondsString = req.apply("athleteMillisRemaining");
         if (startTimeMillisString == null) {
             // relative time
             int deltaMillis = secondsString != null ? Integer.valueOf(secondsString) : 0;
@@ -169,9 +180,9 @@ public class TimerReceiverServlet extends HttpServlet implements Traceable {
         }
     }
 
-    private static int computeBreakTargetDuration(HttpServletRequest req) {
-        String startTimeMillisString = req.getParameter("breakStartTimeMillis");
-        String secondsString = req.getParameter("breakMillisRemaining");
+    private static int computeBreakTargetDuration(Function<String, String> req) {
+        String startTimeMillisString = req.apply("breakStartTimeMillis");
+        String secondsString = req.apply("breakMillisRemaining");
         long startTimeMillis = secondsString != null ? Long.valueOf(startTimeMillisString) : System.currentTimeMillis();
         int deltaMillis = secondsString != null ? Integer.valueOf(secondsString) : 0;
         long targetMillis = startTimeMillis + deltaMillis;
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.publicresults;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Logger;
+import elemental.json.JsonObject;
+import elemental.json.impl.JreJsonFactory;
+
+/**
+ * Scoreboard translation maps received from owlcms, keyed by content hash and locale.
+ *
+ * owlcms sends a translation map once per locale version (with the /config upload or the first full update), and
+ * updates then only carry the hash. The map is parsed once here and the same JsonObject is given to every scoreboard.
+ */
+public class TranslationCache {
+
+    private static final Logger logger = (Logger) LoggerFactory.getLogger(TranslationCache.class);
+    private static Map<String, JsonObject> translationsByKey = new ConcurrentHashMap<>();
+
+    public static boolean contains(String hash, String locale) {
+        return hash != null && translationsByKey.containsKey(key(hash, locale));
+    }
+
+    /**
+     * @param hash
+     * @param locale
+     * @return the parsed translation map, null if not received yet. Must not be modified.
+     */
+    public static JsonObject get(String hash, String locale) {
+        if (hash == null) {
+            return null;
+        }
+        return translationsByKey.get(key(hash, locale));
+    }
+
+    /**
+     * Parse and remember a translation map, unless the same hash has already been received.
+     *
+     * @param hash
+     * @param locale
+     * @param translationMap the JSON string sent by owlcms
+     */
+    public static void put(String hash, String locale, String translationMap) {
+        if (hash == null || translationMap == null) {
+            return;
+        }
+        translationsByKey.computeIfAbsent(key(hash, locale), (k) -> {
+            logger.info("caching translations {} for locale {}", hash, locale);
+            return new JreJsonFactory().parse(translationMap);
+        });
+    }
+
+    private static String key(String hash, String locale) {
+        return hash + "/" + (locale != null ? locale : "");
+    }
+
+}
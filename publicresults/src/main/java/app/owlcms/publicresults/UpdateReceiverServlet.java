@@ -11,19 +11,21 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.LoggerFactory;
 
-import com.google.common.eventbus.AsyncEventBus;
 import com.google.common.eventbus.EventBus;
 
+import app.owlcms.prutils.EventDispatcher;
 import app.owlcms.uievents.BreakType;
 import app.owlcms.uievents.UpdateEvent;
 import app.owlcms.utils.LoggerUtils;
 import app.owlcms.utils.ProxyUtils;
 import app.owlcms.utils.ResourceWalker;
 import app.owlcms.utils.StartupUtils;
+import app.owlcms.utils.UpdateDeltaDecoder;
+import app.owlcms.utils.UpdateProtocol;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 import jakarta.servlet.ServletException;
@@ -36,8 +38,7 @@ import jakarta.servlet.http.HttpServletResponse;
 public class UpdateReceiverServlet extends HttpServlet implements Traceable {
 
     private static String defaultFopName;
-    static EventBus eventBus = new AsyncEventBus(UpdateReceiverServlet.class.getSimpleName(),
-            Executors.newCachedThreadPool());
+    static EventBus eventBus = EventDispatcher.createEventBus(UpdateReceiverServlet.class.getSimpleName());
     private static Map<String, UpdateEvent> updateCache = new HashMap<>();
     static long lastUpdate = 0;
 
@@ -64,6 +65,8 @@ public class UpdateReceiverServlet extends HttpServlet implements Traceable {
         return null;
     }
 
+    private static Map<String, UpdateDeltaDecoder> decoders = new ConcurrentHashMap<>();
+
     private Logger logger = (Logger) LoggerFactory.getLogger(UpdateReceiverServlet.class);
 
     private String secret = StartupUtils.getStringParam("updateKey");
@@ -118,63 +121,87 @@ public class UpdateReceiverServlet extends HttpServlet implements Traceable {
                 }
             }
 
+            Map<String, String> params = UpdateDeltaDecoder.getParameters(req);
+            if (params.get("protocol") != null) {
+                // owlcms may only send what changed since its previous post.
+                params = applyDelta(params);
+                if (params == null) {
+                    resp.sendError(409, "Update sequence gap, full update required");
+                    return;
+                }
+            }
+
             UpdateEvent updateEvent = new UpdateEvent();
 
-            updateEvent.setCompetitionName(req.getParameter("competitionName"));
-            updateEvent.setFopName(req.getParameter("fop"));
-            updateEvent.setFopState(req.getParameter("fopState"));
-            updateEvent.setStylesDir(req.getParameter("stylesDir"));
+            updateEvent.setCompetitionName(params.get("competitionName"));
+            updateEvent.setFopName(params.get("fop"));
+            updateEvent.setFopState(params.get("fopState"));
+            updateEvent.setStylesDir(params.get("stylesDir"));
 
-            updateEvent.setAttempt(req.getParameter("attempt"));
-            updateEvent.setCategoryName(req.getParameter("categoryName"));
-            updateEvent.setFullName(req.getParameter("fullName"));
-            updateEvent.setGroupName(req.getParameter("groupName"));
-            updateEvent.setGroupInfo(req.getParameter("groupInfo"));
+            updateEvent.setAttempt(params.get("attempt"));
+            updateEvent.setCategoryName(params.get("categoryName"));
+            updateEvent.setFullName(params.get("fullName"));
+            updateEvent.setGroupName(params.get("groupName"));
+            updateEvent.setGroupInfo(params.get("groupInfo"));
 
-            updateEvent.setHidden(Boolean.valueOf(req.getParameter("hidden")));
-            String startNumber = req.getParameter("startNumber");
+            updateEvent.setHidden(Boolean.valueOf(params.get("hidden")));
+            String startNumber = params.get("startNumber");
             updateEvent.setStartNumber(startNumber != null ? Integer.parseInt(startNumber) : 0);
-            updateEvent.setTeamName(req.getParameter("teamName"));
-            String weight = req.getParameter("weight");
+            updateEvent.setTeamName(params.get("teamName"));
+            String weight = params.get("weight");
             updateEvent.setWeight(weight != null ? Integer.parseInt(weight) : null);
 
-            updateEvent.setShowLiftRanks(Boolean.parseBoolean(req.getParameter("showLiftRanks")));
-            updateEvent.setShowTotalRank(Boolean.parseBoolean(req.getParameter("showTotalRank")));
-            updateEvent.setShowSinclair(Boolean.parseBoolean(req.getParameter("showSinclair")));
-            updateEvent.setShowSinclairRank(Boolean.parseBoolean(req.getParameter("showSinclairRank")));
+            updateEvent.setShowLiftRanks(Boolean.parseBoolean(params.get("showLiftRanks")));
+            updateEvent.setShowTotalRank(Boolean.parseBoolean(params.get("showTotalRank")));
+            updateEvent.setShowSinclair(Boolean.parseBoolean(params.get("showSinclair")));
+            updateEvent.setShowSinclairRank(Boolean.parseBoolean(params.get("showSinclairRank")));
             
-            updateEvent.setAthletes(req.getParameter("groupAthletes"));
-            updateEvent.setLiftingOrderAthletes(req.getParameter("liftingOrderAthletes"));
-            updateEvent.setLeaders(req.getParameter("leaders"));
-
-            updateEvent.setRecords(req.getParameter("records"));
-            updateEvent.setRecordKind(req.getParameter("recordKind"));
-            updateEvent.setRecordMessage(req.getParameter("recordMessage"));
-            updateEvent.setLiftsDone(req.getParameter("liftsDone"));
-
-            updateEvent.setWideTeamNames(Boolean.parseBoolean(req.getParameter("wideTeamNames")));
-            String timeAllowed = req.getParameter("timeAllowed");
-            updateEvent.setTimeAllowed(timeAllowed != null ? Integer.parseInt(req.getParameter("timeAllowed")) : null);
-
-            updateEvent.setTranslationMap(req.getParameter("translationMap"));
+            updateEvent.setAthletes(params.get("groupAthletes"));
+            updateEvent.setLiftingOrderAthletes(params.get("liftingOrderAthletes"));
+            updateEvent.setLeaders(params.get("leaders"));
+
+            updateEvent.setRecords(params.get("records"));
+            updateEvent.setRecordKind(params.get("recordKind"));
+            updateEvent.setRecordMessage(params.get("recordMessage"));
+            updateEvent.setLiftsDone(params.get("liftsDone"));
+
+            updateEvent.setWideTeamNames(Boolean.parseBoolean(params.get("wideTeamNames")));
+            String timeAllowed = params.get("timeAllowed");
+            updateEvent.setTimeAllowed(timeAllowed != null ? Integer.parseInt(params.get("timeAllowed")) : null);
+
+            String translationHash = params.get("translationHash");
+            String translationLocale = params.get("translationLocale");
+            String translationMap = params.get("translationMap");
+            if (translationHash != null) {
+                // the map is only sent once per hash, the cache parses it for all scoreboards
+                TranslationCache.put(translationHash, translationLocale, translationMap);
+                if (!TranslationCache.contains(translationHash, translationLocale)) {
+                    this.getLogger().info("translations {} missing, requesting configuration", translationHash);
+                    resp.sendError(412, "Missing translations.");
+                    return;
+                }
+            }
+            updateEvent.setTranslationHash(translationHash);
+            updateEvent.setTranslationLocale(translationLocale);
+            updateEvent.setTranslationMap(translationMap);
 
-            String mode = req.getParameter("mode");
+            String mode = params.get("mode");
             updateEvent.setMode(mode);
             
-            TimerReceiverServlet.processTimerReq(req, null, getLogger());
+            TimerReceiverServlet.processTimerReq(params::get, null, getLogger());
 
-            String breakTypeString = req.getParameter("breakType");
-            updateEvent.setBreak("true".equalsIgnoreCase(req.getParameter("break")));
+            String breakTypeString = params.get("breakType");
+            updateEvent.setBreak("true".equalsIgnoreCase(params.get("break")));
             if (breakTypeString == BreakType.GROUP_DONE.name()) {
                 updateEvent.setRecords(null);
                 updateEvent.setRecordKind("none");
                 updateEvent.setRecordMessage("");
                 updateEvent.setDone(true);
             }
-            updateEvent.setCeremonyType(req.getParameter("ceremonyType"));
-            updateEvent.setBreakType(req.getParameter("breakType"));
+            updateEvent.setCeremonyType(params.get("ceremonyType"));
+            updateEvent.setBreakType(params.get("breakType"));
             
-            String sinclairMeetString = req.getParameter("sinclairMeet");
+            String sinclairMeetString = params.get("sinclairMeet");
             updateEvent.setSinclairMeet(Boolean.parseBoolean(sinclairMeetString));
 
             String fopName = updateEvent.getFopName();
@@ -182,6 +209,14 @@ public class UpdateReceiverServlet extends HttpServlet implements Traceable {
 
             long now = System.currentTimeMillis();
 
+            // parse the JSON once, all the scoreboards share the result.
+            updateEvent.parseJson();
+            if (this.getLogger().isDebugEnabled()) {
+                this.getLogger().debug("update parses {}, average per event {}, dispatcher {}, feed viewers {}",
+                        updateEvent.getNbParses(), String.format("%.2f", UpdateEvent.getAverageParsesPerEvent()),
+                        EventDispatcher.getStats(), FeedServlet.getClientCounts());
+            }
+
             // the computed hashcode is not included in the hashcode
             // this avoids every servlet recomputing it.
             updateEvent.setHashCode(updateEvent.hashCode());
@@ -204,12 +239,31 @@ public class UpdateReceiverServlet extends HttpServlet implements Traceable {
             }
 
             // TODO create timer and decision objects as well.
-            resp.sendError(200);
+            resp.setHeader(UpdateProtocol.PROTOCOL_HEADER, UpdateProtocol.PROTOCOL_VERSION);
+            resp.setStatus(200);
         } catch (Exception e) {
             this.getLogger().error(LoggerUtils.stackTrace(e));
         }
     }
 
+    /**
+     * @param params the parameters of a version 2 update post
+     * @return the full parameters, or null if a full update is required
+     */
+    private Map<String, String> applyDelta(Map<String, String> params) {
+        String fopName = params.get("fop");
+        if (fopName == null) {
+            return null;
+        }
+        UpdateDeltaDecoder decoder = decoders.computeIfAbsent(fopName, (k) -> new UpdateDeltaDecoder());
+        try {
+            return decoder.apply(params);
+        } catch (RuntimeException e) {
+            this.getLogger().error("could not apply update delta {}", LoggerUtils.exceptionMessage(e));
+            return null;
+        }
+    }
+
     @Override
     public Logger getLogger() {
         return logger;
@@ -7,13 +7,30 @@
 package app.owlcms.uievents;
 
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.LoggerFactory;
 
 import ch.qos.logback.classic.Logger;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+import elemental.json.JsonValue;
+import elemental.json.impl.JreJsonFactory;
 
 public class UpdateEvent {
 
+    private static AtomicLong nbParsesTotal = new AtomicLong();
+    private static AtomicLong nbEventsParsed = new AtomicLong();
+
+    /**
+     * @return the average number of JSON parses per update event, expected to be at most one per JSON field no matter
+     *         how many scoreboards are open.
+     */
+    public static double getAverageParsesPerEvent() {
+        long nbEvents = nbEventsParsed.get();
+        return nbEvents > 0 ? (double) nbParsesTotal.get() / nbEvents : 0.0D;
+    }
+
     private String athletes;
     private String attempt;
     private Integer breakRemaining;
@@ -38,6 +55,8 @@ public class UpdateEvent {
     private String teamName;
     private Integer timeAllowed;
     private String translationMap;
+    private String translationHash;
+    private String translationLocale;
     private Integer weight;
     private boolean wideTeamNames;
     private String stylesDir;
@@ -53,6 +72,15 @@ public class UpdateEvent {
     private boolean showSinclairRank;
     private boolean showSinclair;
 
+    // parsed once by parseJson(), shared by all the scoreboards; must not be modified.
+    private boolean jsonParsed;
+    private int nbParses;
+    private JsonArray athletesJson;
+    private JsonArray liftingOrderAthletesJson;
+    private JsonArray leadersJson;
+    private JsonObject recordsJson;
+    private JsonObject translationsJson;
+
     public UpdateEvent() {
     }
 
@@ -87,6 +115,8 @@ public class UpdateEvent {
                 && Objects.equals(this.startNumber, other.startNumber)
                 && Objects.equals(this.stylesDir, other.stylesDir)
                 && Objects.equals(this.teamName, other.teamName) && Objects.equals(this.timeAllowed, other.timeAllowed)
+                && Objects.equals(this.translationHash, other.translationHash)
+                && Objects.equals(this.translationLocale, other.translationLocale)
                 && Objects.equals(this.translationMap, other.translationMap)
                 && Objects.equals(this.weight, other.weight)
                 && this.wideTeamNames == other.wideTeamNames;
@@ -96,6 +126,14 @@ public class UpdateEvent {
         return this.athletes;
     }
 
+    /**
+     * @return the parsed athletes, shared between scoreboards; must not be modified.
+     */
+    public JsonArray getAthletesJson() {
+        parseJson();
+        return this.athletesJson;
+    }
+
     public String getAttempt() {
         return this.attempt;
     }
@@ -148,6 +186,37 @@ public class UpdateEvent {
         return this.hashCode;
     }
 
+    /**
+     * @return the parsed leaders, shared between scoreboards; must not be modified.
+     */
+    public JsonArray getLeadersJson() {
+        parseJson();
+        return this.leadersJson;
+    }
+
+    /**
+     * @return the parsed lifting order, shared between scoreboards; must not be modified.
+     */
+    public JsonArray getLiftingOrderAthletesJson() {
+        parseJson();
+        return this.liftingOrderAthletesJson;
+    }
+
+    /**
+     * @return number of JSON parses done for this event
+     */
+    public int getNbParses() {
+        return this.nbParses;
+    }
+
+    /**
+     * @return the parsed records, shared between scoreboards; must not be modified.
+     */
+    public JsonObject getRecordsJson() {
+        parseJson();
+        return this.recordsJson;
+    }
+
     public boolean getHidden() {
         return this.hidden;
     }
@@ -204,10 +273,26 @@ public class UpdateEvent {
         return this.timeAllowed;
     }
 
+    public String getTranslationHash() {
+        return this.translationHash;
+    }
+
+    public String getTranslationLocale() {
+        return this.translationLocale;
+    }
+
     public String getTranslationMap() {
         return this.translationMap;
     }
 
+    /**
+     * @return the parsed translation map when it is not available from the cache; must not be modified.
+     */
+    public JsonObject getTranslationsJson() {
+        parseJson();
+        return this.translationsJson;
+    }
+
     public Integer getWeight() {
         return this.weight;
     }
@@ -226,7 +311,29 @@ public class UpdateEvent {
                 this.recordMessage, this.records,
                 this.showLiftRanks, this.showSinclair, this.showSinclairRank, this.showTotalRank, this.sinclairMeet,
                 this.startNumber, this.stylesDir,
-                this.teamName, this.timeAllowed, this.translationMap, this.weight, this.wideTeamNames);
+                this.teamName, this.timeAllowed, this.translationHash, this.translationLocale, this.translationMap,
+                this.weight, this.wideTeamNames);
+    }
+
+    /**
+     * Parse the JSON fields. Done once, normally by the servlet before the event is posted, so that the scoreboards
+     * share the result instead of each parsing the same strings.
+     */
+    public synchronized void parseJson() {
+        if (this.jsonParsed) {
+            return;
+        }
+        JreJsonFactory jsonFactory = new JreJsonFactory();
+        this.athletesJson = (JsonArray) parse(jsonFactory, this.athletes);
+        this.liftingOrderAthletesJson = (JsonArray) parse(jsonFactory, this.liftingOrderAthletes);
+        this.leadersJson = (JsonArray) parse(jsonFactory, this.leaders);
+        this.recordsJson = (JsonObject) parse(jsonFactory, this.records);
+        if (this.translationHash == null) {
+            // older owlcms, the map is not cached by hash
+            this.translationsJson = (JsonObject) parse(jsonFactory, this.translationMap);
+        }
+        this.jsonParsed = true;
+        nbEventsParsed.incrementAndGet();
     }
 
     public Boolean isBreak() {
@@ -263,6 +370,7 @@ public class UpdateEvent {
 
     public void setAthletes(String athletes) {
         this.athletes = athletes;
+        this.jsonParsed = false;
     }
 
     public void setAttempt(String parameter) {
@@ -339,10 +447,12 @@ public class UpdateEvent {
 
     public void setLeaders(String leaders) {
         this.leaders = leaders;
+        this.jsonParsed = false;
     }
 
     public void setLiftingOrderAthletes(String athletes) {
         this.liftingOrderAthletes = athletes;
+        this.jsonParsed = false;
     }
 
     public void setLiftsDone(String liftsDone) {
@@ -367,6 +477,7 @@ public class UpdateEvent {
 
     public void setRecords(String records) {
         this.records = records;
+        this.jsonParsed = false;
     }
 
     public void setShowLiftRanks(boolean b) {
@@ -405,6 +516,14 @@ public class UpdateEvent {
         this.timeAllowed = integer;
     }
 
+    public void setTranslationHash(String translationHash) {
+        this.translationHash = translationHash;
+    }
+
+    public void setTranslationLocale(String translationLocale) {
+        this.translationLocale = translationLocale;
+    }
+
     public void setTranslationMap(String translationMap) {
         this.translationMap = translationMap;
     }
@@ -417,6 +536,15 @@ public class UpdateEvent {
         this.wideTeamNames = wideTeamNames;
     }
 
+    private JsonValue parse(JreJsonFactory jsonFactory, String json) {
+        if (json == null) {
+            return null;
+        }
+        this.nbParses++;
+        nbParsesTotal.incrementAndGet();
+        return jsonFactory.parse(json);
+    }
+
     @Override
     public String toString() {
         return "UpdateEvent [groupName=" + this.groupName + ", timeAllowed=" + this.timeAllowed + ", fopName="
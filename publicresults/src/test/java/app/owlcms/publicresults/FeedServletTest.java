@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.publicresults;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+import app.owlcms.uievents.UpdateEvent;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Framing of the event stream, replay of the current state, and non-blocking writes.
+ */
+public class FeedServletTest {
+
+    /**
+     * Collects what is written; can pretend that the connection does not take more.
+     */
+    private static class StubOutputStream extends ServletOutputStream {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private volatile boolean ready = true;
+
+        @Override
+        public boolean isReady() {
+            return this.ready;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            if (this.ready) {
+                try {
+                    writeListener.onWritePossible();
+                } catch (Exception e) {
+                    writeListener.onError(e);
+                }
+            }
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            this.bytes.write(b);
+        }
+
+        synchronized String written() {
+            return this.bytes.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    private boolean completed;
+
+    @After
+    public void clearCache() {
+        UpdateReceiverServlet.getUpdateCache().remove("FeedTest");
+    }
+
+    @Test
+    public void currentStateIsReplayed() throws Exception {
+        UpdateEvent current = new UpdateEvent();
+        current.setFopName("FeedTest");
+        current.setFullName("Jane Doe");
+        UpdateReceiverServlet.getUpdateCache().put("FeedTest", current);
+        StubOutputStream out = new StubOutputStream();
+
+        new FeedServlet().doGet(request("/FeedTest", out), response(out));
+
+        // the update is written by the dispatcher
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!out.written().endsWith("}\n\n") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        String written = out.written();
+        assertTrue(written, written.startsWith("retry: 5000\n\nevent: update\ndata: {"));
+        assertTrue(written, written.endsWith("}\n\n"));
+        assertTrue(written, written.contains("\"fop\":\"FeedTest\""));
+        assertTrue(written, written.contains("\"fullName\":\"Jane Doe\""));
+    }
+
+    @Test
+    public void eventsAreFramed() {
+        assertEquals("event: timer\ndata: {\"a\":1}\n\n", FeedServlet.frame("timer", "{\"a\":1}"));
+        // a line break would otherwise end the data field
+        assertEquals("event: update\ndata: a\ndata: b\ndata: c\n\n", FeedServlet.frame("update", "a\nb\r\nc"));
+    }
+
+    @Test
+    public void slowViewerIsDisconnected() throws Exception {
+        StubOutputStream out = new StubOutputStream();
+        FeedServlet.FeedClient client = new FeedServlet.FeedClient(asyncContext(response(out)), "FeedTest");
+        client.write("timer", "{}");
+        assertEquals(FeedServlet.frame("timer", "{}"), out.written());
+
+        // the viewer stops reading: writes are queued, and never block.
+        out.ready = false;
+        for (int i = 0; i < 64; i++) {
+            client.write("timer", "{}");
+        }
+        assertFalse(client.isClosed());
+        client.write("timer", "{}");
+        assertTrue(client.isClosed());
+        assertTrue(this.completed);
+        assertEquals(FeedServlet.frame("timer", "{}"), out.written());
+    }
+
+    private AsyncContext asyncContext(HttpServletResponse response) {
+        return stub(AsyncContext.class, Map.of(
+                "getResponse", response,
+                "complete", (Runnable) () -> this.completed = true));
+    }
+
+    private HttpServletRequest request(String pathInfo, StubOutputStream out) {
+        HttpServletResponse response = response(out);
+        return stub(HttpServletRequest.class, Map.of(
+                "getPathInfo", pathInfo,
+                "getRemoteAddr", "127.0.0.1",
+                "startAsync", asyncContext(response)));
+    }
+
+    private HttpServletResponse response(StubOutputStream out) {
+        return stub(HttpServletResponse.class, Map.of("getOutputStream", out));
+    }
+
+    /**
+     * @return an implementation of the interface where the named methods return the given values (or run them, for a
+     *         Runnable), and the others do nothing.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T stub(Class<T> iface, Map<String, Object> results) {
+        return (T) Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] { iface }, (proxy, method, args) -> {
+            Object result = results.get(method.getName());
+            if (result instanceof Runnable && method.getReturnType() == void.class) {
+                ((Runnable) result).run();
+                return null;
+            }
+            if (result != null) {
+                return result;
+            }
+            Class<?> type = method.getReturnType();
+            if (type == boolean.class) {
+                return false;
+            } else if (type == int.class) {
+                return 0;
+            } else if (type == long.class) {
+                return 0L;
+            }
+            return null;
+        });
+    }
+
+}
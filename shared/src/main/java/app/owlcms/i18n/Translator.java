@@ -9,23 +9,20 @@ package app.owlcms.i18n;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.URL;
-import java.net.URLClassLoader;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.MissingResourceException;
-import java.util.Properties;
-import java.util.PropertyResourceBundle;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -37,7 +34,6 @@ import org.supercsv.prefs.CsvPreference;
 
 import com.vaadin.flow.i18n.I18NProvider;
 
-import app.owlcms.utils.MemTempUtils;
 import app.owlcms.utils.ResourceWalker;
 import ch.qos.logback.classic.Logger;
 
@@ -58,14 +54,86 @@ public class Translator implements I18NProvider {
     private static final String BUNDLE_BASE = "translation4";
     private static final String BUNDLE_PACKAGE_SLASH = "/i18n/";
 
-    private static List<Locale> locales = null;
     private static Locale forcedLocale = null;
-    private static ClassLoader i18nloader = null;
+    /**
+     * The translations currently in use; replaced as a whole when reloaded, so lookups need no locking.
+     */
+    private static AtomicReference<Translations> translations = new AtomicReference<>();
     private static int line;
     private static long resetTimeStamp = System.currentTimeMillis();
 
     private static Supplier<Locale> localeSupplier;
 
+    /**
+     * Translations for one requested locale: those of the most specific language found, and the full set including
+     * the more general languages (fr_CA, then fr).
+     */
+    private static final class Resolved {
+        private final Map<String, String> all;
+        private final Map<String, String> own;
+
+        private Resolved(Map<String, String> own, Map<String, String> all) {
+            this.own = own;
+            this.all = all;
+        }
+    }
+
+    /**
+     * All the translations read from the CSV file. Never modified once built.
+     */
+    private static final class Translations {
+        private final Map<Locale, Map<String, String>> byLocale;
+        private final Map<String, MessageFormat> formats = new ConcurrentHashMap<>();
+        private final List<Locale> locales;
+        private final Map<Locale, Resolved> resolved = new ConcurrentHashMap<>();
+
+        private Translations(List<Locale> locales, Map<Locale, Map<String, String>> byLocale) {
+            this.locales = locales;
+            this.byLocale = byLocale;
+        }
+
+        /**
+         * Same lookup as {@link ResourceBundle#getBundle(String, Locale)}: the most specific language available, then
+         * the default locale.
+         */
+        private Resolved resolve(Locale locale) {
+            Resolved r = this.resolved.get(locale);
+            if (r == null) {
+                r = doResolve(locale);
+                if (r == null && !locale.equals(Locale.getDefault())) {
+                    r = resolve(Locale.getDefault());
+                }
+                if (r == null) {
+                    throw new MissingResourceException("no translations for " + locale, BUNDLE_BASE, "");
+                }
+                this.resolved.put(locale, r);
+            }
+            return r;
+        }
+
+        private Resolved doResolve(Locale locale) {
+            List<Locale> candidates = new ArrayList<>();
+            if (!locale.getVariant().isEmpty()) {
+                candidates.add(new Locale(locale.getLanguage(), locale.getCountry(), locale.getVariant()));
+            }
+            if (!locale.getCountry().isEmpty()) {
+                candidates.add(new Locale(locale.getLanguage(), locale.getCountry()));
+            }
+            candidates.add(new Locale(locale.getLanguage()));
+
+            Map<String, String> own = null;
+            Map<String, String> all = new HashMap<>();
+            for (int i = candidates.size() - 1; i >= 0; i--) {
+                Map<String, String> m = this.byLocale.get(candidates.get(i));
+                if (m != null) {
+                    all.putAll(m);
+                    own = m;
+                }
+            }
+            return own != null ? new Resolved(own, Collections.unmodifiableMap(all)) : null;
+        }
+    }
+
     public static Locale createLocale(String localeString) {
         if (localeString == null) {
             throwInvalidLocale(localeString);
@@ -86,17 +154,11 @@ public class Translator implements I18NProvider {
     }
 
     public static List<Locale> getAllAvailableLocales() {
-        if (locales == null) {
-            Translator.getBundleFromCSV(Locale.ENGLISH);
-        }
-        return locales;
+        return getTranslations().locales;
     }
     
     public static List<Locale> getUsefulLocales() {
-        if (locales == null) {
-            Translator.getBundleFromCSV(Locale.ENGLISH);
-        }
-        return locales.stream().filter( l -> ! (l.getCountry() == "" && l.getLanguage() == "es")).collect(Collectors.toList());
+        return getTranslations().locales.stream().filter( l -> ! (l.getCountry() == "" && l.getLanguage() == "es")).collect(Collectors.toList());
     }
 
     public static List<Locale> getAvailableLocales() {
@@ -108,7 +170,7 @@ public class Translator implements I18NProvider {
     }
 
     public static Enumeration<String> getKeys() {
-        return Translator.getBundleFromCSV(Locale.ENGLISH).getKeys();
+        return Collections.enumeration(getTranslations().resolve(Locale.ENGLISH).all.keySet());
     }
 
     /**
@@ -119,15 +181,7 @@ public class Translator implements I18NProvider {
     }
 
     public static Map<String, String> getMap() {
-        final PropertyResourceBundle bundle = (PropertyResourceBundle) getBundleFromCSV(getLocaleSupplier().get());
-        Map<String, String> translations = new HashMap<>();
-        Enumeration<String> keys = bundle.getKeys();
-        String key;
-        while (keys.hasMoreElements()) {
-            key = keys.nextElement();
-            translations.put(key, bundle.getString(key));
-        }
-        return translations;
+        return new HashMap<>(getTranslations().resolve(getLocaleSupplier().get()).all);
     }
 
     public static long getResetTimeStamp() {
@@ -144,16 +198,13 @@ public class Translator implements I18NProvider {
      */
     public static void reset() {
         resetTimeStamp = System.currentTimeMillis();
-        locales = null;
-        i18nloader = null;
+        translations.set(null);
         helper = new Translator();
-        logger.debug("cleared translation class loader");
+        logger.debug("cleared translations");
     }
 
     public static void setForcedLocale(Locale locale) {
         if (locale != null) {
-            locales = getAllAvailableLocales();
-
             for (Locale l : getAllAvailableLocales()) {
                 if (l.getLanguage() == locale.getLanguage()) {
                     // thing will work no matter what the country and variant
@@ -216,141 +267,109 @@ public class Translator implements I18NProvider {
     }
 
     /**
-     * Return a resource bundle created by reading a CSV files. This creates properties files, and uses the standard
-     * caching implementation and bundle hierarchy as defined by Java.
+     * The translations, read from the CSV file on first use and after {@link #reset()}.
      *
-     * Resource bundles are cached by the Java implementation, so this method can be called repeatedly.
+     * @return the current translations
+     */
+    private static Translations getTranslations() {
+        Translations t = translations.get();
+        if (t == null) {
+            synchronized (Translator.class) {
+                t = translations.get();
+                if (t == null) {
+                    t = readCSV();
+                    translations.set(t);
+                }
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Read the translations from a CSV file, with a column per language. The strings follow the same rules as
+     * properties files (u0000 escapes are translated to Java characters).
      *
      * Adapted from https://hub.jmonkeyengine.org/t/i18n-from-csv-calc/31492
      *
-     * @param locale
-     *
-     * @return
+     * @return the translations for each language
      */
-    private static synchronized ResourceBundle getBundleFromCSV(Locale locale) {
-        String baseName = BUNDLE_BASE;
-        String csvName = BUNDLE_PACKAGE_SLASH + baseName + ".csv";
-        Path bundleDir = null;
+    private static Translations readCSV() {
+        String csvName = BUNDLE_PACKAGE_SLASH + BUNDLE_BASE + ".csv";
+        line = 0;
+        logger.debug("reloading translations");
+        ICsvListReader listReader = null;
         try {
-            line = 0;
-
-            if (i18nloader == null) {
-                bundleDir = MemTempUtils.createTempDirectory("bundles");
-
-                logger.debug("reloading translation bundles");
-                InputStream csvStream = ResourceWalker.getResourceAsStream(csvName);
-                logger.debug("csvStream {} {}",csvName, csvStream);
-                ICsvListReader listReader = null;
-                try {
-                    CsvPreference[] preferences = new CsvPreference[] { CsvPreference.STANDARD_PREFERENCE,
-                            CsvPreference.EXCEL_NORTH_EUROPE_PREFERENCE, CsvPreference.TAB_PREFERENCE };
-
-                    List<String> stringList = new ArrayList<>();
-                    for (CsvPreference preference : preferences) {
-                        listReader = new CsvListReader(new InputStreamReader(csvStream, StandardCharsets.UTF_8),
-                                preference);
-
-                        if ((stringList = readLine(listReader)) == null) {
-                            throw new RuntimeException(csvName + " file is empty");
-                        } else if (stringList.size() <= 2) {
-                            // reset stream
-                            csvStream = ResourceWalker.getResourceAsStream(csvName);
-                        } else {
-                            logger.trace(stringList.toString());
-                            break;
-                        }
-                    }
-
-                    final Path[] outFiles = new Path[stringList.size()];
-                    final Properties[] languageProperties = new Properties[outFiles.length];
-                    locales = new ArrayList<>();
-
-                    int nbLanguages = 0;
-                    for (int i = 1; i < outFiles.length; i++) {
-                        String language = stringList.get(i);
-                        if (language == null || language.isBlank() || "xx".contentEquals(language)) {
-                            nbLanguages = i - 1;
-                            break;
-                        }
-                        logger.trace("language={} {}", language, i);
-                        locales.add(createLocale(language));
-                        if (language != null && !language.isEmpty()) {
-                            language = "_" + language;
-                        }
-                        final Path outfile = bundleDir.resolve(baseName + language + ".properties");
-                        Files.createFile(outfile);
-                        outFiles[i] = outfile;
-                        languageProperties[i] = new Properties();
-                    }
-
-                    // reading to properties
-                    while ((stringList = readLine(listReader)) != null) {
-                        final String key = stringList.get(0);
-                        if (key == null) {
-                            String message = MessageFormat.format("{0} line {1}: key is null", csvName, line);
-                            logger.error(message);
-                            throw new RuntimeException(message);
-                        }
-                        logger.debug(stringList.toString());
-                        for (int i = 1; i < nbLanguages + 1; i++) {
-                            // treat the CSV strings using same rules as Properties files.
-                            // u0000 escapes are translated to Java characters
-                            String input = stringList.get(i);
-                            if (input != null) {
-                                // "\ " is not valid, \u0020 is needed.
-                                String unescapeJava = StringEscapeUtils.unescapeJava(input.trim());
-                                if (!unescapeJava.isEmpty()) {
-                                    Properties properties = languageProperties[i];
-                                    if (properties == null) {
-                                        String message = MessageFormat
-                                                .format("{0} line {1}: languageProperties[{2}] is null", csvName, line,
-                                                        i);
-                                        logger.error(message);
-                                        throw new RuntimeException(message);
-                                    }
-                                    properties.setProperty(key, unescapeJava);
-                                }
-                            }
-                        }
-                    }
+            InputStream csvStream = ResourceWalker.getResourceAsStream(csvName);
+            logger.debug("csvStream {} {}", csvName, csvStream);
+            CsvPreference[] preferences = new CsvPreference[] { CsvPreference.STANDARD_PREFERENCE,
+                    CsvPreference.EXCEL_NORTH_EUROPE_PREFERENCE, CsvPreference.TAB_PREFERENCE };
+
+            List<String> stringList = new ArrayList<>();
+            for (CsvPreference preference : preferences) {
+                listReader = new CsvListReader(new InputStreamReader(csvStream, StandardCharsets.UTF_8),
+                        preference);
+
+                if ((stringList = readLine(listReader)) == null) {
+                    throw new RuntimeException(csvName + " file is empty");
+                } else if (stringList.size() <= 2) {
+                    // reset stream
+                    csvStream = ResourceWalker.getResourceAsStream(csvName);
+                } else {
+                    logger.trace(stringList.toString());
+                    break;
+                }
+            }
 
-                    // writing
-                    for (int i = 1; i < nbLanguages + 1; i++) {
-                        // logger.debug("writing to " + outFiles[i].toAbsolutePath());
-                        languageProperties[i].store(Files.newOutputStream(outFiles[i]), "generated from " + csvName);
-                    }
-                    final URL[] urls = { bundleDir.toUri().toURL() };
-                    i18nloader = new URLClassLoader(urls);
-                    
-                    // reload the files
-                    ResourceBundle.clearCache();
+            List<Locale> locales = new ArrayList<>();
+            @SuppressWarnings("unchecked")
+            Map<String, String>[] languageMaps = new Map[stringList.size()];
+            int nbLanguages = 0;
+            for (int i = 1; i < languageMaps.length; i++) {
+                String language = stringList.get(i);
+                if (language == null || language.isBlank() || "xx".contentEquals(language)) {
+                    nbLanguages = i - 1;
+                    break;
+                }
+                logger.trace("language={} {}", language, i);
+                locales.add(createLocale(language));
+                languageMaps[i] = new HashMap<>();
+            }
 
-                } catch (IOException e) {
-                    e.printStackTrace();
-                } finally {
-                    if (listReader != null) {
-                        try {
-                            listReader.close();
-                        } catch (IOException e) {
+            while ((stringList = readLine(listReader)) != null) {
+                final String key = stringList.get(0);
+                if (key == null) {
+                    String message = MessageFormat.format("{0} line {1}: key is null", csvName, line);
+                    logger.error(message);
+                    throw new RuntimeException(message);
+                }
+                logger.debug(stringList.toString());
+                for (int i = 1; i < nbLanguages + 1; i++) {
+                    String input = stringList.get(i);
+                    if (input != null) {
+                        // "\ " is not valid, \u0020 is needed.
+                        String unescapeJava = StringEscapeUtils.unescapeJava(input.trim());
+                        if (!unescapeJava.isEmpty()) {
+                            languageMaps[i].put(key, unescapeJava);
                         }
                     }
                 }
-
             }
 
-            ResourceBundle bundle = ResourceBundle.getBundle(baseName, locale, i18nloader);
-            return bundle;
+            Map<Locale, Map<String, String>> byLocale = new HashMap<>();
+            for (int i = 1; i < nbLanguages + 1; i++) {
+                byLocale.put(locales.get(i - 1), Collections.unmodifiableMap(languageMaps[i]));
+            }
+            return new Translations(locales, byLocale);
         } catch (IOException e) {
-            logger.error("cannot create bundles directory {}", e.getMessage());
+            logger.error("cannot read translations {}", e.getMessage());
             throw new RuntimeException(e);
         } finally {
-            // cannot clean up, resource bundle keeps the files open
-//            try {
-//                FileUtils.deleteDirectory(bundleDir.toFile());
-//            } catch (IOException e) {
-//                logger.error("cannot delete bundles directory {}", e);
-//                throw new RuntimeException(e);
-//            }
+            if (listReader != null) {
+                try {
+                    listReader.close();
+                } catch (IOException e) {
+                }
+            }
         }
     }
 
@@ -381,12 +400,8 @@ public class Translator implements I18NProvider {
             return "";
         }
 
-        final PropertyResourceBundle bundle = (PropertyResourceBundle) getBundleFromCSV(locale);
-
-        String value;
-        try {
-            value = bundle.getString(key);
-        } catch (final MissingResourceException e) {
+        String value = getTranslations().resolve(locale).all.get(key);
+        if (value == null) {
             return "!" + locale.getLanguage() + ": " + key;
         }
         if (params.length > 0) {
@@ -400,14 +415,8 @@ public class Translator implements I18NProvider {
             nullTranslationKey();
             return "";
         }
-        final PropertyResourceBundle bundle = (PropertyResourceBundle) getBundleFromCSV(locale);
-
-        String value;
-        
-        //value = (String) bundle.handleGetObject(key);
-        try {
-            value = bundle.getString(key);
-        } catch (final MissingResourceException e) {
+        String value = getTranslations().resolve(locale).all.get(key);
+        if (value == null) {
             return null;
         }
         if (params.length > 0) {
@@ -421,12 +430,8 @@ public class Translator implements I18NProvider {
             nullTranslationKey();
             return "";
         }
-        final PropertyResourceBundle bundle = (PropertyResourceBundle) getBundleFromCSV(locale);
-
-        String value;
-        
-        value = (String) bundle.handleGetObject(key);
-        if (params.length > 0) {
+        String value = getTranslations().resolve(locale).own.get(key);
+        if (params.length > 0 && value != null) {
             value = format(value, params);
         }
         return value;
@@ -440,14 +445,10 @@ public class Translator implements I18NProvider {
             nullTranslationKey();
             return "";
         }
-        final PropertyResourceBundle bundle = (PropertyResourceBundle) getBundleFromCSV(locale);
-
-        String value;
-        try {
-            value = bundle.getString(key);
-        } catch (final MissingResourceException e) {
-            PropertyResourceBundle enBundle = (PropertyResourceBundle) getBundleFromCSV(Locale.ENGLISH);
-            value = (String) enBundle.handleGetObject(key);
+        Translations t = getTranslations();
+        String value = t.resolve(locale).all.get(key);
+        if (value == null) {
+            value = t.resolve(Locale.ENGLISH).own.get(key);
         }
         if (params.length > 0 && value != null) {
             value = format(value, params);
@@ -464,14 +465,20 @@ public class Translator implements I18NProvider {
         logger./**/warn("null translation key");
     }
 
+    /**
+     * Parsing a pattern is much more costly than formatting; the parsed patterns are kept with the translations.
+     * MessageFormat is not thread-safe, so each use gets its own copy.
+     */
     private String format(String pattern, Object... params) {
         String value = pattern;
         if (params.length > 0) {
-            // single quotes must be doubled. If already doubled in the input, fix back.
-            pattern = pattern.replaceAll("'", "''");
-            pattern = pattern.replaceAll("''''", "''");
-            value = MessageFormat.format(pattern, params);
-            // logger.trace("format {} input={} params={} \\n result={}", params.getClass(), pattern, params, value);
+            MessageFormat mf = getTranslations().formats.computeIfAbsent(pattern, (p) -> {
+                // single quotes must be doubled. If already doubled in the input, fix back.
+                String quoted = p.replaceAll("'", "''");
+                quoted = quoted.replaceAll("''''", "''");
+                return new MessageFormat(quoted);
+            });
+            value = ((MessageFormat) mf.clone()).format(params);
         }
         return value;
     }
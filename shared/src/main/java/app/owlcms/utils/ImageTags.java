@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.utils;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Team flags and athlete pictures, shared by all the displays.
+ *
+ * The image for a team (or an athlete membership number) is looked up once, trying the possible extensions in turn,
+ * and the outcome is kept until the files in the local override directory change. Displays then only do a map lookup
+ * for each athlete, whatever the number of updates and of open displays.
+ */
+public class ImageTags {
+
+	private static final String[] FLAG_EXTENSIONS = { ".svg", ".png", ".jpg" };
+	private static final String[] PICTURE_EXTENSIONS = { ".jpg", ".jpeg" };
+
+	private static Map<String, Optional<String>> flags = new ConcurrentHashMap<>();
+	private static Map<String, Optional<String>> pictures = new ConcurrentHashMap<>();
+	private static volatile Boolean flagsPresent;
+	private static volatile long version = -1;
+
+	/**
+	 * @param team
+	 * @param style attributes added to the img element, can be empty.
+	 * @return an img element for the team flag, null if there is none.
+	 */
+	public static String getFlagTag(String team, String style) {
+		String url = getFlagURL(team);
+		return url != null ? imgTag(url, style) : null;
+	}
+
+	/**
+	 * @param team
+	 * @return the relative URL of the team flag (served under local/), null if there is none.
+	 */
+	public static String getFlagURL(String team) {
+		if (team == null || team.isBlank()) {
+			return null;
+		}
+		if (!hasFlags()) {
+			return null;
+		}
+		if (!checkVersion()) {
+			return find("flags/", URLUtils.sanitizeFilename(team), FLAG_EXTENSIONS).orElse(null);
+		}
+		return flags.computeIfAbsent(team, (t) -> find("flags/", URLUtils.sanitizeFilename(t), FLAG_EXTENSIONS))
+		        .orElse(null);
+	}
+
+	/**
+	 * @param membership the athlete's membership number, used as the picture file name
+	 * @param style      attributes added to the img element, can be empty.
+	 * @return an img element for the athlete picture, null if there is none.
+	 */
+	public static String getPictureTag(String membership, String style) {
+		String url = getPictureURL(membership);
+		return url != null ? imgTag(url, style) : null;
+	}
+
+	/**
+	 * @param membership the athlete's membership number, used as the picture file name
+	 * @return the relative URL of the picture (served under local/), null if there is none.
+	 */
+	public static String getPictureURL(String membership) {
+		if (membership == null || membership.isBlank()) {
+			return null;
+		}
+		if (!checkVersion()) {
+			return find("pictures/", membership, PICTURE_EXTENSIONS).orElse(null);
+		}
+		return pictures.computeIfAbsent(membership, (m) -> find("pictures/", m, PICTURE_EXTENSIONS)).orElse(null);
+	}
+
+	/**
+	 * @return true if there is a flags directory
+	 */
+	public static boolean hasFlags() {
+		if (!checkVersion()) {
+			return URLUtils.checkFlags();
+		}
+		Boolean present = flagsPresent;
+		if (present == null) {
+			present = URLUtils.checkFlags();
+			flagsPresent = present;
+		}
+		return present;
+	}
+
+	/**
+	 * @return true if there are athlete pictures
+	 */
+	public static boolean hasPictures() {
+		return URLUtils.checkPictures();
+	}
+
+	/**
+	 * Look up the images ahead of time, for example when a session is loaded, so displays never have to.
+	 *
+	 * @param teams
+	 * @param memberships
+	 */
+	public static void preload(Collection<String> teams, Collection<String> memberships) {
+		for (String team : teams) {
+			getFlagURL(team);
+		}
+		if (hasPictures()) {
+			for (String membership : memberships) {
+				getPictureURL(membership);
+			}
+		}
+	}
+
+	/**
+	 * Forget everything if the local files have changed.
+	 *
+	 * @return false if the local files are not watched, and nothing can be kept.
+	 */
+	private static boolean checkVersion() {
+		if (!ResourceWalker.isResolvedCacheable()) {
+			return false;
+		}
+		if (ResourceWalker.getResolvedVersion() == version) {
+			return true;
+		}
+		synchronized (ImageTags.class) {
+			long current = ResourceWalker.getResolvedVersion();
+			if (current != version) {
+				flags.clear();
+				pictures.clear();
+				flagsPresent = null;
+				version = current;
+			}
+		}
+		return true;
+	}
+
+	private static Optional<String> find(String prefix, String name, String[] extensions) {
+		for (String extension : extensions) {
+			String url = prefix + name + extension;
+			if (ResourceWalker.findFileOrResourcePath(url) != null) {
+				return Optional.of(url);
+			}
+		}
+		return Optional.empty();
+	}
+
+	private static String imgTag(String url, String style) {
+		return "<img " + style + " src='local/" + url + "'></img>";
+	}
+
+}
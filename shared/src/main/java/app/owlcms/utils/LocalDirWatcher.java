@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.utils;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Notify caches built from the local override directory when its content changes.
+ *
+ * The whole tree is watched, including directories created later. Listeners are also called when a different
+ * directory becomes the override directory (for example when a new zip is uploaded), and when the watch service loses
+ * events. Listeners are expected to simply drop what they cached.
+ */
+public class LocalDirWatcher {
+
+	private static List<Runnable> listeners = new CopyOnWriteArrayList<>();
+	private static Logger logger = (Logger) LoggerFactory.getLogger(LocalDirWatcher.class);
+	private static Thread watchThread;
+	private static Path watchedDir;
+	private static volatile WatchService watchService;
+
+	/**
+	 * @param listener called, on the watcher thread, after a change in the override directory.
+	 */
+	public static void addListener(Runnable listener) {
+		listeners.add(listener);
+		ensureWatching();
+	}
+
+	/**
+	 * @return true if changes to the override directory are being notified. If not, nothing read from the directory
+	 *         should be cached.
+	 */
+	public static boolean isWatching() {
+		return watchService != null;
+	}
+
+	/**
+	 * Called when the override directory is replaced.
+	 */
+	public static synchronized void localDirChanged() {
+		stopWatching();
+		fireChanged();
+		if (!listeners.isEmpty()) {
+			ensureWatching();
+		}
+	}
+
+	private static synchronized void ensureWatching() {
+		Path dir = ResourceWalker.getLocalDirPath();
+		if (dir == null || dir.equals(watchedDir) || !Files.isDirectory(dir)) {
+			return;
+		}
+		stopWatching();
+		try {
+			WatchService ws = dir.getFileSystem().newWatchService();
+			registerAll(ws, dir);
+			watchService = ws;
+			watchedDir = dir;
+			watchThread = new Thread(() -> watch(ws), "local-dir-watcher");
+			watchThread.setDaemon(true);
+			watchThread.start();
+			logger.debug("watching {}", dir);
+		} catch (IOException | UnsupportedOperationException e) {
+			logger.warn("cannot watch {}, changes to local files will require a restart: {}", dir, e.toString());
+		}
+	}
+
+	private static void fireChanged() {
+		for (Runnable l : listeners) {
+			try {
+				l.run();
+			} catch (Exception e) {
+				LoggerUtils.logError(logger, e);
+			}
+		}
+	}
+
+	private static void registerAll(WatchService ws, Path root) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				dir.register(ws, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private static synchronized void stopWatching() {
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				// ignored
+			}
+		}
+		watchService = null;
+		watchedDir = null;
+		watchThread = null;
+	}
+
+	private static void watch(WatchService ws) {
+		try {
+			while (true) {
+				WatchKey key = ws.take();
+				Path dir = (Path) key.watchable();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == ENTRY_CREATE) {
+						Path created = dir.resolve((Path) event.context());
+						if (Files.isDirectory(created)) {
+							registerAll(ws, created);
+						}
+					} else if (event.kind() == OVERFLOW) {
+						logger.debug("events lost in {}", dir);
+					}
+				}
+				key.reset();
+				fireChanged();
+			}
+		} catch (ClosedWatchServiceException | InterruptedException e) {
+			// directory no longer watched
+		} catch (IOException e) {
+			LoggerUtils.logError(logger, e);
+			// changes are no longer seen: nothing must stay cached.
+			synchronized (LocalDirWatcher.class) {
+				if (watchService == ws) {
+					stopWatching();
+				}
+			}
+			fireChanged();
+		}
+	}
+
+}
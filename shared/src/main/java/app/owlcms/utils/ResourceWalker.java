@@ -35,9 +35,13 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -65,6 +69,13 @@ public class ResourceWalker {
 	private static Path localDirPath = null;
 	private static Supplier<byte[]> localZipBlobSupplier;
 	private static Supplier<Locale> localeSupplier;
+	/**
+	 * Outcome of the lookups by name, including the names that were not found. Cleared when the override directory
+	 * changes.
+	 */
+	private static Map<String, Optional<Path>> resolvedPaths = new ConcurrentHashMap<>();
+	private static AtomicLong resolvedVersion = new AtomicLong();
+	private static AtomicBoolean resolvedListening = new AtomicBoolean();
 	
 	public ResourceWalker() {
 		//logger.setLevel(Level.TRACE);
@@ -180,41 +191,44 @@ public class ResourceWalker {
 	 * @throws FileNotFoundException
 	 */
 	public static Path getFileOrResourcePath(String name) throws FileNotFoundException {
-		String relativeName;
-		if (name.startsWith("/")) {
-			relativeName = name.substring(1);
-		} else {
-			relativeName = name;
+		Path target = findFileOrResourcePath(name);
+		if (target == null) {
+			throw new FileNotFoundException(name);
 		}
-		Path localDirPath2 = getLocalDirPath();
-		Path target = null;
-		if (localDirPath2 != null) {
-			target = localDirPath2.resolve(relativeName);
-		}
-		if (target != null && Files.exists(target)) {
-			if (logger.isEnabledFor(Level.DEBUG)) {
-				logger.debug("found overridden resource {} at {} {}", name, target.toAbsolutePath(),
-				        LoggerUtils.whereFrom(1));
-			}
-			return target;
-		} else {
-			String resName = "/" + relativeName;
-			target = getResourcePath(resName);
-			if (target != null) {
-				if (logger.isEnabledFor(Level.DEBUG)) {
-					logger.debug("found classpath resource {} {}", name, LoggerUtils.whereFrom(1));
-				}
-			} else {
-				if (logger.isEnabledFor(Level.DEBUG)) {
-					logger.debug("not found {} {} {}", target, resName, LoggerUtils.whereFrom(1));
-				}
-				throw new FileNotFoundException(name);
-			}
+		return target;
+	}
 
+	/**
+	 * Same as {@link #getFileOrResourcePath(String)}, for names that are often missing (flags, pictures). The outcome is
+	 * remembered, so looking again for the same name does not touch the file system.
+	 *
+	 * @param name
+	 * @return the path in the local override directory or on the classpath, null if not found.
+	 */
+	public static Path findFileOrResourcePath(String name) {
+		boolean cacheable = isResolvedCacheable();
+		if (cacheable) {
+			Optional<Path> cached = resolvedPaths.get(name);
+			if (cached != null) {
+				return cached.orElse(null);
+			}
+		}
+		long version = resolvedVersion.get();
+		Path target = resolveFileOrResourcePath(name);
+		if (cacheable && version == resolvedVersion.get()) {
+			resolvedPaths.put(name, Optional.ofNullable(target));
 		}
 		return target;
 	}
 
+	/**
+	 * @return a number that changes whenever the files in the override directory change, so that callers can cache
+	 *         what they compute from the files.
+	 */
+	public static long getResolvedVersion() {
+		return resolvedVersion.get();
+	}
+
 	public static Path getLocalDirPath() {
 		if (!initializedLocalDir || localDirPath == null) {
 			initLocalDir();
@@ -447,6 +461,58 @@ public class ResourceWalker {
 		return in;
 	}
 
+	private static void clearResolved() {
+		resolvedVersion.incrementAndGet();
+		resolvedPaths.clear();
+	}
+
+	/**
+	 * Remembered lookups are only valid if the override directory is watched for changes.
+	 *
+	 * @return true if what is computed from the local files can be kept until {@link #getResolvedVersion()} changes.
+	 */
+	public static boolean isResolvedCacheable() {
+		Path localDir = getLocalDirPath();
+		if (!resolvedListening.get() && resolvedListening.compareAndSet(false, true)) {
+			LocalDirWatcher.addListener(ResourceWalker::clearResolved);
+		}
+		return localDir == null || LocalDirWatcher.isWatching();
+	}
+
+	private static Path resolveFileOrResourcePath(String name) {
+		String relativeName;
+		if (name.startsWith("/")) {
+			relativeName = name.substring(1);
+		} else {
+			relativeName = name;
+		}
+		Path localDirPath2 = getLocalDirPath();
+		Path target = null;
+		if (localDirPath2 != null) {
+			target = localDirPath2.resolve(relativeName);
+		}
+		if (target != null && Files.exists(target)) {
+			if (logger.isEnabledFor(Level.DEBUG)) {
+				logger.debug("found overridden resource {} at {} {}", name, target.toAbsolutePath(),
+				        LoggerUtils.whereFrom(1));
+			}
+			return target;
+		} else {
+			String resName = "/" + relativeName;
+			target = getResourcePath(resName);
+			if (target != null) {
+				if (logger.isEnabledFor(Level.DEBUG)) {
+					logger.debug("found classpath resource {} {}", name, LoggerUtils.whereFrom(1));
+				}
+			} else {
+				if (logger.isEnabledFor(Level.DEBUG)) {
+					logger.debug("not found {} {} {}", target, resName, LoggerUtils.whereFrom(1));
+				}
+			}
+			return target;
+		}
+	}
+
 	private static boolean isSameDir(String nameA, String nameB) {
 		String separator = FileSystems.getDefault().getSeparator();
 		nameA = nameA + separator;
@@ -481,6 +547,7 @@ public class ResourceWalker {
 
 	public static void setLocalDirPath(Path curDir) {
 		localDirPath = curDir;
+		LocalDirWatcher.localDirChanged();
 	}
 
 	/**
@@ -6,7 +6,6 @@
  *******************************************************************************/
 package app.owlcms.utils;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
@@ -19,6 +18,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.slf4j.LoggerFactory;
 
@@ -42,6 +42,8 @@ import jakarta.servlet.http.HttpServletRequest;
 
 public class URLUtils {
     final private static Logger logger = (Logger) LoggerFactory.getLogger(URLUtils.class);
+    private static Boolean athletePictures;
+    private static long athletePicturesVersion;
 
     public static String buildAbsoluteURL(HttpServletRequest request, String resourcePath) {
         int port = URLUtils.getServerPort(request);
@@ -185,37 +187,35 @@ public class URLUtils {
 		return CharMatcher.javaIsoControl().removeFrom(replaceAll);
     }
 
-    public static boolean checkPictures() {
-        boolean athletePictures;
-        try {
-            Path f = ResourceWalker.getFileOrResourcePath("pictures");
-            athletePictures = Files.walk(f)
-            		.anyMatch(x->(x.toString().toLowerCase().endsWith(".jpg")|| x.toString().toLowerCase().endsWith(".jpeg")));
-        } catch (IOException e) {
-            athletePictures = false;
+    public static synchronized boolean checkPictures() {
+        long version = ResourceWalker.getResolvedVersion();
+        Boolean present = athletePictures;
+        if (present != null && version == athletePicturesVersion) {
+            return present;
         }
-        return athletePictures;
+        boolean found;
+        Path f = ResourceWalker.findFileOrResourcePath("pictures");
+        if (f == null) {
+            found = false;
+        } else {
+            try (Stream<Path> files = Files.walk(f)) {
+                found = files.anyMatch(x -> (x.toString().toLowerCase().endsWith(".jpg")
+                        || x.toString().toLowerCase().endsWith(".jpeg")));
+            } catch (IOException e) {
+                found = false;
+            }
+        }
+        athletePicturesVersion = version;
+        athletePictures = found;
+        return found;
     }
     
     public static boolean checkFlags() {
-        boolean teamFlags;
-        try {
-            ResourceWalker.getFileOrResourcePath("flags");
-            teamFlags = true;
-        } catch (FileNotFoundException e) {
-            teamFlags = false;
-        }
-        return teamFlags;
+        return ResourceWalker.findFileOrResourcePath("flags") != null;
     }
     
     public static boolean setImgProp(String propertyName, String prefix, String name, String suffix, Component component) {
-        boolean found;
-        try {
-            ResourceWalker.getFileOrResourcePath(prefix + name + suffix);
-            found = true;
-        } catch (FileNotFoundException e) {
-            found = false;
-        }
+        boolean found = ResourceWalker.findFileOrResourcePath(prefix + name + suffix) != null;
         if (found) {
             component.getElement().setProperty(propertyName, "<img src='local/" + prefix + name + suffix + "'></img>");
         } else {
@@ -225,13 +225,7 @@ public class URLUtils {
     }
     
     public static String getImgTag(String prefix, String name, String suffix, String style) {
-        boolean found;
-        try {
-            ResourceWalker.getFileOrResourcePath(prefix + name + suffix);
-            found = true;
-        } catch (FileNotFoundException e) {
-            found = false;
-        }
+        boolean found = ResourceWalker.findFileOrResourcePath(prefix + name + suffix) != null;
         if (found) {
             return "<img "+style+" src='local/" + prefix + name + suffix + "'></img>";
         } else {
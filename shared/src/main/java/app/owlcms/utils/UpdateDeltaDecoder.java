@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+import elemental.json.JsonValue;
+import elemental.json.impl.JreJsonFactory;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Rebuilds the full state of a field of play from the posts of version 2 of the update protocol.
+ *
+ * A full snapshot (delta=false) replaces the state. A delta (delta=true) is applied on top of the state from the
+ * previous sequence number: changed fields replace the previous values, fields listed in "removedFields" are removed,
+ * and athlete lists sent as "...Delta" objects only replace the rows that changed. If the sequence number is not the
+ * one expected, the delta cannot be applied and owlcms must send a full snapshot.
+ *
+ * Used by publicresults; kept with the protocol constants so that owlcms can check its encoder against it.
+ */
+public class UpdateDeltaDecoder {
+
+    private static final Set<String> ROW_FIELDS = UpdateProtocol.ROW_FIELDS;
+    private static final Set<String> PROTOCOL_FIELDS = Set.of("protocol", "seq", "delta", "removedFields");
+
+    /**
+     * @param req
+     * @return the first value of each request parameter
+     */
+    public static Map<String, String> getParameters(HttpServletRequest req) {
+        Map<String, String> params = new LinkedHashMap<>();
+        for (Entry<String, String[]> e : req.getParameterMap().entrySet()) {
+            String[] values = e.getValue();
+            params.put(e.getKey(), values != null && values.length > 0 ? values[0] : null);
+        }
+        return params;
+    }
+
+    private long seq = -1;
+    private Map<String, String> fields;
+    private Map<String, List<String>> rows = new HashMap<>();
+    private JreJsonFactory jsonFactory = new JreJsonFactory();
+
+    /**
+     * @param params the parameters of the post
+     * @return the full set of parameters, or null if this is a delta that does not follow the previous post.
+     */
+    public synchronized Map<String, String> apply(Map<String, String> params) {
+        String seqString = params.get("seq");
+        long newSeq = seqString != null ? Long.parseLong(seqString) : -1;
+        boolean delta = "true".equals(params.get("delta"));
+
+        Map<String, String> newFields;
+        Map<String, List<String>> newRows;
+        if (!delta) {
+            newFields = new HashMap<>();
+            newRows = new HashMap<>();
+        } else if (this.fields == null || newSeq != this.seq + 1) {
+            return null;
+        } else {
+            newFields = new HashMap<>(this.fields);
+            newRows = new HashMap<>(this.rows);
+            String removed = params.get("removedFields");
+            if (removed != null && !removed.isBlank()) {
+                for (String key : removed.split(",")) {
+                    newFields.remove(key);
+                    newRows.remove(key);
+                }
+            }
+        }
+
+        for (Entry<String, String> e : params.entrySet()) {
+            String key = e.getKey();
+            String value = e.getValue();
+            if (PROTOCOL_FIELDS.contains(key)) {
+                continue;
+            }
+            if (key.endsWith("Delta") && ROW_FIELDS.contains(key.substring(0, key.length() - "Delta".length()))) {
+                String rowField = key.substring(0, key.length() - "Delta".length());
+                List<String> patched = patchRows(newRows.get(rowField), value);
+                newRows.put(rowField, patched);
+                newFields.put(rowField, "[" + String.join(",", patched) + "]");
+            } else if (ROW_FIELDS.contains(key)) {
+                newRows.put(key, splitRows(value));
+                newFields.put(key, value);
+            } else {
+                newFields.put(key, value);
+            }
+        }
+
+        this.fields = newFields;
+        this.rows = newRows;
+        this.seq = newSeq;
+        return new HashMap<>(newFields);
+    }
+
+    private List<String> patchRows(List<String> previous, String deltaJson) {
+        JsonObject delta = this.jsonFactory.parse(deltaJson);
+        int size = (int) delta.getNumber("size");
+        JsonObject changed = delta.getObject("rows");
+        List<String> patched = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String index = Integer.toString(i);
+            if (changed.hasKey(index)) {
+                patched.add(changed.get(index).toJson());
+            } else if (previous != null && i < previous.size()) {
+                patched.add(previous.get(i));
+            } else {
+                throw new IllegalArgumentException("missing row " + i + " in delta " + deltaJson);
+            }
+        }
+        return patched;
+    }
+
+    private List<String> splitRows(String jsonArray) {
+        List<String> split = new ArrayList<>();
+        if (jsonArray == null) {
+            return split;
+        }
+        JsonValue parsed = this.jsonFactory.parse(jsonArray);
+        if (parsed instanceof JsonArray) {
+            JsonArray array = (JsonArray) parsed;
+            for (int i = 0; i < array.length(); i++) {
+                split.add(array.get(i).toJson());
+            }
+        }
+        return split;
+    }
+
+}
@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.utils;
+
+import java.util.Set;
+
+/**
+ * Constants of the /update protocol, shared by the owlcms encoder and the publicresults decoder.
+ */
+public class UpdateProtocol {
+
+    /**
+     * Response header by which the receiver advertises the protocol version it understands.
+     */
+    public static final String PROTOCOL_HEADER = "X-Owlcms-Update-Protocol";
+    public static final String PROTOCOL_VERSION = "2";
+    /**
+     * Athlete lists, sent as deltas of rows.
+     */
+    public static final Set<String> ROW_FIELDS = Set.of("groupAthletes", "liftingOrderAthletes", "leaders");
+
+    private UpdateProtocol() {
+    }
+
+}